@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.DisplayEntry;
+
+/*
+    Maps rows with and without display strings and checks that the days show what the list and
+    the detail view used to format from the cursor themselves, and that they survive a Parcel.
+ */
+public class TestForecastDayMapper extends AndroidTestCase {
+
+    private static final int WEATHER_ID = 501;
+    private static final double HIGH = 21.5;
+    private static final double LOW = -3.25;
+    private static final float HUMIDITY = 81;
+    private static final float PRESSURE = 1012.5f;
+    private static final float WIND_SPEED = 12.5f;
+    private static final float DEGREES = 200;
+
+    public void testFormatsRowsWithoutDisplayStrings() {
+        long date = System.currentTimeMillis();
+        ForecastDay day = mapRow(date, null, null);
+
+        assertEquals("Error: Wrong description", "Rain", day.getDescription());
+        assertEquals("Error: Wrong icon",
+                Utility.getIconResourceForWeatherCondition(WEATHER_ID), day.getIconResource());
+        assertEquals("Error: Wrong art",
+                Utility.getArtResourceForWeatherCondition(WEATHER_ID), day.getArtResource());
+        assertEquals("Error: Wrong content description",
+                Utility.getStringForWeatherCondition(mContext, WEATHER_ID), day.getConditionText());
+        assertEquals("Error: Wrong friendly date",
+                Utility.getFriendlyDayString(mContext, date), day.getFriendlyDate());
+        assertEquals("Error: Wrong day name",
+                Utility.getDayName(mContext, date), day.getDayName());
+        assertEquals("Error: Wrong month and day",
+                Utility.getFormattedMonthDay(mContext, date), day.getMonthDay());
+
+        for (boolean isMetric : new boolean[]{true, false}) {
+            ForecastDay.UnitsText text = day.getText(isMetric);
+            assertEquals("Error: Wrong high",
+                    Utility.formatTemperature(mContext, HIGH, isMetric), text.getHigh());
+            assertEquals("Error: Wrong low",
+                    Utility.formatTemperature(mContext, LOW, isMetric), text.getLow());
+            assertEquals("Error: Wrong wind",
+                    Utility.getFormattedWind(mContext, WIND_SPEED, DEGREES, isMetric),
+                    text.getWind());
+        }
+        assertEquals("Error: Wrong humidity",
+                mContext.getString(R.string.format_humidity, HUMIDITY), day.getHumidityText());
+        assertEquals("Error: Wrong pressure",
+                mContext.getString(R.string.format_pressure, PRESSURE), day.getPressureText());
+    }
+
+    public void testUsesDisplayStringsOfTheLocale() {
+        ForecastDay day = mapRow(System.currentTimeMillis(), DisplayEntry.getCurrentLocale(), "x");
+        assertEquals("Error: The display strings were not used", "x", day.getText(true).getHigh());
+        assertEquals("Error: The display strings were not used", "x", day.getText(false).getWind());
+        assertEquals("Error: The display strings were not used", "x", day.getHumidityText());
+
+        day = mapRow(System.currentTimeMillis(), "xx_XX", "x");
+        assertEquals("Error: Display strings of another locale were used",
+                Utility.formatTemperature(mContext, HIGH, true), day.getText(true).getHigh());
+    }
+
+    // the detail view gets the days of the list in a Parcel
+    public void testParcelKeepsTheDetails() {
+        ForecastDay day = mapRow(System.currentTimeMillis(), null, null);
+        Parcel parcel = Parcel.obtain();
+        try {
+            day.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            ForecastDay read = ForecastDay.CREATOR.createFromParcel(parcel);
+            assertTrue("Error: The parcelled day lost details", day.hasSameDetails(read));
+            assertEquals("Error: Wrong art", day.getArtResource(), read.getArtResource());
+        } finally {
+            parcel.recycle();
+        }
+
+        ForecastDay plain = new ForecastDay(day.getDate(), 500, "Rain", 10, 5);
+        parcel = Parcel.obtain();
+        try {
+            plain.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            assertTrue("Error: The parcelled day lost contents",
+                    plain.hasSameContents(ForecastDay.CREATOR.createFromParcel(parcel)));
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private ForecastDay mapRow(long date, String locale, String text) {
+        MatrixCursor cursor = new MatrixCursor(ForecastDayMapper.COLUMNS);
+        cursor.addRow(new Object[]{date, "Rain", HIGH, LOW, HUMIDITY, PRESSURE, WIND_SPEED,
+                DEGREES, WEATHER_ID, 64.7488, -147.353, 1, locale, text, text, text, text, text,
+                text, text, text});
+        assertTrue(cursor.moveToFirst());
+        ForecastDay day = new ForecastDayMapper(mContext).map(cursor);
+        cursor.close();
+        return day;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Diffs forecast lists the way syncs change them, and checks that replaying the operations on
+    the old list gives the new one with only the changed days marked.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    public void testSameDays() {
+        List<ForecastDay> days = createDays(0, 14);
+        ForecastDiff diff = ForecastDiff.compute(days, createDays(0, 14));
+        assertTrue("Error: The same days should have no operations", diff.isEmpty());
+    }
+
+    public void testOneDayChanged() {
+        List<ForecastDay> oldDays = createDays(0, 14);
+        List<ForecastDay> newDays = createDays(0, 14);
+        newDays.set(3, new ForecastDay(3 * DAY, 500, "Rain", 10, 5));
+
+        ForecastDiff diff = ForecastDiff.compute(oldDays, newDays);
+        assertEquals("Error: One change should be one operation", 1, diff.size());
+        assertEquals("Error: Wrong operation", ForecastDiff.CHANGE, diff.getType(0));
+        assertEquals("Error: Wrong changed row", 3, diff.getPosition(0));
+        assertEquals("Error: Wrong number of changed rows", 1, diff.getCount(0));
+    }
+
+    public void testNextDay() {
+        // a day later the first day is gone and a new one is at the end
+        List<ForecastDay> oldDays = createDays(0, 14);
+        List<ForecastDay> newDays = createDays(1, 14);
+        ForecastDiff diff = ForecastDiff.compute(oldDays, newDays);
+        assertEquals("Error: Wrong number of operations", 2, diff.size());
+        assertEquals("Error: The past day should be removed", ForecastDiff.REMOVE, diff.getType(0));
+        assertEquals("Error: The past day is the first row", 0, diff.getPosition(0));
+        assertEquals("Error: The new day should be inserted", ForecastDiff.INSERT, diff.getType(1));
+        assertEquals("Error: The new day is the last row", 13, diff.getPosition(1));
+        assertReplays(oldDays, newDays, diff);
+    }
+
+    public void testRanges() {
+        List<ForecastDay> oldDays = createDays(0, 14);
+        ForecastDiff diff = ForecastDiff.compute(oldDays, createDays(3, 14));
+        assertEquals("Error: Consecutive removals should be one operation", 2, diff.size());
+        assertEquals("Error: Wrong number of removed rows", 3, diff.getCount(0));
+        assertEquals("Error: Wrong number of inserted rows", 3, diff.getCount(1));
+
+        diff = ForecastDiff.compute(oldDays, new ArrayList<ForecastDay>());
+        assertEquals("Error: Clearing the list should be one operation", 1, diff.size());
+        assertEquals("Error: Wrong number of cleared rows", 14, diff.getCount(0));
+    }
+
+    public void testRandomLists() {
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            List<ForecastDay> oldDays = createRandomDays(random);
+            List<ForecastDay> newDays = createRandomDays(random);
+            assertReplays(oldDays, newDays, ForecastDiff.compute(oldDays, newDays));
+        }
+    }
+
+    private static List<ForecastDay> createDays(int first, int count) {
+        List<ForecastDay> days = new ArrayList<ForecastDay>();
+        for (int i = first; i < first + count; i++) {
+            days.add(new ForecastDay(i * DAY, 800, "Clear", 20 + i, 10 + i));
+        }
+        return days;
+    }
+
+    private static List<ForecastDay> createRandomDays(Random random) {
+        List<ForecastDay> days = new ArrayList<ForecastDay>();
+        for (int i = 0; i < 20; i++) {
+            if (random.nextBoolean()) {
+                days.add(new ForecastDay(i * DAY, 800, "Clear", random.nextInt(3), 0));
+            }
+        }
+        return days;
+    }
+
+    // Replays the operations on the old days and checks that they give the new days, and that
+    // exactly the days that look different were changed.
+    private static void assertReplays(List<ForecastDay> oldDays, List<ForecastDay> newDays,
+                                      ForecastDiff diff) {
+        List<ForecastDay> days = new ArrayList<ForecastDay>(oldDays);
+        List<Boolean> changed = new ArrayList<Boolean>();
+        for (int i = 0; i < days.size(); i++) {
+            changed.add(false);
+        }
+        for (int i = 0; i < diff.size(); i++) {
+            int position = diff.getPosition(i);
+            for (int j = 0; j < diff.getCount(i); j++) {
+                switch (diff.getType(i)) {
+                    case ForecastDiff.REMOVE:
+                        days.remove(position);
+                        changed.remove(position);
+                        break;
+                    case ForecastDiff.INSERT:
+                        days.add(position + j, newDays.get(position + j));
+                        changed.add(position + j, false);
+                        break;
+                    case ForecastDiff.CHANGE:
+                        days.set(position + j, newDays.get(position + j));
+                        changed.set(position + j, true);
+                        break;
+                }
+            }
+        }
+        assertEquals("Error: Replaying gave the wrong number of days", newDays.size(), days.size());
+        for (int i = 0; i < days.size(); i++) {
+            assertEquals("Error: Replaying gave the wrong day at " + i,
+                    newDays.get(i).getDate(), days.get(i).getDate());
+            assertEquals("Error: Wrong days marked changed at " + i,
+                    isChanged(oldDays, newDays.get(i)), changed.get(i).booleanValue());
+        }
+    }
+
+    // Whether a new day replaces an old day of the same date that looks different.
+    private static boolean isChanged(List<ForecastDay> oldDays, ForecastDay newDay) {
+        for (ForecastDay oldDay : oldDays) {
+            if (oldDay.getDate() == newDay.getDate()) {
+                return !oldDay.hasSameContents(newDay);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Changes the settings and checks that a new snapshot replaces the old one, which keeps the
+    settings it was taken with.
+ */
+public class TestPreferenceSnapshot extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "North Pole, AK";
+
+    private SharedPreferences mPrefs;
+    private String mLocation;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mLocation = mPrefs.getString(mContext.getString(R.string.pref_location_key), null);
+        mUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit()
+                .putString(mContext.getString(R.string.pref_location_key), mLocation)
+                .putString(mContext.getString(R.string.pref_units_key), mUnits)
+                .commit();
+        super.tearDown();
+    }
+
+    public void testChange() {
+        mPrefs.edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_metric))
+                .commit();
+        waitForSnapshot(mContext.getString(R.string.pref_units_metric));
+        PreferenceSnapshot before = PreferenceSnapshot.get(mContext);
+        assertTrue("Error: Metric units were not read", before.isMetric());
+
+        mPrefs.edit()
+                .putString(mContext.getString(R.string.pref_location_key), TEST_LOCATION)
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        waitForSnapshot(mContext.getString(R.string.pref_units_imperial));
+
+        PreferenceSnapshot after = PreferenceSnapshot.get(mContext);
+        assertFalse("Error: The units change was not picked up", after.isMetric());
+        assertEquals("Error: The location change was not picked up",
+                TEST_LOCATION, after.getLocation());
+        assertTrue("Error: The new snapshot should have a later version",
+                after.getVersion() > before.getVersion());
+        assertTrue("Error: A snapshot changed after it was taken", before.isMetric());
+        assertEquals("Error: Utility doesn't read the snapshot",
+                TEST_LOCATION, Utility.getPreferredLocation(mContext));
+    }
+
+    // The listener runs on the main thread, a moment after the commit.
+    private void waitForSnapshot(final String units) {
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return units.equals(PreferenceSnapshot.get(mContext).getUnits());
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.accounts.Account;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/*
+    Launches MainActivity, logs the startup phases, and holds MainActivity.onCreate and the
+    launch to a budget.  Unlike the other benchmarks this asserts the timings, but the budgets
+    are generous: they catch work such as the sync setup coming back onto the UI thread, not
+    a slower device.  The test runs in the app's process, so this is a cold start of the
+    activity rather than of the process.
+ */
+@LargeTest
+public class TestStartupBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestStartupBenchmark.class.getSimpleName();
+
+    private static final long ACTIVITY_CREATE_BUDGET_MILLIS = 250;
+    private static final long LAUNCH_BUDGET_MILLIS = 1500;
+    private static final long SYNC_SETUP_TIMEOUT_MILLIS = 10000;
+
+    public TestStartupBenchmark() {
+        super(MainActivity.class);
+    }
+
+    public void testColdStart() throws InterruptedException {
+        long startTime = SystemClock.elapsedRealtime();
+        getActivity();
+        getInstrumentation().waitForIdleSync();
+        long launchMillis = SystemClock.elapsedRealtime() - startTime;
+
+        assertTrue("Error: The sync setup did not finish",
+                StartupOrchestrator.awaitStartup(SYNC_SETUP_TIMEOUT_MILLIS));
+        long createMillis =
+                StartupOrchestrator.getPhaseMillis(StartupOrchestrator.PHASE_ACTIVITY_CREATE);
+        Log.d(LOG_TAG, "Launched in " + launchMillis + " ms, onCreate " + createMillis +
+                " ms, sync setup " +
+                StartupOrchestrator.getPhaseMillis(StartupOrchestrator.PHASE_SYNC_SETUP) +
+                " ms, first forecast frame " +
+                StartupOrchestrator.getPhaseMillis(StartupOrchestrator.PHASE_FIRST_FORECAST_FRAME) +
+                " ms");
+
+        assertTrue("Error: MainActivity.onCreate was not recorded", createMillis >= 0);
+        assertTrue("Error: MainActivity.onCreate took " + createMillis + " ms, over its budget",
+                createMillis <= ACTIVITY_CREATE_BUDGET_MILLIS);
+        assertTrue("Error: The launch took " + launchMillis + " ms, over its budget",
+                launchMillis <= LAUNCH_BUDGET_MILLIS);
+
+        // the UI thread gets the account from the cache from now on
+        Account account = SunshineSyncAdapter.getSyncAccount(getActivity());
+        assertNotNull("Error: No sync account after the setup", account);
+        assertSame("Error: The sync account was not cached",
+                account, SunshineSyncAdapter.getSyncAccount(getActivity()));
+    }
+}
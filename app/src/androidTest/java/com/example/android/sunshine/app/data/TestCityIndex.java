@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+    Writes a small city index and searches it, checks that the app was built with an index,
+    and compares prefix searches of an index of 200,000 cities with a scan of every name.
+ */
+public class TestCityIndex extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestCityIndex.class.getSimpleName();
+
+    private static final String INDEX_FILE_NAME = "test_cities.idx";
+    private static final int BENCHMARK_CITIES = 200000;
+    private static final int BENCHMARK_QUERIES = 1000;
+
+    // id, name, country, lat, long
+    private static final Object[][] CITIES = {
+            {2643743, "London", "GB", 51.5085, -0.1257},
+            {6058560, "London", "CA", 42.9834, -81.2330},
+            {2988507, "Paris", "FR", 48.8534, 2.3488},
+            {4717560, "Paris", "US", 33.6609, -95.5552},
+            {2657896, "Z\u00fcrich", "CH", 47.3667, 8.55},
+            {4407066, "St. Louis", "US", 38.6273, -90.1979},
+            {5375480, "Mountain View", "US", 37.3861, -122.0838},
+    };
+
+    private CityIndex mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CityIndexWriter writer = new CityIndexWriter();
+        for (Object[] city : CITIES) {
+            writer.add((Integer) city[0], (String) city[1], (String) city[2],
+                    (Double) city[3], (Double) city[4]);
+        }
+        mIndex = write(writer);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getIndexFile().delete();
+        super.tearDown();
+    }
+
+    public void testSearchPrefix() {
+        int[] cities = new int[10];
+        int found = mIndex.search("lon", cities);
+        assertEquals("Error: Wrong number of cities starting with lon", 2, found);
+        // the same name is ordered by country
+        assertEquals("Error: Wrong first London", "London, CA", mIndex.getLocationSetting(cities[0]));
+        assertEquals("Error: Wrong second London", "London, GB", mIndex.getLocationSetting(cities[1]));
+
+        // case, accents and punctuation don't matter
+        assertEquals("Error: Zurich not found without its accent",
+                1, mIndex.search("ZURI", cities));
+        assertEquals("Error: Wrong name for Zurich", "Z\u00fcrich", mIndex.getName(cities[0]));
+        assertEquals("Error: St. Louis not found without its period",
+                1, mIndex.search("st lo", cities));
+
+        // only as many as asked for
+        assertEquals("Error: More cities returned than there was room for",
+                1, mIndex.search("paris", new int[1]));
+        assertEquals("Error: A city was found for nothing", 0, mIndex.search(" ,", cities));
+    }
+
+    public void testSearchFuzzy() {
+        int[] cities = new int[10];
+        int found = mIndex.search("mountian", cities);
+        assertEquals("Error: A misspelled city was not found", 1, found);
+        assertEquals("Error: Wrong misspelled city", 5375480, mIndex.getCityId(cities[0]));
+
+        found = mIndex.search("parus", cities);
+        assertEquals("Error: Wrong number of fuzzy matches", 2, found);
+        assertEquals("Error: Wrong fuzzy match", "Paris", mIndex.getName(cities[0]));
+
+        assertEquals("Error: A city too far from the query was found",
+                0, mIndex.search("pxxxs", cities));
+    }
+
+    public void testFindCity() {
+        assertEquals("Error: Wrong city for a setting with a country",
+                4717560, mIndex.getCityId(mIndex.findCity("Paris, us")));
+        assertEquals("Error: A city was taken for a setting without a country",
+                -1, mIndex.findCity("paris"));
+        assertEquals("Error: A single city was taken for a setting without a country",
+                -1, mIndex.findCity("Mountain View"));
+        assertEquals("Error: A prefix was taken for a whole name", -1, mIndex.findCity("Par"));
+        assertEquals("Error: A postal code was taken for a city", -1, mIndex.findCity("94043"));
+        assertEquals("Error: A city was found in the wrong country",
+                -1, mIndex.findCity("Paris, GB"));
+    }
+
+    public void testFindById() {
+        int city = mIndex.findById(2657896);
+        assertTrue("Error: City not found by its id", city != -1);
+        assertEquals("Error: Wrong country", "CH", mIndex.getCountry(city));
+        assertEquals("Error: Wrong latitude", 47.3667, mIndex.getLat(city), 0.0001);
+        assertEquals("Error: Wrong longitude", 8.55, mIndex.getLon(city), 0.0001);
+        assertEquals("Error: A city was found for an unknown id", -1, mIndex.findById(42));
+    }
+
+    public void testBundledIndex() {
+        CityIndex index = CityIndex.getInstance(mContext);
+        assertNotNull("Error: The app was built without a city index", index);
+        assertTrue("Error: The bundled city index is empty", index.size() > 0);
+        assertSame("Error: The bundled index should be mapped once",
+                index, CityIndex.getInstance(mContext));
+    }
+
+    /*
+        Compares prefix searches with a scan of every name and logs the time per search, which
+        should stay in the tens of microseconds.  Only the results are asserted, timings vary
+        too much by device.
+     */
+    @LargeTest
+    public void testSearchBenchmark() throws IOException {
+        Random random = new Random(0);
+        String[] names = new String[BENCHMARK_CITIES];
+        CityIndexWriter writer = new CityIndexWriter();
+        for (int i = 0; i < BENCHMARK_CITIES; i++) {
+            char[] name = new char[4 + random.nextInt(8)];
+            for (int j = 0; j < name.length; j++) {
+                name[j] = (char) ('a' + random.nextInt(26));
+            }
+            names[i] = new String(name);
+            writer.add(i + 1, names[i], "XX", 0, 0);
+        }
+        mIndex = write(writer);
+
+        int[] cities = new int[BENCHMARK_CITIES];
+        long searchNanos = 0;
+        for (int q = 0; q < BENCHMARK_QUERIES; q++) {
+            String prefix = names[random.nextInt(BENCHMARK_CITIES)].substring(0, 3);
+
+            long startTime = System.nanoTime();
+            int found = mIndex.search(prefix, cities);
+            searchNanos += System.nanoTime() - startTime;
+
+            int expected = 0;
+            for (String name : names) {
+                if (name.startsWith(prefix)) {
+                    expected++;
+                }
+            }
+            assertEquals("Error: Wrong number of cities starting with " + prefix,
+                    expected, found);
+            for (int i = 0; i < found; i++) {
+                assertTrue("Error: A city not starting with " + prefix + " was found",
+                        names[mIndex.getCityId(cities[i]) - 1].startsWith(prefix));
+            }
+        }
+        Log.d(LOG_TAG, BENCHMARK_QUERIES + " prefix searches over " + BENCHMARK_CITIES +
+                " cities: " + (searchNanos / BENCHMARK_QUERIES / 1000) + " us per search");
+    }
+
+    private File getIndexFile() {
+        return new File(mContext.getCacheDir(), INDEX_FILE_NAME);
+    }
+
+    private CityIndex write(CityIndexWriter writer) throws IOException {
+        File file = getIndexFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            writer.write(out);
+        } finally {
+            out.close();
+        }
+        return CityIndex.open(file);
+    }
+}
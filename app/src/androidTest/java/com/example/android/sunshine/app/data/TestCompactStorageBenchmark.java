@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+
+/*
+    Compares the weather table with its measurements stored as REAL, the layout before version 7,
+    against the scaled integers stored now.  Both tables get the same million days in a database
+    of their own, then the test logs the file size, the pages a range scan reads and the time to
+    fill a cursor over that range.  Only the size is asserted, timings vary too much by device.
+ */
+@LargeTest
+public class TestCompactStorageBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestCompactStorageBenchmark.class.getSimpleName();
+
+    private static final int TEST_ROWS = 1000000;
+    private static final int TEST_LOCATIONS = 100;
+    // every location over 100 days, which is 10000 rows in date order
+    private static final int SCAN_DAYS = 100;
+    private static final int SCAN_ROWS = SCAN_DAYS * TEST_LOCATIONS;
+
+    private static final String REAL_DATABASE_NAME = "benchmark_real.db";
+    private static final String COMPACT_DATABASE_NAME = "benchmark_compact.db";
+
+    // The version 6 weather table.  Never change this, it is what the integers are measured against.
+    private static final String V6_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    private static final String V6_CREATE_WEATHER_VIEW =
+            "CREATE VIEW weather_values AS SELECT * FROM weather";
+
+    private static final String V7_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min INTEGER NOT NULL, " +
+            "max INTEGER NOT NULL, " +
+            "humidity INTEGER NOT NULL, " +
+            "pressure INTEGER NOT NULL, " +
+            "wind INTEGER NOT NULL, " +
+            "degrees INTEGER NOT NULL, " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    private static final String CREATE_INDEX =
+            "CREATE INDEX weather_location_date ON weather (location_id, date)";
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(REAL_DATABASE_NAME);
+        mContext.deleteDatabase(COMPACT_DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testCompactStorage() {
+        Result real = measure(REAL_DATABASE_NAME, V6_CREATE_WEATHER_TABLE, V6_CREATE_WEATHER_VIEW, 1);
+        Result compact = measure(COMPACT_DATABASE_NAME, V7_CREATE_WEATHER_TABLE,
+                WeatherDbHelper.buildCreateWeatherViewSql(), WeatherEntry.MEASUREMENT_SCALE);
+
+        Log.d(LOG_TAG, "REAL:    " + real);
+        Log.d(LOG_TAG, "INTEGER: " + compact);
+
+        assertTrue("Error: Scaled integers did not make the database smaller",
+                compact.mBytes < real.mBytes);
+        assertEquals("Error: Both layouts should read back the same measurements",
+                real.mScanChecksum, compact.mScanChecksum, 0.01 * SCAN_ROWS);
+    }
+
+    private Result measure(String name, String createTable, String createView, int scale) {
+        mContext.deleteDatabase(name);
+        File file = mContext.getDatabasePath(name);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.execSQL(createTable);
+            db.execSQL(CREATE_INDEX);
+            db.execSQL(createView);
+            fill(db, scale);
+
+            Result result = new Result();
+            long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+            long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+            result.mBytes = pageSize * pageCount;
+
+            // Rows are written in date order, so a date range is a contiguous run of pages and
+            // a scan reads about its share of the file.
+            result.mPagesPerScan = (double) pageCount * SCAN_ROWS / TEST_ROWS;
+
+            long startDate = TestUtilities.TEST_DATE;
+            long endDate = startDate + (SCAN_DAYS - 1) * WeatherContract.DAY_IN_MILLIS;
+            long startTime = SystemClock.elapsedRealtime();
+            Cursor cursor = db.query(WeatherEntry.VIEW_NAME, null,
+                    WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ?",
+                    new String[]{Long.toString(startDate), Long.toString(endDate)},
+                    null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            try {
+                assertEquals("Error: The range scan returned the wrong number of days",
+                        SCAN_ROWS, cursor.getCount());
+                result.mFillMillis = SystemClock.elapsedRealtime() - startTime;
+                int maxColumn = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+                while (cursor.moveToNext()) {
+                    result.mScanChecksum += cursor.getDouble(maxColumn);
+                }
+            } finally {
+                cursor.close();
+            }
+            return result;
+        } finally {
+            db.close();
+        }
+    }
+
+    // Inserts TEST_ROWS days spread over TEST_LOCATIONS, day by day like the sync writes them.
+    private void fill(SQLiteDatabase db, int scale) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO weather (" +
+                "location_id, date, weather_id, min, max, humidity, pressure, wind, degrees) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        int days = TEST_ROWS / TEST_LOCATIONS;
+        db.beginTransaction();
+        try {
+            for (int day = 0; day < days; day++) {
+                long date = TestUtilities.TEST_DATE + day * WeatherContract.DAY_IN_MILLIS;
+                for (int location = 1; location <= TEST_LOCATIONS; location++) {
+                    // values with the precision the weather service reports
+                    double max = 15.0 + (day % 20) + location / 10.0;
+                    insert.bindLong(1, location);
+                    insert.bindLong(2, date);
+                    insert.bindLong(3, 800 + day % 4);
+                    bindMeasurement(insert, 4, max - 8.25, scale);
+                    bindMeasurement(insert, 5, max, scale);
+                    bindMeasurement(insert, 6, 40 + (day + location) % 60, scale);
+                    bindMeasurement(insert, 7, 1013.25 - (day % 30) * 0.5, scale);
+                    bindMeasurement(insert, 8, 2.4 + (location % 10) * 0.3, scale);
+                    bindMeasurement(insert, 9, (day * 7 + location) % 360, scale);
+                    insert.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    private static void bindMeasurement(SQLiteStatement statement, int index, double value,
+                                        int scale) {
+        if (scale == 1) {
+            statement.bindDouble(index, value);
+        } else {
+            statement.bindLong(index, Math.round(value * scale));
+        }
+    }
+
+    private static class Result {
+        long mBytes;
+        double mPagesPerScan;
+        long mFillMillis;
+        double mScanChecksum;
+
+        @Override
+        public String toString() {
+            return mBytes + " bytes, " + String.format("%.1f", mPagesPerScan) +
+                    " pages per " + SCAN_ROWS + "-row scan, cursor filled in " +
+                    mFillMillis + " ms";
+        }
+    }
+}
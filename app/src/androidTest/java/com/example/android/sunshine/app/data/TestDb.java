@@ -17,6 +17,7 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
@@ -55,6 +56,11 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.RollupEntry.TABLE_WEEKLY);
+        tableNameHashSet.add(WeatherContract.RollupEntry.TABLE_MONTHLY);
+        tableNameHashSet.add(WeatherContract.ConditionEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ForecastEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.DisplayEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -91,6 +97,11 @@ public class TestDb extends AndroidTestCase {
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LAST_ACCESS);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_GRID_LAT);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_GRID_LONG);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_SHARED_ID);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LAST_FETCH);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
@@ -102,6 +113,10 @@ public class TestDb extends AndroidTestCase {
         // entry columns
         assertTrue("Error: The database doesn't contain all of the required location entry columns",
                 locationColumnHashSet.isEmpty());
+
+        assertEquals("Error: A new database should be in incremental auto-vacuum mode",
+                WeatherDbHelper.AUTO_VACUUM_INCREMENTAL,
+                DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
         db.close();
     }
 
@@ -145,13 +160,14 @@ public class TestDb extends AndroidTestCase {
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
         // Third Step (Weather): Insert ContentValues into database and get a row ID back
-        long weatherRowId = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = TestUtilities.insertWeatherValues(db, weatherValues);
         assertTrue(weatherRowId != -1);
 
         // Fourth Step: Query the database and receive a Cursor back
         // A cursor is your primary interface to the query results.
+        // Measurements are stored scaled, read them back through the view like the provider does.
         Cursor weatherCursor = db.query(
-                WeatherContract.WeatherEntry.TABLE_NAME,  // Table to Query
+                WeatherContract.WeatherEntry.VIEW_NAME,  // Table to Query
                 null, // leaving "columns" null just returns all the columns.
                 null, // cols for "where" clause
                 null, // values for "where" clause
@@ -163,19 +179,80 @@ public class TestDb extends AndroidTestCase {
         // Move the cursor to the first valid database row and check to see if we have any rows
         assertTrue( "Error: No Records returned from location query", weatherCursor.moveToFirst() );
 
-        // Fifth Step: Validate the location Query
+        // Fifth Step: Validate the location Query.  The description is not stored per row,
+        // only in the condition dictionary.
+        assertEquals("Error: The weather table should not store descriptions", -1,
+                weatherCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        ContentValues storedValues = new ContentValues(weatherValues);
+        storedValues.remove(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
         TestUtilities.validateCurrentRecord("testInsertReadDb weatherEntry failed to validate",
-                weatherCursor, weatherValues);
+                weatherCursor, storedValues);
 
         // Move the cursor to demonstrate that there is only one record in the database
         assertFalse( "Error: More than one record returned from weather query",
                 weatherCursor.moveToNext() );
 
+        // The table itself holds the measurements as integers
+        assertEquals("Error: Measurements should be stored as integers", "integer",
+                DatabaseUtils.stringForQuery(db, "SELECT typeof(" +
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ") FROM " +
+                        WeatherContract.WeatherEntry.TABLE_NAME, null));
+
         // Sixth Step: Close cursor and database
         weatherCursor.close();
         dbHelper.close();
     }
 
+    /*
+        The forecast table is only ever written by triggers, so check it follows every kind of
+        write to the weather and location tables.
+     */
+    public void testForecastTable() {
+        long locationRowId = insertLocation();
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        long weatherRowId = TestUtilities.insertWeatherValues(db, weatherValues);
+        assertTrue(weatherRowId != -1);
+
+        // a day carries its location's columns
+        ContentValues forecastValues = new ContentValues(weatherValues);
+        forecastValues.remove(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+        forecastValues.putAll(TestUtilities.createNorthPoleLocationValues());
+        forecastValues.put(WeatherContract.WeatherEntry._ID, weatherRowId);
+        Cursor cursor = db.query(WeatherContract.ForecastEntry.VIEW_NAME,
+                null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: The forecast does not match the inserted day",
+                cursor, forecastValues);
+
+        // the same day written again replaces it
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 80);
+        weatherRowId = TestUtilities.insertWeatherValues(db, weatherValues);
+        forecastValues.put(WeatherContract.WeatherEntry._ID, weatherRowId);
+        forecastValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 80);
+        cursor = db.query(WeatherContract.ForecastEntry.VIEW_NAME,
+                null, null, null, null, null, null);
+        assertEquals("Error: A replaced day was left in the forecast", 1, cursor.getCount());
+        TestUtilities.validateCursor("Error: The forecast does not match the replaced day",
+                cursor, forecastValues);
+
+        // a renamed location is renamed in its days
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        db.update(WeatherContract.LocationEntry.TABLE_NAME, locationValues, null, null);
+        forecastValues.putAll(locationValues);
+        cursor = db.query(WeatherContract.ForecastEntry.VIEW_NAME,
+                null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: The forecast did not follow the location update",
+                cursor, forecastValues);
+
+        db.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        assertEquals("Error: Deleted days were left in the forecast", 0,
+                DatabaseUtils.queryNumEntries(db, WeatherContract.ForecastEntry.TABLE_NAME));
+        dbHelper.close();
+    }
+
 
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
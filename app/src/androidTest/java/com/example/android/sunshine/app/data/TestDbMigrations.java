@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+
+/*
+    Builds a populated database with the version 2 schema, exactly as it shipped, and checks
+    that upgrading it keeps every row and stays within the time budget.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    private static final int TEST_LOCATIONS = 20;
+    private static final int TEST_DAYS_PER_LOCATION = 365;
+
+    // Upgrades run before the first frame after an app update, so they have to stay quick.
+    private static final long MIGRATION_BUDGET_MILLIS = 2000;
+
+    // The version 2 schema.  Never change these, they describe databases already on devices.
+    private static final String V2_CREATE_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL " +
+            " );";
+
+    private static final String V2_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    private File mDatabaseFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDatabaseFile = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // leave a fresh database behind for the other tests
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    /*
+        Upgrades a version 2 database to every later version, one target at a time, so that a
+        step that loses rows is caught at the version that introduced it.
+     */
+    public void testUpgradeFromVersion2ThroughEachVersion() {
+        for (int targetVersion = 3; targetVersion <= WeatherDbHelper.DATABASE_VERSION; targetVersion++) {
+            SQLiteDatabase db = createVersion2Database();
+            Fingerprint before = Fingerprint.of(db);
+
+            long startTime = SystemClock.elapsedRealtime();
+            db.beginTransaction();
+            try {
+                WeatherDbMigrations.migrate(db, 2, targetVersion);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            long elapsed = SystemClock.elapsedRealtime() - startTime;
+            Log.d(LOG_TAG, "Upgrade 2 -> " + targetVersion + " took " + elapsed + " ms");
+
+            before.assertSameRows("Error: Upgrade 2 -> " + targetVersion + " lost data",
+                    Fingerprint.of(db));
+            if (targetVersion >= 8) {
+                assertEquals("Error: Upgrade 2 -> " + targetVersion +
+                                " did not fill the forecast table from the existing days",
+                        before.weatherCount, DatabaseUtils.queryNumEntries(db,
+                                WeatherContract.ForecastEntry.TABLE_NAME));
+            }
+            assertTrue("Error: Upgrade 2 -> " + targetVersion + " took " + elapsed +
+                    " ms, over the budget of " + MIGRATION_BUDGET_MILLIS + " ms",
+                    elapsed <= MIGRATION_BUDGET_MILLIS);
+            db.close();
+        }
+    }
+
+    /*
+        Opens a version 2 database through WeatherDbHelper, which is what happens on the first
+        launch after an app update.
+     */
+    public void testOpenHelperUpgradesInPlace() {
+        SQLiteDatabase v2Db = createVersion2Database();
+        Fingerprint before = Fingerprint.of(v2Db);
+        v2Db.close();
+
+        long startTime = SystemClock.elapsedRealtime();
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+
+        assertEquals("Error: Database was not upgraded to the current version",
+                WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        before.assertSameRows("Error: Opening an old database lost data", Fingerprint.of(db));
+        // every weather id of the version 2 rows still has its description
+        assertEquals("Error: Descriptions were lost moving them into the condition table", 0,
+                DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " +
+                        WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " NOT IN (SELECT " +
+                        WeatherContract.ConditionEntry.COLUMN_CONDITION_ID + " FROM " +
+                        WeatherContract.ConditionEntry.TABLE_NAME + ")", null));
+        assertEquals("Error: The forecast table was not filled from the existing days",
+                before.weatherCount, DatabaseUtils.queryNumEntries(db,
+                        WeatherContract.ForecastEntry.TABLE_NAME));
+        assertTrue("Error: Upgrade took " + elapsed + " ms, over the budget of " +
+                MIGRATION_BUDGET_MILLIS + " ms", elapsed <= MIGRATION_BUDGET_MILLIS);
+        dbHelper.close();
+    }
+
+    private SQLiteDatabase createVersion2Database() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDatabaseFile.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(mDatabaseFile, null);
+        db.execSQL(V2_CREATE_LOCATION_TABLE);
+        db.execSQL(V2_CREATE_WEATHER_TABLE);
+
+        long millisecondsInADay = 1000*60*60*24;
+        db.beginTransaction();
+        try {
+            for (int l = 0; l < TEST_LOCATIONS; l++) {
+                ContentValues locationValues = new ContentValues();
+                locationValues.put("location_setting", TestUtilities.TEST_LOCATION + l);
+                locationValues.put("city_name", "North Pole " + l);
+                locationValues.put("coord_lat", 64.7488 - l * 0.5);
+                locationValues.put("coord_long", -147.353 + l * 0.5);
+                long locationRowId = db.insert("location", null, locationValues);
+                assertTrue("Error: Failure to insert version 2 location", locationRowId != -1);
+
+                long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+                for (int d = 0; d < TEST_DAYS_PER_LOCATION; d++, date += millisecondsInADay) {
+                    ContentValues weatherValues = new ContentValues();
+                    weatherValues.put("location_id", locationRowId);
+                    weatherValues.put("date", date);
+                    weatherValues.put("short_desc", "Clear");
+                    weatherValues.put("weather_id", 800 + (d % 5));
+                    weatherValues.put("min", 10.5 - d % 10);
+                    weatherValues.put("max", 20.5 + d % 10);
+                    weatherValues.put("humidity", 80.0);
+                    weatherValues.put("pressure", 1013.2);
+                    weatherValues.put("wind", 3.4);
+                    weatherValues.put("degrees", 270.0);
+                    assertTrue("Error: Failure to insert version 2 weather",
+                            db.insert("weather", null, weatherValues) != -1);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(2);
+        return db;
+    }
+
+    /*
+        A summary of the rows that every schema version has to keep.  The measurements are
+        summed in their units, through the weather_values view once the table stores them
+        scaled, so that a step that rewrites them has to keep their values.
+     */
+    static class Fingerprint {
+        // a stored measurement is within half a hundredth of the value written
+        private static final double MEASUREMENT_DELTA = 0.005;
+
+        final long locationCount;
+        final long weatherCount;
+        final long dateSum;
+        final long weatherIdSum;
+        final double[] measurementSums;
+
+        private Fingerprint(long locationCount, long weatherCount, long dateSum, long weatherIdSum,
+                            double[] measurementSums) {
+            this.locationCount = locationCount;
+            this.weatherCount = weatherCount;
+            this.dateSum = dateSum;
+            this.weatherIdSum = weatherIdSum;
+            this.measurementSums = measurementSums;
+        }
+
+        static Fingerprint of(SQLiteDatabase db) {
+            boolean scaled = DatabaseUtils.longForQuery(db,
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'view' AND name = ?",
+                    new String[]{WeatherContract.WeatherEntry.VIEW_NAME}) > 0;
+            String measurementTable = scaled ? WeatherContract.WeatherEntry.VIEW_NAME
+                    : WeatherContract.WeatherEntry.TABLE_NAME;
+            String[] columns = WeatherContract.WeatherEntry.MEASUREMENT_COLUMNS;
+            double[] measurementSums = new double[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                Cursor cursor = db.rawQuery(
+                        "SELECT SUM(" + columns[i] + ") FROM " + measurementTable, null);
+                try {
+                    assertTrue("Error: No sum of " + columns[i], cursor.moveToFirst());
+                    measurementSums[i] = cursor.getDouble(0);
+                } finally {
+                    cursor.close();
+                }
+            }
+            return new Fingerprint(
+                    DatabaseUtils.queryNumEntries(db, WeatherContract.LocationEntry.TABLE_NAME),
+                    DatabaseUtils.queryNumEntries(db, WeatherContract.WeatherEntry.TABLE_NAME),
+                    DatabaseUtils.longForQuery(db, "SELECT SUM(" +
+                            WeatherContract.WeatherEntry.COLUMN_DATE + ") FROM " +
+                            WeatherContract.WeatherEntry.TABLE_NAME, null),
+                    DatabaseUtils.longForQuery(db, "SELECT SUM(" +
+                            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ") FROM " +
+                            WeatherContract.WeatherEntry.TABLE_NAME, null),
+                    measurementSums);
+        }
+
+        void assertSameRows(String error, Fingerprint after) {
+            assertEquals(error + " (location rows)", locationCount, after.locationCount);
+            assertEquals(error + " (weather rows)", weatherCount, after.weatherCount);
+            assertEquals(error + " (dates)", dateSum, after.dateSum);
+            assertEquals(error + " (weather ids)", weatherIdSum, after.weatherIdSum);
+            String[] columns = WeatherContract.WeatherEntry.MEASUREMENT_COLUMNS;
+            for (int i = 0; i < columns.length; i++) {
+                assertEquals(error + " (" + columns[i] + ")", measurementSums[i],
+                        after.measurementSums[i], weatherCount * MEASUREMENT_DELTA);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ForecastEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Random;
+
+/*
+    Fills the database with many locations and a deep history, then runs the two-week range
+    query of the forecast list both the old way, joining the weather and location tables, and
+    from the forecast table, and logs the time of each along with the query plans.  Only the
+    results are asserted, timings vary too much by device.
+ */
+@LargeTest
+public class TestForecastBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastBenchmark.class.getSimpleName();
+
+    private static final int TEST_LOCATIONS = 200;
+    private static final int TEST_DAYS_PER_LOCATION = 365;
+    private static final int RANGE_DAYS = 14;
+    private static final int BENCHMARK_QUERIES = 500;
+
+    private static final String CONDITION_JOIN = " LEFT JOIN " + ConditionEntry.TABLE_NAME +
+            " ON weather." + WeatherEntry.COLUMN_WEATHER_ID + " = " +
+            ConditionEntry.TABLE_NAME + "." + ConditionEntry.COLUMN_CONDITION_ID;
+
+    // how the forecast list was read before the forecast table
+    private static final String JOIN_QUERY = buildRangeQuery(WeatherEntry.VIEW_NAME +
+            " AS weather INNER JOIN " + LocationEntry.TABLE_NAME +
+            " ON weather." + WeatherEntry.COLUMN_LOC_KEY + " = location." + LocationEntry._ID +
+            CONDITION_JOIN, "location");
+
+    // the same query from the forecast table, which has the location columns itself
+    private static final String FORECAST_QUERY = buildRangeQuery(ForecastEntry.VIEW_NAME +
+            " AS weather" + CONDITION_JOIN, "weather");
+
+    private WeatherDbHelper mDbHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        // leave a fresh database behind for the other tests
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testForecastRangeQuery() {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        long startTime = SystemClock.elapsedRealtime();
+        fill(db);
+        Log.d(LOG_TAG, "Wrote " + TEST_LOCATIONS * TEST_DAYS_PER_LOCATION +
+                " days, with the forecast triggers, in " +
+                (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+        Log.d(LOG_TAG, "Join plan: " + explain(db, JOIN_QUERY));
+        Log.d(LOG_TAG, "Forecast plan: " + explain(db, FORECAST_QUERY));
+
+        // the same locations and ranges for both
+        long joinMillis = 0;
+        long forecastMillis = 0;
+        Random random = new Random(0);
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            String[] args = randomRange(random);
+
+            startTime = SystemClock.elapsedRealtime();
+            Cursor joined = db.rawQuery(JOIN_QUERY, args);
+            joined.getCount();
+            joinMillis += SystemClock.elapsedRealtime() - startTime;
+
+            startTime = SystemClock.elapsedRealtime();
+            Cursor forecast = db.rawQuery(FORECAST_QUERY, args);
+            forecast.getCount();
+            forecastMillis += SystemClock.elapsedRealtime() - startTime;
+
+            assertSameRows(joined, forecast);
+            joined.close();
+            forecast.close();
+        }
+        Log.d(LOG_TAG, BENCHMARK_QUERIES + " " + RANGE_DAYS + "-day queries over " +
+                TEST_LOCATIONS + " locations: join " + joinMillis + " ms, forecast " +
+                forecastMillis + " ms");
+    }
+
+    // The two-week query of ForecastFragment, reading the location columns from locationTable.
+    private static String buildRangeQuery(String tables, String locationTable) {
+        return "SELECT weather." + WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                locationTable + "." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG +
+                " FROM " + tables +
+                " WHERE " + locationTable + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " >= ? AND " + WeatherEntry.COLUMN_DATE + " <= ?" +
+                " ORDER BY " + WeatherEntry.COLUMN_DATE + " ASC";
+    }
+
+    private String[] randomRange(Random random) {
+        int location = random.nextInt(TEST_LOCATIONS);
+        long startDate = TestUtilities.TEST_DATE +
+                random.nextInt(TEST_DAYS_PER_LOCATION - RANGE_DAYS) * WeatherContract.DAY_IN_MILLIS;
+        long endDate = startDate + (RANGE_DAYS - 1) * WeatherContract.DAY_IN_MILLIS;
+        return new String[]{TestUtilities.TEST_LOCATION + location,
+                Long.toString(startDate), Long.toString(endDate)};
+    }
+
+    private static void assertSameRows(Cursor expected, Cursor actual) {
+        assertEquals("Error: The forecast returned a different number of days",
+                expected.getCount(), actual.getCount());
+        assertEquals("Error: Expected a full range", RANGE_DAYS, actual.getCount());
+        while (expected.moveToNext() && actual.moveToNext()) {
+            for (int column = 0; column < expected.getColumnCount(); column++) {
+                assertEquals("Error: The forecast differs in column " +
+                        expected.getColumnName(column),
+                        expected.getString(column), actual.getString(column));
+            }
+        }
+    }
+
+    private static String explain(SQLiteDatabase db, String query) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query,
+                new String[]{TestUtilities.TEST_LOCATION + 0, "0", "0"});
+        StringBuilder plan = new StringBuilder();
+        int detail = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detail)).append("; ");
+        }
+        cursor.close();
+        return plan.toString();
+    }
+
+    private static void fill(SQLiteDatabase db) {
+        SQLiteStatement insertLocation = db.compileStatement("INSERT INTO " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_CITY_NAME + ", " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + ") VALUES (?, ?, ?, ?)");
+        SQLiteStatement insertWeather = db.compileStatement("INSERT INTO " +
+                WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " + WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " + WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_HUMIDITY + ", " + WeatherEntry.COLUMN_PRESSURE + ", " +
+                WeatherEntry.COLUMN_WIND_SPEED + ", " + WeatherEntry.COLUMN_DEGREES +
+                ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT INTO " + ConditionEntry.TABLE_NAME + " VALUES (800, 'Clear')");
+            long[] locationIds = new long[TEST_LOCATIONS];
+            for (int l = 0; l < TEST_LOCATIONS; l++) {
+                insertLocation.bindString(1, TestUtilities.TEST_LOCATION + l);
+                insertLocation.bindString(2, "North Pole " + l);
+                insertLocation.bindDouble(3, 64.7488 - l * 0.1);
+                insertLocation.bindDouble(4, -147.353 + l * 0.1);
+                locationIds[l] = insertLocation.executeInsert();
+            }
+            // day by day, the way syncs of several locations interleave them
+            for (int d = 0; d < TEST_DAYS_PER_LOCATION; d++) {
+                long date = TestUtilities.TEST_DATE + d * WeatherContract.DAY_IN_MILLIS;
+                for (int l = 0; l < TEST_LOCATIONS; l++) {
+                    insertWeather.bindLong(1, locationIds[l]);
+                    insertWeather.bindLong(2, date);
+                    insertWeather.bindLong(3, 800);
+                    insertWeather.bindLong(4, 1000 + d % 50);
+                    insertWeather.bindLong(5, 2000 + l % 50);
+                    insertWeather.bindLong(6, 5000);
+                    insertWeather.bindLong(7, 101300);
+                    insertWeather.bindLong(8, 300);
+                    insertWeather.bindLong(9, 18000);
+                    insertWeather.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertLocation.close();
+            insertWeather.close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/*
+    Writes the snapshot of a two-week forecast and reads it back, checks that snapshots of
+    another setting or version are not read, and compares reading today's weather from the
+    snapshot with reading it through the provider, the way the notification and the wearable
+    did before there were snapshots.
+ */
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastSnapshot.class.getSimpleName();
+
+    private static final int TEST_DAYS = 14;
+    private static final int BENCHMARK_READS = 200;
+
+    private long mLocationRowId;
+    private ContentValues[] mDays;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        ForecastSnapshot.getFile(mContext, TestUtilities.TEST_LOCATION).delete();
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+
+        long now = System.currentTimeMillis();
+        mDays = new ContentValues[TEST_DAYS];
+        for (int i = 0; i < TEST_DAYS; i++) {
+            ContentValues values = TestUtilities.createWeatherValues(mLocationRowId);
+            values.put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(now + i * WeatherContract.DAY_IN_MILLIS));
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 21.37 + i);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, -3.25 - i);
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, i % 2 == 0 ? "Clear" : "Z\u00fcrich fog");
+            mDays[i] = values;
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastSnapshot.getFile(mContext, TestUtilities.TEST_LOCATION).delete();
+        super.tearDown();
+    }
+
+    public void testWriteAndRead() throws IOException {
+        long before = System.currentTimeMillis();
+        save(TestUtilities.TEST_LOCATION);
+
+        ForecastSnapshot snapshot = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: The snapshot was not read back", snapshot);
+        assertEquals("Error: Wrong location setting",
+                TestUtilities.TEST_LOCATION, snapshot.getLocationSetting());
+        assertEquals("Error: Wrong location id", mLocationRowId, snapshot.getLocationId());
+        assertEquals("Error: Wrong latitude", 64.7488, snapshot.getLat(), 0);
+        assertEquals("Error: Wrong longitude", -147.353, snapshot.getLon(), 0);
+        assertTrue("Error: Wrong time written", snapshot.getWrittenAt() >= before);
+        assertEquals("Error: Wrong number of days", TEST_DAYS, snapshot.size());
+
+        WeatherArrays expected = toArrays(mDays);
+        for (int row = 0; row < TEST_DAYS; row++) {
+            assertEquals("Error: Wrong date", expected.getDate(row), snapshot.getDate(row));
+            assertEquals("Error: Wrong weather id",
+                    expected.getWeatherId(row), snapshot.getWeatherId(row));
+            assertEquals("Error: Wrong description",
+                    expected.getShortDesc(row), snapshot.getShortDesc(row));
+            for (int m = 0; m < WeatherEntry.MEASUREMENT_COLUMNS.length; m++) {
+                assertEquals("Error: Wrong " + WeatherEntry.MEASUREMENT_COLUMNS[m],
+                        expected.getMeasurement(row, m), snapshot.getMeasurement(row, m), 0);
+            }
+        }
+    }
+
+    public void testReadRange() {
+        save(TestUtilities.TEST_LOCATION);
+        ForecastSnapshot snapshot = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION);
+
+        // any time of a day reads that day
+        long date = mDays[3].getAsLong(WeatherEntry.COLUMN_DATE);
+        WeatherArrays day = snapshot.read(date + 60 * 60 * 1000, date + 2 * 60 * 60 * 1000);
+        assertEquals("Error: Wrong number of days read", 1, day.size());
+        assertEquals("Error: Wrong day read", date, day.getDate(0));
+        assertEquals("Error: Wrong location id", mLocationRowId, day.getLocationId(0));
+        assertEquals("Error: Wrong high", 24.37, day.getMeasurement(0, WeatherArrays.MAX_TEMP), 0);
+
+        assertEquals("Error: The first row on a date after every day should be the end",
+                TEST_DAYS, snapshot.getFirstRow(Long.MAX_VALUE));
+    }
+
+    public void testOtherSettingOrVersion() throws IOException {
+        save(TestUtilities.TEST_LOCATION);
+        assertNull("Error: A snapshot was read for a setting without one",
+                ForecastSnapshot.open(mContext, "94043"));
+
+        File file = ForecastSnapshot.getFile(mContext, TestUtilities.TEST_LOCATION);
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.seek(4);
+            output.writeInt(ForecastSnapshotWriter.VERSION + 1);
+        } finally {
+            output.close();
+        }
+        assertNull("Error: A snapshot of another version was read",
+                ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION));
+
+        FileOutputStream truncated = new FileOutputStream(file);
+        truncated.write(new byte[]{0x46, 0x53});
+        truncated.close();
+        assertNull("Error: A truncated snapshot was read",
+                ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION));
+    }
+
+    /*
+        Reads today's weather from the snapshot and through the provider, and logs the time of
+        each.  Only the results are asserted, timings vary too much by device.
+     */
+    @LargeTest
+    public void testReadBenchmark() {
+        assertEquals("Error: Failure to insert test days", TEST_DAYS,
+                mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mDays));
+        save(TestUtilities.TEST_LOCATION);
+
+        long today = System.currentTimeMillis();
+        long providerMillis = 0;
+        long snapshotMillis = 0;
+        for (int i = 0; i < BENCHMARK_READS; i++) {
+            long startTime = SystemClock.elapsedRealtime();
+            WeatherArrays stored = WeatherArrays.read(mContext.getContentResolver(),
+                    mLocationRowId, today, today);
+            providerMillis += SystemClock.elapsedRealtime() - startTime;
+
+            startTime = SystemClock.elapsedRealtime();
+            WeatherArrays mapped = ForecastSnapshot.open(mContext, TestUtilities.TEST_LOCATION)
+                    .read(today, today);
+            snapshotMillis += SystemClock.elapsedRealtime() - startTime;
+
+            assertEquals("Error: Wrong number of days in the snapshot", 1, mapped.size());
+            assertEquals("Error: The snapshot has another day", stored.getDate(0), mapped.getDate(0));
+            assertEquals("Error: The snapshot has another description",
+                    stored.getShortDesc(0), mapped.getShortDesc(0));
+            for (int m = 0; m < WeatherEntry.MEASUREMENT_COLUMNS.length; m++) {
+                assertEquals("Error: The snapshot has another " + WeatherEntry.MEASUREMENT_COLUMNS[m],
+                        stored.getMeasurement(0, m), mapped.getMeasurement(0, m), 0);
+            }
+        }
+        Log.d(LOG_TAG, BENCHMARK_READS + " reads of today: provider " + providerMillis +
+                " ms, snapshot " + snapshotMillis + " ms");
+    }
+
+    private void save(String locationSetting) {
+        ForecastSnapshotWriter writer =
+                new ForecastSnapshotWriter(locationSetting, mLocationRowId, 64.7488, -147.353);
+        writer.add(toArrays(mDays));
+        try {
+            writer.save(mContext);
+        } catch (IOException e) {
+            fail("Error: The snapshot could not be written: " + e);
+        }
+    }
+
+    private static WeatherArrays toArrays(ContentValues[] days) {
+        WeatherArrays weather = new WeatherArrays(days.length);
+        for (ContentValues values : days) {
+            weather.add(values);
+        }
+        return weather;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+    Queries the nearest locations through the provider, and checks the grid search against
+    measuring the distance to every location in a database of 100,000 of them.
+ */
+public class TestNearestLocations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNearestLocations.class.getSimpleName();
+
+    private static final String BENCHMARK_DATABASE_NAME = "benchmark_locations.db";
+    private static final int BENCHMARK_LOCATIONS = 100000;
+    private static final int BENCHMARK_QUERIES = 1000;
+    private static final int BENCHMARK_COUNT = 5;
+
+    // name, lat, long
+    private static final Object[][] CITIES = {
+            {"London", 51.5074, -0.1278},
+            {"Paris", 48.8566, 2.3522},
+            {"Brussels", 50.8503, 4.3517},
+            {"New York", 40.7128, -74.0060},
+            {"Suva", -18.1248, 178.4501},
+            {"Apia", -13.8506, -171.7513},
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(RollupEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        for (Object[] city : CITIES) {
+            ContentValues values = new ContentValues();
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, (String) city[0]);
+            values.put(LocationEntry.COLUMN_CITY_NAME, (String) city[0]);
+            values.put(LocationEntry.COLUMN_COORD_LAT, (Double) city[1]);
+            values.put(LocationEntry.COLUMN_COORD_LONG, (Double) city[2]);
+            mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mContext.deleteDatabase(BENCHMARK_DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testNearest() {
+        // from Lille, Brussels is nearer than Paris, and London is third
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(50.6292, 3.0573, 3),
+                new String[]{LocationEntry.COLUMN_CITY_NAME, LocationEntry.COLUMN_DISTANCE},
+                null, null, null);
+        assertNearest(cursor, "Brussels", "Paris", "London");
+
+        // from Lille, Brussels is about 90 km away
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(50.6292, 3.0573, 1), null, null, null, null);
+        assertTrue("Error: Nearest query found no location", cursor.moveToFirst());
+        assertEquals("Error: Wrong distance to Brussels", 90,
+                cursor.getDouble(cursor.getColumnIndex(LocationEntry.COLUMN_DISTANCE)), 10);
+        assertEquals("Error: The nearest query should have every location column", "Brussels",
+                cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+    }
+
+    public void testNearestAcrossAntimeridian() {
+        // Suva and Apia are on either side of 180 degrees, New York is half a world away
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(-16.0, 179.9, 3),
+                new String[]{LocationEntry.COLUMN_CITY_NAME}, null, null, null);
+        assertNearest(cursor, "Suva", "Apia", "New York");
+    }
+
+    public void testNearestWithTooFewLocations() {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(0, 0, CITIES.length + 5), null, null, null, null);
+        assertEquals("Error: Every stored location should be returned", CITIES.length,
+                cursor.getCount());
+        cursor.close();
+    }
+
+    public void testNotACoordinate() {
+        double[][] coordinates = {{Double.NaN, 0}, {0, Double.NaN}, {91, 0}, {0, -181}};
+        for (double[] coordinate : coordinates) {
+            try {
+                mContext.getContentResolver().query(
+                        LocationEntry.buildNearestUri(coordinate[0], coordinate[1], 1),
+                        null, null, null, null);
+                fail("Error: Nearest locations were queried for " +
+                        coordinate[0] + ", " + coordinate[1]);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testMovedLocation() {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_COORD_LAT, -33.8688);
+        values.put(LocationEntry.COLUMN_COORD_LONG, 151.2093);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"London"});
+
+        // from Sydney, the moved location is now the nearest
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(-33.9, 151.2, 1),
+                new String[]{LocationEntry.COLUMN_CITY_NAME}, null, null, null);
+        assertNearest(cursor, "London");
+    }
+
+    private static void assertNearest(Cursor cursor, String... cities) {
+        assertEquals("Error: Nearest query returned the wrong number of locations",
+                cities.length, cursor.getCount());
+        for (int i = 0; i < cities.length; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals("Error: Wrong location at " + i, cities[i], cursor.getString(0));
+        }
+        cursor.close();
+    }
+
+    /*
+        Compares the grid search with a scan of every location and logs the time per query,
+        which should stay under a millisecond.  Only the results are asserted, timings vary
+        too much by device.
+     */
+    @LargeTest
+    public void testNearestBenchmark() {
+        mContext.deleteDatabase(BENCHMARK_DATABASE_NAME);
+        File file = mContext.getDatabasePath(BENCHMARK_DATABASE_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            new WeatherDbHelper(mContext).onCreate(db);
+            Random random = new Random(0);
+            double[] lats = new double[BENCHMARK_LOCATIONS];
+            double[] longs = new double[BENCHMARK_LOCATIONS];
+            fill(db, random, lats, longs);
+
+            long gridNanos = 0;
+            for (int q = 0; q < BENCHMARK_QUERIES; q++) {
+                double lat = -60 + random.nextDouble() * 130;
+                double lon = -180 + random.nextDouble() * 360;
+
+                long startTime = System.nanoTime();
+                Cursor cursor = NearestLocationFinder.query(db, lat, lon, BENCHMARK_COUNT,
+                        new String[]{LocationEntry.COLUMN_DISTANCE});
+                cursor.getCount();
+                gridNanos += System.nanoTime() - startTime;
+
+                double[] expected = getNearestDistances(lats, longs, lat, lon);
+                assertEquals("Error: Wrong number of nearest locations",
+                        BENCHMARK_COUNT, cursor.getCount());
+                for (int i = 0; cursor.moveToNext(); i++) {
+                    assertEquals("Error: The grid search missed a nearer location",
+                            expected[i], cursor.getDouble(0), 0.001);
+                }
+                cursor.close();
+            }
+            Log.d(LOG_TAG, BENCHMARK_QUERIES + " nearest queries over " + BENCHMARK_LOCATIONS +
+                    " locations: " + (gridNanos / BENCHMARK_QUERIES / 1000) + " us per query");
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void fill(SQLiteDatabase db, Random random, double[] lats, double[] longs) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + LocationEntry.TABLE_NAME +
+                " (" + LocationEntry.COLUMN_LOCATION_SETTING + ", " + LocationEntry.COLUMN_CITY_NAME +
+                ", " + LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG +
+                ") VALUES (?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < lats.length; i++) {
+                lats[i] = -60 + random.nextDouble() * 130;
+                longs[i] = -180 + random.nextDouble() * 360;
+                insert.bindString(1, "location" + i);
+                insert.bindString(2, "City " + i);
+                insert.bindDouble(3, lats[i]);
+                insert.bindDouble(4, longs[i]);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    // The BENCHMARK_COUNT smallest distances, by measuring every location.
+    private static double[] getNearestDistances(double[] lats, double[] longs,
+                                                double lat, double lon) {
+        double[] nearest = new double[BENCHMARK_COUNT];
+        Arrays.fill(nearest, Double.MAX_VALUE);
+        for (int i = 0; i < lats.length; i++) {
+            double distance = NearestLocationFinder.getDistanceKm(lat, lon, lats[i], longs[i]);
+            for (int j = 0; j < nearest.length; j++) {
+                if (distance < nearest[j]) {
+                    System.arraycopy(nearest, j, nearest, j + 1, nearest.length - j - 1);
+                    nearest[j] = distance;
+                    break;
+                }
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.RemoteException;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Counts how often a forecast CursorLoader would be told to reload during one sync.  The
+    observer is registered the same way Cursor.setNotificationUri registers the loader's
+    observer, on the Uri ForecastFragment queries, with notifyForDescendants set.
+ */
+public class TestNotificationCoalescer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNotificationCoalescer.class.getSimpleName();
+
+    private static final long SETTLE_MILLIS = 1000;
+
+    private ContentProviderClient mClient;
+    private WeatherProvider mProvider;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mProvider = (WeatherProvider) mClient.getLocalContentProvider();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mProvider.setNotificationDebounceMillis(NotificationCoalescer.DEFAULT_DEBOUNCE_MILLIS);
+        mClient.release();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() throws InterruptedException {
+        mProvider.setNotificationDebounceMillis(0);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        // let the notifications of the cleanup drain before anything starts counting
+        Thread.sleep(SETTLE_MILLIS);
+    }
+
+    public void testReloadsPerSyncWithoutCoalescing() throws InterruptedException {
+        mProvider.setNotificationDebounceMillis(0);
+        int reloads = countReloadsForOneSync();
+        Log.d(LOG_TAG, "Loader reloads per sync without coalescing: " + reloads);
+
+        // the bulk insert and the purge both notify the weather Uri
+        assertEquals("Error: Expected one reload per weather write without coalescing",
+                2, reloads);
+    }
+
+    public void testReloadsPerSyncWithCoalescing() throws InterruptedException {
+        mProvider.setNotificationDebounceMillis(NotificationCoalescer.DEFAULT_DEBOUNCE_MILLIS);
+        int reloads = countReloadsForOneSync();
+        Log.d(LOG_TAG, "Loader reloads per sync with coalescing: " + reloads);
+
+        assertEquals("Error: A sync should only make the forecast loader reload once",
+                1, reloads);
+    }
+
+    public void testRolledBackBatchDoesNotNotify()
+            throws InterruptedException, RemoteException {
+        mProvider.setNotificationDebounceMillis(0);
+        CountingObserver observer = CountingObserver.create();
+        mContext.getContentResolver().registerContentObserver(
+                LocationEntry.CONTENT_URI, true, observer);
+
+        try {
+            // the insert succeeds, then the assertion fails and rolls it back
+            ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>();
+            operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                    .withValues(TestUtilities.createNorthPoleLocationValues())
+                    .build());
+            operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                    .withExpectedCount(2)
+                    .build());
+            try {
+                mContext.getContentResolver()
+                        .applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+                fail("Error: The batch should have failed its assertion");
+            } catch (OperationApplicationException e) {
+                // expected
+            }
+
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals("Error: A rolled back batch notified its observers",
+                    0, observer.getCount());
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.quit();
+        }
+    }
+
+    /*
+        Replays the writes SunshineSyncAdapter makes for one sync: insert the location, bulk
+        insert the days, then purge the days before the first one.
+     */
+    private int countReloadsForOneSync() throws InterruptedException {
+        CountingObserver observer = CountingObserver.create();
+        Uri loaderUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        mContext.getContentResolver().registerContentObserver(loaderUri, true, observer);
+
+        try {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            Uri locationUri = mContext.getContentResolver()
+                    .insert(LocationEntry.CONTENT_URI, locationValues);
+            long locationRowId = ContentUris.parseId(locationUri);
+
+            ContentValues[] weatherValues =
+                    TestProvider.createBulkInsertWeatherValues(locationRowId);
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[] {Long.toString(TestUtilities.TEST_DATE)});
+
+            Thread.sleep(NotificationCoalescer.DEFAULT_DEBOUNCE_MILLIS + SETTLE_MILLIS);
+            return observer.getCount();
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.quit();
+        }
+    }
+
+    static class CountingObserver extends ContentObserver {
+        final HandlerThread mHT;
+        final AtomicInteger mCount = new AtomicInteger();
+
+        static CountingObserver create() {
+            HandlerThread ht = new HandlerThread("CountingObserverThread");
+            ht.start();
+            return new CountingObserver(ht);
+        }
+
+        private CountingObserver(HandlerThread ht) {
+            super(new Handler(ht.getLooper()));
+            mHT = ht;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            mCount.incrementAndGet();
+        }
+
+        int getCount() {
+            return mCount.get();
+        }
+
+        void quit() {
+            mHT.quit();
+        }
+    }
+}
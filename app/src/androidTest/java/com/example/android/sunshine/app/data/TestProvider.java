@@ -24,6 +24,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
@@ -56,6 +57,11 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                WeatherContract.RollupEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 LocationEntry.CONTENT_URI,
                 null,
@@ -155,6 +161,12 @@ public class TestProvider extends AndroidTestCase {
         assertEquals("Error: the WeatherEntry CONTENT_URI with location and date should return WeatherEntry.CONTENT_ITEM_TYPE",
                 WeatherEntry.CONTENT_ITEM_TYPE, type);
 
+        // content://com.example.android.sunshine.app/weather/id/3/1419120000
+        type = mContext.getContentResolver().getType(
+                WeatherEntry.buildWeatherLocationIdWithDate(3, testDate));
+        assertEquals("Error: the WeatherEntry CONTENT_URI with location id and date should return WeatherEntry.CONTENT_ITEM_TYPE",
+                WeatherEntry.CONTENT_ITEM_TYPE, type);
+
         // content://com.example.android.sunshine.app/location/
         type = mContext.getContentResolver().getType(LocationEntry.CONTENT_URI);
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
@@ -179,7 +191,7 @@ public class TestProvider extends AndroidTestCase {
         // Fantastic.  Now that we have a location, add some weather!
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
-        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = TestUtilities.insertWeatherValues(db, weatherValues);
         assertTrue("Unable to Insert WeatherEntry into the Database", weatherRowId != -1);
 
         db.close();
@@ -393,6 +405,155 @@ public class TestProvider extends AndroidTestCase {
                 weatherCursor, weatherValues);
     }
 
+    /*
+        Checks that date range Uris only return the days inside the range, and that paged Uris
+        split those days into pages without gaps or overlap.
+     */
+    public void testDateRangeAndPagingQueries() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        // days 2 through 5 of the inserted records
+        long millisecondsInADay = 1000*60*60*24;
+        long startDate = TestUtilities.TEST_DATE + 2 * millisecondsInADay;
+        long endDate = TestUtilities.TEST_DATE + 5 * millisecondsInADay;
+        Uri rangeUri = WeatherEntry.buildWeatherLocationWithDateRange(
+                TestUtilities.TEST_LOCATION, startDate, endDate);
+
+        Cursor cursor = mContext.getContentResolver().query(rangeUri, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Date range query returned the wrong number of days",
+                4, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 2; i <= 5; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testDateRangeAndPagingQueries.  Error validating range day " + i,
+                    cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+
+        // page through all of the days of the location, three at a time
+        Uri locationWeatherUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        int seen = 0;
+        for (int offset = 0; offset < BULK_INSERT_RECORDS_TO_INSERT; offset += 3) {
+            cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildPagedUri(locationWeatherUri, 3, offset), null, null, null, null);
+            assertEquals("Error: Page at offset " + offset + " has the wrong size",
+                    Math.min(3, BULK_INSERT_RECORDS_TO_INSERT - offset), cursor.getCount());
+            while (cursor.moveToNext()) {
+                TestUtilities.validateCurrentRecord("testDateRangeAndPagingQueries.  Error validating paged day " + seen,
+                        cursor, bulkInsertContentValues[seen]);
+                seen++;
+            }
+            cursor.close();
+        }
+        assertEquals("Error: Paging did not return every day exactly once",
+                BULK_INSERT_RECORDS_TO_INSERT, seen);
+    }
+
+    /*
+        Checks that the location id Uris return the same days as the location setting Uris.
+     */
+    public void testLocationIdQueries() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationId(locationRowId), null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Location id query returned the wrong number of days",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testLocationIdQueries.  Error validating day " + i,
+                    cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+
+        long millisecondsInADay = 1000*60*60*24;
+        long startDate = TestUtilities.TEST_DATE + 2 * millisecondsInADay;
+        long endDate = TestUtilities.TEST_DATE + 5 * millisecondsInADay;
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationIdWithDateRange(locationRowId, startDate, endDate),
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Location id date range query returned the wrong number of days",
+                4, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationIdWithStartDate(locationRowId, startDate),
+                null, null, null, null);
+        assertEquals("Error: Location id start date query returned the wrong number of days",
+                BULK_INSERT_RECORDS_TO_INSERT - 2, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationIdWithDate(locationRowId, startDate),
+                null, null, null, null);
+        TestUtilities.validateCursor("testLocationIdQueries.  Error validating the day",
+                cursor, bulkInsertContentValues[2]);
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationId(locationRowId + 1), null, null, null, null);
+        assertEquals("Error: Another location id should have no days", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Checks that the aggregate Uri groups the days inside SQLite: one row per bucket, with
+        the minimum, maximum and mean computed over the days of that bucket.
+     */
+    public void testAggregateQuery() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        long millisecondsInADay = 1000*60*60*24;
+        long endDate = TestUtilities.TEST_DATE + (BULK_INSERT_RECORDS_TO_INSERT - 1) * millisecondsInADay;
+
+        // one bucket per day
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.AggregateEntry.buildAggregateUri(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE, endDate, WeatherContract.AggregateEntry.BUCKET_DAY),
+                null, null, null, null);
+        assertEquals("Error: Daily aggregates should have one row per day",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // a bucket wide enough to hold every inserted day
+        String[] projection = {
+                WeatherContract.AggregateEntry.COLUMN_DAY_COUNT,
+                WeatherContract.AggregateEntry.COLUMN_MIN_TEMP,
+                WeatherContract.AggregateEntry.COLUMN_MAX_TEMP,
+                WeatherContract.AggregateEntry.COLUMN_AVG_MAX_TEMP
+        };
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.AggregateEntry.buildAggregateUri(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE, endDate, 1000),
+                projection, null, null, null);
+        assertTrue("Error: No aggregate returned", cursor.moveToFirst());
+        assertEquals("Error: Aggregate did not count every day",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getInt(0));
+        assertEquals("Error: Wrong lowest minimum temperature",
+                65.0 - (BULK_INSERT_RECORDS_TO_INSERT - 1), cursor.getDouble(1), 0.001);
+        assertEquals("Error: Wrong highest maximum temperature",
+                75.0 + (BULK_INSERT_RECORDS_TO_INSERT - 1), cursor.getDouble(2), 0.001);
+        assertEquals("Error: Wrong mean maximum temperature",
+                75.0 + (BULK_INSERT_RECORDS_TO_INSERT - 1) / 2.0, cursor.getDouble(3), 0.001);
+        assertFalse("Error: Expected a single aggregate row", cursor.moveToNext());
+        cursor.close();
+    }
+
     // Make sure we can still delete after adding/updating stuff
     //
     // Student: Uncomment this test after you have completed writing the delete functionality
@@ -422,6 +583,36 @@ public class TestProvider extends AndroidTestCase {
     }
 
 
+    // Selections on measurements mean the same units in update and delete as in query.
+    public void testUpdateAndDeleteByMeasurement() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        // highs of 75 to 84, the last five are at 80 or more
+        int deleted = mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_MAX_TEMP + " >= 80", null);
+        assertEquals("Error: Wrong number of rows deleted by high", 5, deleted);
+
+        // lows of 65 to 61 left, two of them at 62 or less
+        ContentValues updateValues = new ContentValues();
+        updateValues.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        int updated = mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, updateValues,
+                WeatherEntry.COLUMN_MIN_TEMP + " <= 62", null);
+        assertEquals("Error: Wrong number of rows updated by low", 2, updated);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_MIN_TEMP},
+                WeatherEntry.COLUMN_WEATHER_ID + " = ?", new String[]{"800"}, null);
+        assertEquals("Error: Wrong rows updated by low", 2, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertTrue("Error: Updated a low above 62", cursor.getDouble(0) <= 62);
+        }
+        cursor.close();
+    }
+
     static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
     static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
@@ -512,4 +703,47 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Writes a batch several times the size of one call through WeatherArrays.bulkWrite and
+        checks every day comes back, with its description, exactly as bulkInsert would store it.
+     */
+    public void testBulkWrite() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        int rows = 4 * WeatherContract.MAX_ROWS_PER_WRITE + 17;
+        long millisecondsInADay = 1000*60*60*24;
+        ContentValues[] values = new ContentValues[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationRowId);
+            values[i].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * millisecondsInADay);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i % 20);
+            values[i].put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 4);
+            values[i].put(WeatherEntry.COLUMN_SHORT_DESC, "Condition " + i % 4);
+        }
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        long startTime = SystemClock.elapsedRealtime();
+        int written = WeatherArrays.bulkWrite(mContext.getContentResolver(), values);
+        Log.d(LOG_TAG, "bulkWrite of " + rows + " rows took " +
+                (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals("Error: bulkWrite did not write every row", rows, written);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI, null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Wrong number of rows after bulkWrite", rows, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < rows; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testBulkWrite.  Error validating WeatherEntry " + i,
+                    cursor, values[i]);
+        }
+        cursor.close();
+    }
 }
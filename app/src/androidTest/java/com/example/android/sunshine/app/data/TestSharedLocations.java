@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Stores the weather of one location and a second location setting sharing it, then reads
+    the second one every way the provider offers and checks that it gets the first one's days,
+    labelled as its own.
+ */
+public class TestSharedLocations extends AndroidTestCase {
+
+    private static final long DAY = WeatherContract.DAY_IN_MILLIS;
+    private static final int TEST_DAYS = 10;
+    private static final String SHARING_LOCATION = "North Pole, AK";
+
+    private long mLocationId;
+    private long mSharingLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(RollupEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        mLocationId = ContentUris.parseId(mContext.getContentResolver()
+                .insert(LocationEntry.CONTENT_URI, locationValues));
+
+        ContentValues[] days = new ContentValues[TEST_DAYS];
+        for (int i = 0; i < TEST_DAYS; i++) {
+            days[i] = TestUtilities.createWeatherValues(mLocationId);
+            days[i].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * DAY);
+        }
+        WeatherArrays.bulkWrite(mContext.getContentResolver(), days);
+
+        ContentValues sharingValues = TestUtilities.createNorthPoleLocationValues();
+        sharingValues.put(LocationEntry.COLUMN_LOCATION_SETTING, SHARING_LOCATION);
+        sharingValues.put(LocationEntry.COLUMN_SHARED_ID, mLocationId);
+        mSharingLocationId = ContentUris.parseId(mContext.getContentResolver()
+                .insert(LocationEntry.CONTENT_URI, sharingValues));
+    }
+
+    public void testWeatherQueries() {
+        assertSharedDays("Error: Reading by the sharing location setting",
+                WeatherEntry.buildWeatherLocation(SHARING_LOCATION), TEST_DAYS);
+        assertSharedDays("Error: Reading a date range by the sharing location setting",
+                WeatherEntry.buildWeatherLocationWithDateRange(SHARING_LOCATION,
+                        TestUtilities.TEST_DATE, TestUtilities.TEST_DATE + 2 * DAY), 3);
+        assertSharedDays("Error: Reading by the sharing location id",
+                WeatherEntry.buildWeatherLocationId(mSharingLocationId), TEST_DAYS);
+        assertSharedDays("Error: Reading a day by the sharing location id",
+                WeatherEntry.buildWeatherLocationIdWithDate(mSharingLocationId,
+                        TestUtilities.TEST_DATE), 1);
+
+        WeatherArrays weather = WeatherArrays.read(mContext.getContentResolver(),
+                SHARING_LOCATION, TestUtilities.TEST_DATE, TestUtilities.TEST_DATE + DAY);
+        assertEquals("Error: Reading arrays by the sharing location setting", 2, weather.size());
+        weather = WeatherArrays.read(mContext.getContentResolver(),
+                mSharingLocationId, TestUtilities.TEST_DATE, TestUtilities.TEST_DATE + DAY);
+        assertEquals("Error: Reading arrays by the sharing location id", 2, weather.size());
+    }
+
+    public void testRollups() {
+        // roll every test day up into its week and month
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.EXTRA_NOW, TestUtilities.TEST_DATE +
+                (RollupEntry.DAILY_RETENTION_DAYS + TEST_DAYS) * DAY);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_MAINTENANCE, TestUtilities.TEST_LOCATION, extras);
+
+        Cursor expected = mContext.getContentResolver().query(
+                RollupEntry.buildRollupUri(RollupEntry.PERIOD_MONTHLY, TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        Cursor shared = mContext.getContentResolver().query(
+                RollupEntry.buildRollupUri(RollupEntry.PERIOD_MONTHLY, SHARING_LOCATION),
+                null, null, null, null);
+        assertTrue("Error: Nothing was rolled up", expected.getCount() > 0);
+        assertEquals("Error: The sharing location has different rollups",
+                expected.getCount(), shared.getCount());
+        expected.close();
+        shared.close();
+    }
+
+    public void testSharedCell() {
+        // a few hundred meters from the stored location
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.buildSharedCellSelection(),
+                LocationEntry.buildSharedCellArgs(64.75, -147.35, 1),
+                null);
+        assertTrue("Error: No location found in the shared cell", cursor.moveToFirst());
+        assertEquals("Error: Only the location with weather of its own can be shared",
+                1, cursor.getCount());
+        assertEquals("Error: Wrong location in the shared cell", mLocationId, cursor.getLong(0));
+        cursor.close();
+
+        // two cells south, which a larger cell covers
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.buildSharedCellSelection(),
+                LocationEntry.buildSharedCellArgs(64.55, -147.35, 1),
+                null);
+        assertEquals("Error: A location was found in another cell", 0, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.buildSharedCellSelection(),
+                LocationEntry.buildSharedCellArgs(64.55, -147.35, 10),
+                null);
+        assertEquals("Error: No location found in a larger shared cell", 1, cursor.getCount());
+        cursor.close();
+    }
+
+    // The days are those stored for the shared location, under the sharing location's columns.
+    private void assertSharedDays(String error, Uri uri, int days) {
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, LocationEntry.COLUMN_LOCATION_SETTING,
+                        WeatherEntry.COLUMN_DATE},
+                null, null, null);
+        assertEquals(error + " returned the wrong number of days", days, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertEquals(error + " returned another location id",
+                    mSharingLocationId, cursor.getLong(0));
+            assertEquals(error + " returned another location setting",
+                    SHARING_LOCATION, cursor.getString(1));
+            assertTrue(error + " returned a day that was not stored",
+                    cursor.getLong(2) >= TestUtilities.TEST_DATE &&
+                            cursor.getLong(2) < TestUtilities.TEST_DATE + TEST_DAYS * DAY);
+        }
+        cursor.close();
+    }
+}
@@ -34,8 +34,20 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_LOCATION_DIR = WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION_QUERY);
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_RANGE_DIR = WeatherContract.WeatherEntry.buildPagedUri(
+            WeatherContract.WeatherEntry.buildWeatherLocationWithDateRange(LOCATION_QUERY, TEST_DATE, TEST_DATE + 7 * 86400000L), 3, 0);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_ID_DIR = WeatherContract.WeatherEntry.buildWeatherLocationId(TEST_LOCATION_ID);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationIdWithDate(TEST_LOCATION_ID, TEST_DATE);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_RANGE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationIdWithDateRange(
+            TEST_LOCATION_ID, TEST_DATE, TEST_DATE + 7 * 86400000L);
+    private static final Uri TEST_AGGREGATE_DIR = WeatherContract.AggregateEntry.buildAggregateUri(
+            LOCATION_QUERY, TEST_DATE, TEST_DATE + 30 * 86400000L, WeatherContract.AggregateEntry.BUCKET_WEEK);
+    private static final Uri TEST_ROLLUP_DIR = WeatherContract.RollupEntry.CONTENT_URI;
+    private static final Uri TEST_ROLLUP_WITH_LOCATION_DIR = WeatherContract.RollupEntry.buildRollupUri(
+            WeatherContract.RollupEntry.PERIOD_MONTHLY, LOCATION_QUERY);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_LOCATION_NEAREST_DIR = WeatherContract.LocationEntry.buildNearestUri(51.5, -0.12, 3);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -51,7 +63,23 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_DIR), WeatherProvider.WEATHER_WITH_LOCATION);
         assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        assertEquals("Error: The WEATHER WITH LOCATION AND DATE RANGE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_RANGE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE_RANGE);
+        assertEquals("Error: The WEATHER WITH LOCATION ID URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_ID_DIR), WeatherProvider.WEATHER_WITH_LOCATION_ID);
+        assertEquals("Error: The WEATHER WITH LOCATION ID AND DATE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_ID_AND_DATE);
+        assertEquals("Error: The WEATHER WITH LOCATION ID AND DATE RANGE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_RANGE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_ID_AND_DATE_RANGE);
+        assertEquals("Error: The AGGREGATE URI was matched incorrectly.",
+                testMatcher.match(TEST_AGGREGATE_DIR), WeatherProvider.AGGREGATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEAREST URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAREST_DIR), WeatherProvider.LOCATION_NEAREST);
+        assertEquals("Error: The ROLLUP URI was matched incorrectly.",
+                testMatcher.match(TEST_ROLLUP_DIR), WeatherProvider.ROLLUP);
+        assertEquals("Error: The ROLLUP WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_ROLLUP_WITH_LOCATION_DIR), WeatherProvider.ROLLUP_WITH_LOCATION);
     }
 }
@@ -62,6 +62,26 @@ public class TestUtilities extends AndroidTestCase {
         return weatherValues;
     }
 
+    /*
+        Inserts weather values straight into the database the way the provider stores them: the
+        description goes into the condition dictionary, the rest into the weather table with
+        the measurements scaled.
+     */
+    static long insertWeatherValues(SQLiteDatabase db, ContentValues weatherValues) {
+        ContentValues rowValues = WeatherDbHelper.scaleMeasurements(weatherValues);
+        rowValues.remove(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+
+        ContentValues conditionValues = new ContentValues();
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_CONDITION_ID,
+                weatherValues.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_SHORT_DESC,
+                weatherValues.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertTrue("Error: Failure to insert condition",
+                db.replace(WeatherContract.ConditionEntry.TABLE_NAME, null, conditionValues) != -1);
+
+        return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, rowValues);
+    }
+
     /*
         Students: You can uncomment this helper function once you have finished creating the
         LocationEntry part of the WeatherContract.
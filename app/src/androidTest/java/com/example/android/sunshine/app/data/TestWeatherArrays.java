@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Reads weather through WeatherArrays.read and checks it against what the cursor queries
+    return, then times both ways of reading today's weather the way the notification does.
+ */
+public class TestWeatherArrays extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherArrays.class.getSimpleName();
+
+    private static final long DAY = WeatherContract.DAY_IN_MILLIS;
+    private static final int TEST_DAYS = 14;
+    private static final int BENCHMARK_READS = 500;
+
+    // what the notification reads
+    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    private ContentValues[] mDays;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(RollupEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, locationValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        mDays = new ContentValues[TEST_DAYS];
+        for (int i = 0; i < TEST_DAYS; i++) {
+            mDays[i] = TestUtilities.createWeatherValues(locationRowId);
+            mDays[i].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * DAY);
+            mDays[i].put(WeatherEntry.COLUMN_MAX_TEMP, 75.25 + i);
+            mDays[i].put(WeatherEntry.COLUMN_MIN_TEMP, 65.5 - i);
+            mDays[i].put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 3);
+            mDays[i].put(WeatherEntry.COLUMN_SHORT_DESC, "Condition " + i % 3);
+        }
+        assertEquals("Error: Failure to insert test days", TEST_DAYS,
+                WeatherArrays.bulkWrite(mContext.getContentResolver(), mDays));
+    }
+
+    public void testReadDateRange() {
+        WeatherArrays weather = WeatherArrays.read(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE + 2 * DAY,
+                TestUtilities.TEST_DATE + 5 * DAY);
+        assertEquals("Error: Date range read returned the wrong number of days", 4, weather.size());
+
+        for (int row = 0; row < weather.size(); row++) {
+            ContentValues expected = mDays[row + 2];
+            String error = "Error: Wrong value in day " + (row + 2);
+            assertEquals(error, expected.getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                    weather.getDate(row));
+            assertEquals(error, expected.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                    weather.getWeatherId(row));
+            assertEquals(error, expected.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    weather.getShortDesc(row));
+            for (int m = 0; m < WeatherEntry.MEASUREMENT_COLUMNS.length; m++) {
+                assertEquals(error, expected.getAsDouble(WeatherEntry.MEASUREMENT_COLUMNS[m]),
+                        weather.getMeasurement(row, m), 0.001);
+            }
+        }
+    }
+
+    public void testReadByLocationId() {
+        long locationId = mDays[0].getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        WeatherArrays weather = WeatherArrays.read(mContext.getContentResolver(), locationId,
+                TestUtilities.TEST_DATE + 2 * DAY, TestUtilities.TEST_DATE + 5 * DAY);
+        assertEquals("Error: Location id read returned the wrong number of days", 4, weather.size());
+        for (int row = 0; row < weather.size(); row++) {
+            assertEquals("Error: Wrong day " + (row + 2),
+                    mDays[row + 2].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                    weather.getDate(row));
+            assertEquals("Error: Wrong location in day " + (row + 2), locationId,
+                    weather.getLocationId(row));
+        }
+    }
+
+    public void testReadUnknownLocation() {
+        WeatherArrays weather = WeatherArrays.read(mContext.getContentResolver(),
+                "nowhere", TestUtilities.TEST_DATE, TestUtilities.TEST_DATE + TEST_DAYS * DAY);
+        assertEquals("Error: An unknown location should have no days", 0, weather.size());
+    }
+
+    // A call without extras reads today, rather than failing in the provider.
+    public void testReadWithoutExtras() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues todayValues = new ContentValues(mDays[0]);
+        todayValues.put(WeatherEntry.COLUMN_DATE, today);
+        WeatherArrays.bulkWrite(mContext.getContentResolver(), new ContentValues[]{todayValues});
+
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_READ_WEATHER, TestUtilities.TEST_LOCATION, null);
+        WeatherArrays weather = WeatherArrays.fromBundle(result);
+        assertEquals("Error: A read without extras returned the wrong number of days",
+                1, weather.size());
+        assertEquals("Error: A read without extras returned another day", today,
+                weather.getDate(0));
+    }
+
+    /*
+        Reads one day's four notification values over and over through both paths.  Only logs
+        the result, timings vary too much by device to assert on.
+     */
+    public void testReadBenchmark() {
+        Uri dayUri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+
+        double cursorSum = 0;
+        long startTime = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_READS; i++) {
+            Cursor cursor = mContext.getContentResolver().query(dayUri,
+                    NOTIFY_WEATHER_PROJECTION, null, null, null);
+            assertTrue("Error: Cursor read found no day", cursor.moveToFirst());
+            cursorSum += cursor.getInt(0) + cursor.getDouble(1) + cursor.getDouble(2);
+            assertNotNull(cursor.getString(3));
+            cursor.close();
+        }
+        long cursorMillis = SystemClock.elapsedRealtime() - startTime;
+
+        double arraysSum = 0;
+        startTime = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_READS; i++) {
+            WeatherArrays weather = WeatherArrays.read(mContext.getContentResolver(),
+                    TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, TestUtilities.TEST_DATE);
+            assertEquals("Error: Array read found no day", 1, weather.size());
+            arraysSum += weather.getWeatherId(0) + weather.getMeasurement(0, WeatherArrays.MAX_TEMP) +
+                    weather.getMeasurement(0, WeatherArrays.MIN_TEMP);
+            assertNotNull(weather.getShortDesc(0));
+        }
+        long arraysMillis = SystemClock.elapsedRealtime() - startTime;
+
+        Log.d(LOG_TAG, BENCHMARK_READS + " reads of one day: cursor " + cursorMillis +
+                " ms, arrays " + arraysMillis + " ms");
+        assertEquals("Error: Both paths should read the same values", cursorSum, arraysSum, 0.001);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract.DisplayEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/*
+    Formats the display strings through the provider and checks that they are what the list and
+    the detail view would have formatted, and that changing the weather or the locale has them
+    formatted again.
+ */
+public class TestWeatherDisplay extends AndroidTestCase {
+
+    private static final long DAY = WeatherContract.DAY_IN_MILLIS;
+    private static final int TEST_DAYS = 3;
+
+    private static final String[] DISPLAY_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            DisplayEntry.COLUMN_LOCALE,
+            DisplayEntry.COLUMN_HIGH_METRIC,
+            DisplayEntry.COLUMN_LOW_METRIC,
+            DisplayEntry.COLUMN_HIGH_IMPERIAL,
+            DisplayEntry.COLUMN_LOW_IMPERIAL,
+            DisplayEntry.COLUMN_WIND_METRIC,
+            DisplayEntry.COLUMN_WIND_IMPERIAL,
+            DisplayEntry.COLUMN_HUMIDITY,
+            DisplayEntry.COLUMN_PRESSURE
+    };
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        mLocationRowId = ContentUris.parseId(locationUri);
+        insertDays(0);
+    }
+
+    public void testFormatsEveryDay() {
+        assertEquals("Error: Every day should have been formatted", TEST_DAYS, formatDisplay());
+        assertEquals("Error: Days with strings were formatted again", 0, formatDisplay());
+        assertDisplay(TEST_DAYS);
+    }
+
+    public void testChangedDaysAreFormattedAgain() {
+        formatDisplay();
+
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 90);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(TestUtilities.TEST_DATE)});
+        assertEquals("Error: An updated day kept its strings", TEST_DAYS - 1, countFormatted());
+        assertEquals("Error: Only the updated day should have been formatted", 1, formatDisplay());
+        assertDisplay(TEST_DAYS);
+
+        // a sync writing the days again replaces their rows
+        insertDays(5);
+        assertEquals("Error: Replaced days should have been formatted", TEST_DAYS, formatDisplay());
+        assertDisplay(TEST_DAYS);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(TestUtilities.TEST_DATE)});
+        assertEquals("Error: A deleted day kept its strings", TEST_DAYS - 1, countFormatted());
+    }
+
+    public void testLocaleChange() {
+        formatDisplay();
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY.equals(locale) ? Locale.FRANCE : Locale.GERMANY);
+            assertEquals("Error: Days were not formatted in the new locale",
+                    TEST_DAYS, formatDisplay());
+            assertDisplay(TEST_DAYS);
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private void insertDays(int warmer) {
+        ContentValues[] values = new ContentValues[TEST_DAYS];
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < TEST_DAYS; i++, date += DAY) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 21.5 + i + warmer);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, -3.25 - i + warmer);
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 4.5 * i);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 100 * i);
+            values[i] = weatherValues;
+        }
+        assertEquals("Error: Failure to insert test days", TEST_DAYS,
+                mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values));
+    }
+
+    private int formatDisplay() {
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_FORMAT_DISPLAY, null, null);
+        assertNotNull("Error: The provider did not format the display strings", result);
+        return result.getInt(WeatherContract.EXTRA_ROWS_FORMATTED);
+    }
+
+    private Cursor queryDays() {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                DISPLAY_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    private int countFormatted() {
+        Cursor cursor = queryDays();
+        int count = 0;
+        while (cursor.moveToNext()) {
+            if (!cursor.isNull(7)) {
+                count++;
+            }
+        }
+        cursor.close();
+        return count;
+    }
+
+    // Every day has strings in the current locale, the same as Utility formats.
+    private void assertDisplay(int days) {
+        Cursor cursor = queryDays();
+        assertEquals("Error: Wrong number of days", days, cursor.getCount());
+        while (cursor.moveToNext()) {
+            double high = cursor.getDouble(1);
+            double low = cursor.getDouble(2);
+            float humidity = cursor.getFloat(3);
+            float pressure = cursor.getFloat(4);
+            float windSpeed = cursor.getFloat(5);
+            float degrees = cursor.getFloat(6);
+
+            assertEquals("Error: Wrong locale",
+                    DisplayEntry.getCurrentLocale(), cursor.getString(7));
+            assertEquals("Error: Wrong metric high",
+                    Utility.formatTemperature(mContext, high, true), cursor.getString(8));
+            assertEquals("Error: Wrong metric low",
+                    Utility.formatTemperature(mContext, low, true), cursor.getString(9));
+            assertEquals("Error: Wrong imperial high",
+                    Utility.formatTemperature(mContext, high, false), cursor.getString(10));
+            assertEquals("Error: Wrong imperial low",
+                    Utility.formatTemperature(mContext, low, false), cursor.getString(11));
+            assertEquals("Error: Wrong metric wind",
+                    Utility.getFormattedWind(mContext, windSpeed, degrees, true),
+                    cursor.getString(12));
+            assertEquals("Error: Wrong imperial wind",
+                    Utility.getFormattedWind(mContext, windSpeed, degrees, false),
+                    cursor.getString(13));
+            assertEquals("Error: Wrong humidity",
+                    mContext.getString(R.string.format_humidity, humidity), cursor.getString(14));
+            assertEquals("Error: Wrong pressure",
+                    mContext.getString(R.string.format_pressure, pressure), cursor.getString(15));
+        }
+        cursor.close();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Runs retention passes through the provider, with "now" moved forward so that the inserted
+    test days fall out of the daily window.
+ */
+public class TestWeatherRetention extends AndroidTestCase {
+
+    private static final long DAY = WeatherContract.DAY_IN_MILLIS;
+
+    // 10 days from TestUtilities.TEST_DATE, all in the same month
+    private static final int TEST_DAYS = 10;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(RollupEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    public void testRollsUpDaysOutsideDailyWindow() {
+        insertDays(TEST_DAYS);
+
+        Bundle result = runPass(TestUtilities.TEST_DATE +
+                (TEST_DAYS + RollupEntry.DAILY_RETENTION_DAYS) * DAY);
+        assertEquals("Error: Every day before the daily window should have been rolled up",
+                TEST_DAYS, result.getInt(WeatherContract.EXTRA_ROWS_ROLLED_UP));
+        assertEquals("Error: Rolled up days were not deleted", 0, countDays());
+
+        assertMonth(TEST_DAYS);
+        assertEquals("Error: Weekly rollups do not add up to the rolled up days",
+                TEST_DAYS, sumWeeklyDayCounts());
+    }
+
+    /*
+        Rolls the days up over two passes and checks the result matches a single pass, which
+        it only does if folding a day into an existing bucket keeps the earlier days intact.
+     */
+    public void testRollsUpIncrementally() {
+        insertDays(TEST_DAYS);
+
+        int firstHalf = TEST_DAYS / 2;
+        Bundle result = runPass(TestUtilities.TEST_DATE +
+                (firstHalf + RollupEntry.DAILY_RETENTION_DAYS) * DAY);
+        assertEquals("Error: Days inside the daily window should have been kept",
+                firstHalf, result.getInt(WeatherContract.EXTRA_ROWS_ROLLED_UP));
+        assertEquals("Error: Days inside the daily window should have been kept",
+                TEST_DAYS - firstHalf, countDays());
+
+        result = runPass(TestUtilities.TEST_DATE +
+                (TEST_DAYS + RollupEntry.DAILY_RETENTION_DAYS) * DAY);
+        assertEquals("Error: The second pass should roll up the remaining days",
+                TEST_DAYS - firstHalf, result.getInt(WeatherContract.EXTRA_ROWS_ROLLED_UP));
+
+        assertMonth(TEST_DAYS);
+        assertEquals("Error: Weekly rollups do not add up to the rolled up days",
+                TEST_DAYS, sumWeeklyDayCounts());
+    }
+
+    public void testPrunesOldWeeksButKeepsMonths() {
+        insertDays(TEST_DAYS);
+        runPass(TestUtilities.TEST_DATE + (TEST_DAYS + RollupEntry.DAILY_RETENTION_DAYS) * DAY);
+
+        Bundle result = runPass(TestUtilities.TEST_DATE +
+                (TEST_DAYS + RollupEntry.WEEKLY_RETENTION_DAYS + 7) * DAY);
+        assertTrue("Error: Weeks older than the weekly window were not pruned",
+                result.getInt(WeatherContract.EXTRA_ROWS_PRUNED) > 0);
+        assertEquals("Error: Weeks older than the weekly window were not pruned",
+                0, sumWeeklyDayCounts());
+
+        assertMonth(TEST_DAYS);
+    }
+
+    /*
+        A pass only does a bounded amount of work, whatever the size of the backlog.
+     */
+    public void testPassIsBounded() {
+        int passLimit = WeatherRetention.BATCH_SIZE * WeatherRetention.MAX_BATCHES_PER_PASS;
+        int backlog = passLimit + WeatherRetention.BATCH_SIZE / 2;
+        insertDays(backlog);
+
+        long now = TestUtilities.TEST_DATE + (backlog + RollupEntry.DAILY_RETENTION_DAYS) * DAY;
+        Bundle result = runPass(now);
+        assertEquals("Error: A pass rolled up more than its limit",
+                passLimit, result.getInt(WeatherContract.EXTRA_ROWS_ROLLED_UP));
+
+        result = runPass(now);
+        assertEquals("Error: The next pass should pick up the rest of the backlog",
+                backlog - passLimit, result.getInt(WeatherContract.EXTRA_ROWS_ROLLED_UP));
+        assertEquals("Error: Rolled up days were not deleted", 0, countDays());
+    }
+
+    private void insertDays(int days) {
+        ContentValues[] values = new ContentValues[days];
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < days; i++, date += DAY) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - i);
+            values[i] = weatherValues;
+        }
+        assertEquals("Error: Failure to insert test days",
+                days, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values));
+    }
+
+    private Bundle runPass(long now) {
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.EXTRA_NOW, now);
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_MAINTENANCE, null, extras);
+        assertNotNull("Error: The provider did not run the retention pass", result);
+        return result;
+    }
+
+    private int countDays() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private int sumWeeklyDayCounts() {
+        Cursor cursor = mContext.getContentResolver().query(
+                RollupEntry.buildRollupUri(RollupEntry.PERIOD_WEEKLY, TestUtilities.TEST_LOCATION),
+                new String[]{RollupEntry.COLUMN_DAY_COUNT}, null, null, null);
+        int sum = 0;
+        while (cursor.moveToNext()) {
+            sum += cursor.getInt(0);
+        }
+        cursor.close();
+        return sum;
+    }
+
+    // All test days are in one month, so the monthly rollup has to match them exactly.
+    private void assertMonth(int days) {
+        String[] projection = {
+                AggregateEntry.COLUMN_DAY_COUNT,
+                AggregateEntry.COLUMN_MIN_TEMP,
+                AggregateEntry.COLUMN_MAX_TEMP,
+                AggregateEntry.COLUMN_AVG_MAX_TEMP
+        };
+        Cursor cursor = mContext.getContentResolver().query(
+                RollupEntry.buildRollupUri(RollupEntry.PERIOD_MONTHLY, TestUtilities.TEST_LOCATION),
+                projection, null, null, null);
+        assertTrue("Error: No monthly rollup", cursor.moveToFirst());
+        assertEquals("Error: Monthly rollup did not count every day", days, cursor.getInt(0));
+        assertEquals("Error: Wrong lowest minimum temperature",
+                65.0 - (days - 1), cursor.getDouble(1), 0.001);
+        assertEquals("Error: Wrong highest maximum temperature",
+                75.0 + (days - 1), cursor.getDouble(2), 0.001);
+        assertEquals("Error: Wrong mean maximum temperature",
+                75.0 + (days - 1) / 2.0, cursor.getDouble(3), 0.001);
+        assertFalse("Error: Expected a single monthly rollup", cursor.moveToNext());
+        cursor.close();
+    }
+}
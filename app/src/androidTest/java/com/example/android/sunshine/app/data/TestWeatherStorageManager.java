@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashSet;
+
+/*
+    Fills the database with a handful of locations, then runs maintenance passes with a budget
+    they do not fit in and checks which locations survive.
+ */
+public class TestWeatherStorageManager extends AndroidTestCase {
+
+    private static final int TEST_LOCATIONS = 5;
+    private static final int TEST_DAYS_PER_LOCATION = 20;
+    private static final String TEST_LOCATION_PREFIX = "storage";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(RollupEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        // location i was last read at time i, so they are evicted in the order they were added
+        long millisecondsInADay = 1000*60*60*24;
+        for (int l = 0; l < TEST_LOCATIONS; l++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION_PREFIX + l);
+            locationValues.put(LocationEntry.COLUMN_LAST_ACCESS, l);
+            Uri locationUri = mContext.getContentResolver()
+                    .insert(LocationEntry.CONTENT_URI, locationValues);
+            long locationRowId = ContentUris.parseId(locationUri);
+
+            ContentValues[] weatherValues = new ContentValues[TEST_DAYS_PER_LOCATION];
+            for (int d = 0; d < TEST_DAYS_PER_LOCATION; d++) {
+                weatherValues[d] = TestUtilities.createWeatherValues(locationRowId);
+                weatherValues[d].put(WeatherEntry.COLUMN_DATE,
+                        TestUtilities.TEST_DATE + d * millisecondsInADay);
+            }
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+        }
+    }
+
+    /*
+        With room for two locations, the one in use and the most recently read one are kept.
+        Reading a location's forecast through the provider has to count as using it.
+     */
+    public void testEvictsLeastRecentlyUsedLocations() {
+        // read an old location, so that it becomes the most recently used one
+        String readLocation = TEST_LOCATION_PREFIX + 1;
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(readLocation), null, null, null, null);
+        cursor.close();
+
+        String protectedLocation = TEST_LOCATION_PREFIX + 0;
+        Bundle result = runPass(protectedLocation, Long.MAX_VALUE, 2 * TEST_DAYS_PER_LOCATION);
+
+        assertEquals("Error: Wrong number of locations evicted",
+                TEST_LOCATIONS - 2, result.getInt(WeatherContract.EXTRA_LOCATIONS_EVICTED));
+        HashSet<String> remaining = getLocationSettings();
+        assertEquals("Error: Wrong number of locations left", 2, remaining.size());
+        assertTrue("Error: The location in use was evicted", remaining.contains(protectedLocation));
+        assertTrue("Error: The most recently read location was evicted",
+                remaining.contains(readLocation));
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: Weather rows of evicted locations were left behind",
+                2 * TEST_DAYS_PER_LOCATION, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        A location sharing the weather of the least recently read one keeps it from eviction by
+        being read, and goes along with it once it is evicted.
+     */
+    public void testSharedLocationsAreEvictedTogether() {
+        ContentValues sharingValues = TestUtilities.createNorthPoleLocationValues();
+        sharingValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "sharing");
+        sharingValues.put(LocationEntry.COLUMN_SHARED_ID, getLocationId(TEST_LOCATION_PREFIX + 0));
+        sharingValues.put(LocationEntry.COLUMN_LAST_ACCESS, TEST_LOCATIONS);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, sharingValues);
+
+        // room for two locations' weather, the one in use and the one read through "sharing"
+        String protectedLocation = TEST_LOCATION_PREFIX + 4;
+        runPass(protectedLocation, Long.MAX_VALUE, 2 * TEST_DAYS_PER_LOCATION);
+        HashSet<String> remaining = getLocationSettings();
+        assertTrue("Error: A location was evicted while its weather was read through another",
+                remaining.contains(TEST_LOCATION_PREFIX + 0));
+        assertTrue("Error: The sharing location was evicted", remaining.contains("sharing"));
+
+        // no room for anything but the location in use
+        runPass(protectedLocation, Long.MAX_VALUE, TEST_DAYS_PER_LOCATION);
+        remaining = getLocationSettings();
+        assertEquals("Error: Wrong number of locations left", 1, remaining.size());
+        assertFalse("Error: A location was left sharing evicted weather",
+                remaining.contains("sharing"));
+    }
+
+    /*
+        A byte budget nothing fits in evicts everything but the location in use, and the freed
+        pages go back to the filesystem.
+     */
+    public void testByteBudgetAndIncrementalVacuum() {
+        String protectedLocation = TEST_LOCATION_PREFIX + 2;
+        Bundle result = runPass(protectedLocation, 1, Long.MAX_VALUE);
+
+        assertEquals("Error: Every location but the one in use should have been evicted",
+                TEST_LOCATIONS - 1, result.getInt(WeatherContract.EXTRA_LOCATIONS_EVICTED));
+        HashSet<String> remaining = getLocationSettings();
+        assertEquals("Error: Wrong number of locations left", 1, remaining.size());
+        assertTrue("Error: The location in use was evicted", remaining.contains(protectedLocation));
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        assertEquals("Error: The database was not switched to incremental auto-vacuum",
+                2, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
+        assertEquals("Error: Freed pages were not returned to the filesystem",
+                0, DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null));
+        db.close();
+    }
+
+    public void testWithinBudgetEvictsNothing() {
+        Bundle result = runPass(TEST_LOCATION_PREFIX + 0,
+                WeatherContract.DEFAULT_MAX_DATABASE_BYTES, WeatherContract.DEFAULT_MAX_ROWS);
+        assertEquals("Error: Nothing should be evicted within the budget",
+                0, result.getInt(WeatherContract.EXTRA_LOCATIONS_EVICTED));
+        assertEquals("Error: Nothing should be evicted within the budget",
+                TEST_LOCATIONS, getLocationSettings().size());
+    }
+
+    private Bundle runPass(String protectedLocation, long maxBytes, long maxRows) {
+        Bundle extras = new Bundle();
+        // keep every test day inside the daily window, so only eviction removes rows
+        extras.putLong(WeatherContract.EXTRA_NOW, TestUtilities.TEST_DATE);
+        extras.putLong(WeatherContract.EXTRA_MAX_DATABASE_BYTES, maxBytes);
+        extras.putLong(WeatherContract.EXTRA_MAX_ROWS, maxRows);
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_MAINTENANCE, protectedLocation, extras);
+        assertNotNull("Error: The provider did not run the maintenance pass", result);
+        return result;
+    }
+
+    private long getLocationId(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID}, LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting}, null);
+        assertTrue("Error: No location " + locationSetting, cursor.moveToFirst());
+        long locationId = cursor.getLong(0);
+        cursor.close();
+        return locationId;
+    }
+
+    private HashSet<String> getLocationSettings() {
+        HashSet<String> settings = new HashSet<String>();
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+        while (cursor.moveToNext()) {
+            settings.add(cursor.getString(0));
+        }
+        cursor.close();
+        return settings;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.preference.EditTextPreference;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.AutoCompleteTextView;
+import android.widget.BaseAdapter;
+import android.widget.EditText;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.data.CityIndex;
+
+/**
+ * The location setting, an {@link EditTextPreference} that suggests cities from the bundled
+ * {@link CityIndex} as the user types.  Anything can still be typed, a place the index doesn't
+ * know is looked up by name when the weather is fetched.
+ */
+public class CityPreference extends EditTextPreference {
+
+    private static final int SUGGESTIONS = 20;
+
+    private final AutoCompleteTextView mCityText;
+
+    public CityPreference(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mCityText = new AutoCompleteTextView(context, attrs);
+        mCityText.setId(android.R.id.edit);
+        mCityText.setThreshold(2);
+        mCityText.setAdapter(new CityAdapter(context));
+    }
+
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        // show our text view in place of the plain one
+        mCityText.setText(getText());
+        ViewParent parent = mCityText.getParent();
+        if (parent != null) {
+            ((ViewGroup) parent).removeView(mCityText);
+        }
+        super.onAddEditTextToDialogView(dialogView, mCityText);
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        if (positiveResult) {
+            String value = mCityText.getText().toString();
+            if (callChangeListener(value)) {
+                setText(value);
+            }
+        }
+    }
+
+    /*
+        Suggests the cities starting with what was typed, or the closest ones if none do.  The
+        index is searched on the filter's thread, and only the cities shown become Strings.
+     */
+    private static class CityAdapter extends BaseAdapter implements Filterable {
+
+        private final Context mContext;
+        private CityIndex mIndex;
+        private int[] mCities = new int[0];
+
+        CityAdapter(Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        @Override
+        public int getCount() {
+            return mCities.length;
+        }
+
+        @Override
+        public String getItem(int position) {
+            return mIndex.getLocationSetting(mCities[position]);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIndex.getCityId(mCities[position]);
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) {
+                convertView = LayoutInflater.from(parent.getContext()).inflate(
+                        android.R.layout.simple_dropdown_item_1line, parent, false);
+            }
+            ((TextView) convertView).setText(getItem(position));
+            return convertView;
+        }
+
+        @Override
+        public Filter getFilter() {
+            return new Filter() {
+                @Override
+                protected FilterResults performFiltering(CharSequence constraint) {
+                    FilterResults results = new FilterResults();
+                    CityIndex index = CityIndex.getInstance(mContext);
+                    if (index == null || constraint == null) {
+                        return results;
+                    }
+                    int[] cities = new int[SUGGESTIONS];
+                    int found = index.search(constraint.toString(), cities);
+                    int[] values = new int[found];
+                    System.arraycopy(cities, 0, values, 0, found);
+                    results.values = values;
+                    results.count = found;
+                    return results;
+                }
+
+                @Override
+                protected void publishResults(CharSequence constraint, FilterResults results) {
+                    mIndex = CityIndex.getInstance(mContext);
+                    if (results.values != null) {
+                        mCities = (int[]) results.values;
+                        notifyDataSetChanged();
+                    } else {
+                        mCities = new int[0];
+                        notifyDataSetInvalidated();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.example.android.sunshine.core.JulianDays;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The strings {@link Utility} shows dates as, formatted once per day.  Every forecast row shows
+ * one of the same few weeks of days, so after the first bind of a day its strings are just
+ * looked up by its julian day, without a Time, a SimpleDateFormat or any other allocation.
+ * <p>
+ * The strings depend on what today is, the time zone and the locale, so the cache starts over
+ * when the day rolls over, and when the system broadcasts a change to the time, the time zone
+ * or the locale.
+ */
+public class DateFormatCache {
+
+    private static final long DAY_IN_MILLIS = JulianDays.DAY_IN_MILLIS;
+    private static final int EPOCH_JULIAN_DAY = JulianDays.EPOCH_JULIAN_DAY;
+
+    // Days from a week ago to a month ahead are cached, which covers the forecast.  Others are
+    // formatted on each call.
+    private static final int DAYS_BEFORE = 7;
+    private static final int DAYS_CACHED = 38;
+
+    private static DateFormatCache sInstance;
+    private static boolean sRegistered;
+
+    private final String mToday;
+    private final String mTomorrow;
+    private final String mFullFriendlyFormat;
+    private final long mOffset;
+    private final int mCurrentJulianDay;
+    // the first moment of tomorrow, when this cache is out of date
+    private final long mNextDayStart;
+
+    private final SimpleDateFormat mShortenedDateFormat;
+    private final SimpleDateFormat mDayFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+
+    private final String[] mFriendlyDays = new String[DAYS_CACHED];
+    private final String[] mDayNames = new String[DAYS_CACHED];
+    private final String[] mMonthDays = new String[DAYS_CACHED];
+
+    DateFormatCache(String today, String tomorrow, String fullFriendlyFormat, Locale locale,
+                    TimeZone timeZone, long now) {
+        mToday = today;
+        mTomorrow = tomorrow;
+        mFullFriendlyFormat = fullFriendlyFormat;
+        mOffset = timeZone.getOffset(now);
+        mCurrentJulianDay = getJulianDay(now);
+        mNextDayStart = (mCurrentJulianDay + 1 - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS - mOffset;
+
+        mShortenedDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+        mDayFormat = new SimpleDateFormat("EEEE", locale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+        mShortenedDateFormat.setTimeZone(timeZone);
+        mDayFormat.setTimeZone(timeZone);
+        mMonthDayFormat.setTimeZone(timeZone);
+    }
+
+    /**
+     * Returns the cache for today, in the current time zone and locale.
+     */
+    public static synchronized DateFormatCache getInstance(Context context) {
+        long now = System.currentTimeMillis();
+        if (!sRegistered) {
+            // Registered for the life of the process, with the application's context.
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    invalidate();
+                }
+            }, filter);
+            sRegistered = true;
+        }
+        if (sInstance == null || !sInstance.isCurrent(now)) {
+            sInstance = new DateFormatCache(
+                    context.getString(R.string.today),
+                    context.getString(R.string.tomorrow),
+                    context.getString(R.string.format_full_friendly_date),
+                    Locale.getDefault(), TimeZone.getDefault(), now);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts the cache over on the next {@link #getInstance}.
+     */
+    public static synchronized void invalidate() {
+        sInstance = null;
+    }
+
+    /**
+     * Returns the julian day a moment is on here, as {@link android.text.format.Time#getJulianDay}
+     * would with the current offset from UTC.
+     */
+    public int getJulianDay(long dateInMillis) {
+        return JulianDays.getJulianDay(dateInMillis, mOffset);
+    }
+
+    /**
+     * See {@link Utility#getFriendlyDayString}.
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis) {
+        int julianDay = getJulianDay(dateInMillis);
+        int index = getIndex(julianDay);
+        if (index != -1 && mFriendlyDays[index] != null) {
+            return mFriendlyDays[index];
+        }
+
+        // The day string for forecast uses the following logic:
+        // For today: "Today, June 8"
+        // For tomorrow:  "Tomorrow"
+        // For the next 5 days: "Wednesday" (just the day name)
+        // For all days after that: "Mon Jun 8"
+        String friendlyDay;
+        if (julianDay == mCurrentJulianDay) {
+            friendlyDay = String.format(mFullFriendlyFormat, mToday,
+                    getFormattedMonthDay(dateInMillis));
+        } else if (julianDay < mCurrentJulianDay + 7) {
+            friendlyDay = getDayName(dateInMillis);
+        } else {
+            friendlyDay = mShortenedDateFormat.format(dateInMillis);
+        }
+        if (index != -1) {
+            mFriendlyDays[index] = friendlyDay;
+        }
+        return friendlyDay;
+    }
+
+    /**
+     * See {@link Utility#getDayName}.
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        int julianDay = getJulianDay(dateInMillis);
+        int index = getIndex(julianDay);
+        if (index != -1 && mDayNames[index] != null) {
+            return mDayNames[index];
+        }
+
+        String dayName;
+        if (julianDay == mCurrentJulianDay) {
+            dayName = mToday;
+        } else if (julianDay == mCurrentJulianDay + 1) {
+            dayName = mTomorrow;
+        } else {
+            dayName = mDayFormat.format(dateInMillis);
+        }
+        if (index != -1) {
+            mDayNames[index] = dayName;
+        }
+        return dayName;
+    }
+
+    /**
+     * See {@link Utility#getFormattedMonthDay}.
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        int index = getIndex(getJulianDay(dateInMillis));
+        if (index != -1 && mMonthDays[index] != null) {
+            return mMonthDays[index];
+        }
+
+        String monthDay = mMonthDayFormat.format(dateInMillis);
+        if (index != -1) {
+            mMonthDays[index] = monthDay;
+        }
+        return monthDay;
+    }
+
+    private int getIndex(int julianDay) {
+        int index = julianDay - mCurrentJulianDay + DAYS_BEFORE;
+        return index >= 0 && index < DAYS_CACHED ? index : -1;
+    }
+
+    /**
+     * Returns the first moment of tomorrow, from when on the strings of this cache are out of
+     * date.
+     */
+    public long getNextDayStart() {
+        return mNextDayStart;
+    }
+
+    // Whether the moment is on the day this cache was made for.
+    boolean isCurrent(long now) {
+        return now >= mNextDayStart - DAY_IN_MILLIS && now < mNextDayStart;
+    }
+}
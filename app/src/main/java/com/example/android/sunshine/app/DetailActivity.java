@@ -16,32 +16,51 @@
 package com.example.android.sunshine.app;
 
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentStatePagerAdapter;
+import android.support.v4.view.ViewPager;
 import android.support.v7.app.ActionBarActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 
+import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the detail of a day, paging to the other days of the list.
+ * <p>
+ * The list passes the days it shows along, so every page shows its day in its first frame, and
+ * the pager keeps the pages either side of the current one created, their loaders started, so
+ * that a swipe never waits for a query.
+ */
 public class DetailActivity extends ActionBarActivity {
 
+    /** The days of the list, an {@code ArrayList} of {@link ForecastDay}. */
+    static final String EXTRA_DAYS = "days";
+    /** The position in {@link #EXTRA_DAYS} of the day to show first. */
+    static final String EXTRA_POSITION = "position";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_detail);
 
-        if (savedInstanceState == null) {
-            // Create the detail fragment and add it to the activity
-            // using a fragment transaction.
-
-            Bundle arguments = new Bundle();
-            arguments.putParcelable(DetailFragment.DETAIL_URI, getIntent().getData());
-
-            DetailFragment fragment = new DetailFragment();
-            fragment.setArguments(arguments);
+        Intent intent = getIntent();
+        List<ForecastDay> days = intent.getParcelableArrayListExtra(EXTRA_DAYS);
+        if (days == null) {
+            days = new ArrayList<ForecastDay>();
+        }
 
-            getSupportFragmentManager().beginTransaction()
-                    .add(R.id.weather_detail_container, fragment)
-                    .commit();
+        // The pager restores its position and its pages itself.
+        ViewPager pager = (ViewPager) findViewById(R.id.weather_detail_pager);
+        pager.setAdapter(new DayPagerAdapter(getSupportFragmentManager(), intent.getData(), days));
+        if (savedInstanceState == null) {
+            pager.setCurrentItem(intent.getIntExtra(EXTRA_POSITION, 0), false);
         }
     }
 
@@ -64,4 +83,41 @@ public class DetailActivity extends ActionBarActivity {
         }
         return super.onOptionsItemSelected(item);
     }
-}
\ No newline at end of file
+
+    /**
+     * One {@link DetailFragment} per day.  Without the days, for a day of a {@code Uri} alone,
+     * the one page loads its day.
+     */
+    private static class DayPagerAdapter extends FragmentStatePagerAdapter {
+        private final Uri mUri;
+        private final List<ForecastDay> mDays;
+
+        DayPagerAdapter(FragmentManager fm, Uri uri, List<ForecastDay> days) {
+            super(fm);
+            mUri = uri;
+            mDays = days;
+        }
+
+        @Override
+        public int getCount() {
+            return mDays.isEmpty() ? 1 : mDays.size();
+        }
+
+        @Override
+        public Fragment getItem(int position) {
+            if (mDays.isEmpty()) {
+                return DetailFragment.newInstance(mUri, null);
+            }
+            ForecastDay day = mDays.get(position);
+            Uri uri;
+            if (WeatherContract.WeatherEntry.isLocationIdUri(mUri)) {
+                uri = WeatherContract.WeatherEntry.buildWeatherLocationIdWithDate(
+                        WeatherContract.WeatherEntry.getLocationIdFromUri(mUri), day.getDate());
+            } else {
+                uri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri), day.getDate());
+            }
+            return DetailFragment.newInstance(uri, day);
+        }
+    }
+}
@@ -16,12 +16,10 @@
 package com.example.android.sunshine.app;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.MenuItemCompat;
 import android.support.v7.widget.ShareActionProvider;
@@ -35,53 +33,29 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
- * A placeholder fragment containing a simple view.
+ * Shows one day of the forecast, as mapped by a {@link ForecastLoader} off the main thread.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment
+        implements LoaderManager.LoaderCallbacks<ForecastLoader.Result> {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
+    // the day as the list already mapped it, shown until the loader has it
+    static final String DETAIL_DAY = "DAY";
 
     private static final String FORECAST_SHARE_HASHTAG = " #SunshineApp";
 
     private ShareActionProvider mShareActionProvider;
     private String mForecast;
     private Uri mUri;
+    // the day shown, and in which units
+    private ForecastDay mDay;
+    private boolean mMetric;
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
-            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
-            WeatherEntry.COLUMN_DATE,
-            WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherEntry.COLUMN_HUMIDITY,
-            WeatherEntry.COLUMN_PRESSURE,
-            WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherEntry.COLUMN_DEGREES,
-            WeatherEntry.COLUMN_WEATHER_ID,
-            // This works because the WeatherProvider returns location data joined with
-            // weather data, even though they're stored in two different tables.
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
-    };
-
-    // These indices are tied to DETAIL_COLUMNS.  If DETAIL_COLUMNS changes, these
-    // must change.
-    public static final int COL_WEATHER_ID = 0;
-    public static final int COL_WEATHER_DATE = 1;
-    public static final int COL_WEATHER_DESC = 2;
-    public static final int COL_WEATHER_MAX_TEMP = 3;
-    public static final int COL_WEATHER_MIN_TEMP = 4;
-    public static final int COL_WEATHER_HUMIDITY = 5;
-    public static final int COL_WEATHER_PRESSURE = 6;
-    public static final int COL_WEATHER_WIND_SPEED = 7;
-    public static final int COL_WEATHER_DEGREES = 8;
-    public static final int COL_WEATHER_CONDITION_ID = 9;
-
     private ImageView mIconView;
     private TextView mFriendlyDateView;
     private TextView mDateView;
@@ -96,6 +70,20 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         setHasOptionsMenu(true);
     }
 
+    /**
+     * Creates a fragment showing the day of {@code uri}.  With the day the list mapped for it,
+     * the fragment shows it in its first frame, and its loader only confirms it.
+     */
+    static DetailFragment newInstance(Uri uri, ForecastDay day) {
+        Bundle arguments = new Bundle();
+        arguments.putParcelable(DETAIL_URI, uri);
+        arguments.putParcelable(DETAIL_DAY, day);
+
+        DetailFragment fragment = new DetailFragment();
+        fragment.setArguments(arguments);
+        return fragment;
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -115,6 +103,15 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mHumidityView = (TextView) rootView.findViewById(R.id.detail_humidity_textview);
         mWindView = (TextView) rootView.findViewById(R.id.detail_wind_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
+
+        // a day the loader delivered before the view was recreated, or the list's
+        ForecastDay day = mDay;
+        if (day == null && arguments != null) {
+            day = arguments.getParcelable(DetailFragment.DETAIL_DAY);
+        }
+        if (day != null) {
+            bindDay(day);
+        }
         return rootView;
     }
 
@@ -161,80 +158,57 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+    public Loader<ForecastLoader.Result> onCreateLoader(int id, Bundle args) {
         if ( null != mUri ) {
-            // Now create and return a CursorLoader that will take care of
-            // creating a Cursor for the data being displayed.
-            return new CursorLoader(
-                    getActivity(),
-                    mUri,
-                    DETAIL_COLUMNS,
-                    null,
-                    null,
-                    null
-            );
+            // Now create and return a loader that will take care of mapping the day being
+            // displayed.
+            return new ForecastLoader(getActivity(), mUri);
         }
         return null;
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            // Use weather art image
-            mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String friendlyDateText = Utility.getDayName(getActivity(), date);
-            String dateText = Utility.getFormattedMonthDay(getActivity(), date);
-            mFriendlyDateView.setText(friendlyDateText);
-            mDateView.setText(dateText);
-
-            // Read description from cursor and update view
-            String description = data.getString(COL_WEATHER_DESC);
-            mDescriptionView.setText(description);
-
-            // For accessibility, add a content description to the icon field
-            mIconView.setContentDescription(description);
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getActivity().getString(R.string.format_pressure, pressure));
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
-
-            // If onCreateOptionsMenu has already happened, we need to update the share intent now.
-            if (mShareActionProvider != null) {
-                mShareActionProvider.setShareIntent(createShareForecastIntent());
+    public void onLoadFinished(Loader<ForecastLoader.Result> loader, ForecastLoader.Result data) {
+        if (data != null && !data.days.isEmpty()) {
+            ForecastDay day = data.days.get(0);
+            // Usually the day the list passed along, already on screen
+            if (mDay == null || !mDay.hasSameDetails(day)
+                    || mMetric != PreferenceSnapshot.get(getActivity()).isMetric()) {
+                bindDay(day);
             }
         }
     }
 
+    private void bindDay(ForecastDay day) {
+        mDay = day;
+        mMetric = PreferenceSnapshot.get(getActivity()).isMetric();
+
+        // Use weather art image, described in the user's language where the condition is
+        // known, for accessibility
+        mIconView.setImageResource(day.getArtResource());
+        mIconView.setContentDescription(day.getConditionText());
+
+        mFriendlyDateView.setText(day.getDayName());
+        mDateView.setText(day.getMonthDay());
+        mDescriptionView.setText(day.getDescription());
+
+        ForecastDay.UnitsText text = day.getText(mMetric);
+        mHighTempView.setText(text.getHigh());
+        mLowTempView.setText(text.getLow());
+        mWindView.setText(text.getWind());
+        mHumidityView.setText(day.getHumidityText());
+        mPressureView.setText(day.getPressureText());
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", day.getMonthDay(), day.getDescription(),
+                day.getHigh(), day.getLow());
+
+        // If onCreateOptionsMenu has already happened, we need to update the share intent now.
+        if (mShareActionProvider != null) {
+            mShareActionProvider.setShareIntent(createShareForecastIntent());
+        }
+    }
+
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) { }
-}
\ No newline at end of file
+    public void onLoaderReset(Loader<ForecastLoader.Result> loader) { }
+}
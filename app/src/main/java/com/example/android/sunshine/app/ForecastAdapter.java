@@ -1,31 +1,48 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.support.v4.widget.CursorAdapter;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link Cursor} to a {@link android.widget.ListView}.
+ * from a {@link ForecastLoader} to a {@link RecyclerView}.
  */
-public class ForecastAdapter extends CursorAdapter {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ViewHolder> {
 
-    private static final int VIEW_TYPE_COUNT = 2;
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    private final Context mContext;
+    private final OnClickHandler mClickHandler;
+    private List<ForecastDay> mDays = Collections.emptyList();
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
+    // In two-pane mode the selected day stays highlighted, like a single choice list.
+    private boolean mSingleChoice;
+    // by date, which stays with the day as days are added and removed above it
+    private long mSelectedDate = -1;
+
+    /**
+     * Called when a day is clicked.
+     */
+    public interface OnClickHandler {
+        void onClick(ForecastDay day, int position);
+    }
 
     /**
      * Cache of the children views for a forecast list item.
      */
-    public static class ViewHolder {
+    public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         public final ImageView iconView;
         public final TextView dateView;
         public final TextView descriptionView;
@@ -33,22 +50,35 @@ public class ForecastAdapter extends CursorAdapter {
         public final TextView lowTempView;
 
         public ViewHolder(View view) {
+            super(view);
             iconView = (ImageView) view.findViewById(R.id.list_item_icon);
             dateView = (TextView) view.findViewById(R.id.list_item_date_textview);
             descriptionView = (TextView) view.findViewById(R.id.list_item_forecast_textview);
             highTempView = (TextView) view.findViewById(R.id.list_item_high_textview);
             lowTempView = (TextView) view.findViewById(R.id.list_item_low_textview);
+            view.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            setSelectedDate(mDays.get(position).getDate());
+            mClickHandler.onClick(mDays.get(position), position);
         }
     }
 
-    public ForecastAdapter(Context context, Cursor c, int flags) {
-        super(context, c, flags);
+    public ForecastAdapter(Context context, OnClickHandler clickHandler) {
+        mContext = context;
+        mClickHandler = clickHandler;
+        setHasStableIds(true);
     }
 
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         // Choose the layout type
-        int viewType = getItemViewType(cursor.getPosition());
         int layoutId = -1;
         switch (viewType) {
             case VIEW_TYPE_TODAY: {
@@ -61,71 +91,103 @@ public class ForecastAdapter extends CursorAdapter {
             }
         }
 
-        View view = LayoutInflater.from(context).inflate(layoutId, parent, false);
-
-        ViewHolder viewHolder = new ViewHolder(view);
-        view.setTag(viewHolder);
-
-        return view;
+        View view = LayoutInflater.from(parent.getContext()).inflate(layoutId, parent, false);
+        return new ViewHolder(view);
     }
 
     @Override
-    public void bindView(View view, Context context, Cursor cursor) {
-
-        ViewHolder viewHolder = (ViewHolder) view.getTag();
-
-        int viewType = getItemViewType(cursor.getPosition());
-        switch (viewType) {
-            case VIEW_TYPE_TODAY: {
-                // Get weather icon
-                viewHolder.iconView.setImageResource(Utility.getArtResourceForWeatherCondition(
-                        cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID)));
-                break;
-            }
-            case VIEW_TYPE_FUTURE_DAY: {
-                // Get weather icon
-                viewHolder.iconView.setImageResource(Utility.getIconResourceForWeatherCondition(
-                        cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID)));
-                break;
-            }
-        }
-
-        // Read date from cursor
-        long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-        // Find TextView and set formatted date on it
-        viewHolder.dateView.setText(Utility.getFriendlyDayString(context, dateInMillis));
-
-        // Read weather forecast from cursor
-        String description = cursor.getString(ForecastFragment.COL_WEATHER_DESC);
-        // Find TextView and set weather forecast on it
-        viewHolder.descriptionView.setText(description);
+    public void onBindViewHolder(ViewHolder viewHolder, int position) {
+        ForecastDay day = mDays.get(position);
 
+        // The loader mapped the day to everything the row shows, this only sets it.
+        int viewType = getItemViewType(position);
+        viewHolder.iconView.setImageResource(viewType == VIEW_TYPE_TODAY
+                ? day.getArtResource() : day.getIconResource());
         // For accessibility, add a content description to the icon field
-        viewHolder.iconView.setContentDescription(description);
+        viewHolder.iconView.setContentDescription(day.getConditionText());
+
+        viewHolder.dateView.setText(day.getFriendlyDate());
+        viewHolder.descriptionView.setText(day.getDescription());
 
         // Read user preference for metric or imperial temperature units
-        boolean isMetric = Utility.isMetric(context);
+        ForecastDay.UnitsText text = day.getText(PreferenceSnapshot.get(mContext).isMetric());
+        viewHolder.highTempView.setText(text.getHigh());
+        viewHolder.lowTempView.setText(text.getLow());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            viewHolder.itemView.setActivated(mSingleChoice && day.getDate() == mSelectedDate);
+        }
+    }
 
-        // Read high temperature from cursor
-        double high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        viewHolder.highTempView.setText(Utility.formatTemperature(context, high));
+    /**
+     * Shows the days of a load.  When this list shows the days the load was compared with,
+     * only the rows that changed are rebound, otherwise all of them are.
+     */
+    public void swapDays(ForecastLoader.Result result) {
+        List<ForecastDay> days = result != null
+                ? result.days : Collections.<ForecastDay>emptyList();
+        if (days == mDays) {
+            return;
+        }
+        List<ForecastDay> oldDays = mDays;
+        mDays = days;
+        if (result != null && result.previousDays == oldDays) {
+            result.diff.dispatchUpdatesTo(this);
+            // the first row has its own layout, which a day moving into it has to get and a
+            // day moving out of it has to lose
+            if (mUseTodayLayout && !days.isEmpty() && !oldDays.isEmpty()
+                    && days.get(0).getDate() != oldDays.get(0).getDate()) {
+                notifyItemChanged(0);
+                if (days.size() > 1 && days.get(1).getDate() == oldDays.get(0).getDate()) {
+                    notifyItemChanged(1);
+                }
+            }
+        } else {
+            notifyDataSetChanged();
+        }
+    }
 
-        // Read low temperature from cursor
-        double low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        viewHolder.lowTempView.setText(Utility.formatTemperature(context, low));
+    public List<ForecastDay> getDays() {
+        return mDays;
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
+        if (mUseTodayLayout != useTodayLayout && !mDays.isEmpty()) {
+            notifyItemChanged(0);
+        }
         mUseTodayLayout = useTodayLayout;
     }
 
+    public void setSingleChoice(boolean singleChoice) {
+        mSingleChoice = singleChoice;
+    }
+
+    public void setSelectedDate(long date) {
+        if (!mSingleChoice || date == mSelectedDate) {
+            return;
+        }
+        for (int i = 0; i < mDays.size(); i++) {
+            long dayDate = mDays.get(i).getDate();
+            if (dayDate == date || dayDate == mSelectedDate) {
+                notifyItemChanged(i);
+            }
+        }
+        mSelectedDate = date;
+    }
+
     @Override
     public int getItemViewType(int position) {
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
     @Override
-    public int getViewTypeCount() {
-        return VIEW_TYPE_COUNT;
+    public long getItemId(int position) {
+        // one row per day, so the date identifies it across loads
+        return mDays.get(position).getDate();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mDays.size();
     }
-}
\ No newline at end of file
+}
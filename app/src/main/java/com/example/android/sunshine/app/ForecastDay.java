@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * One day of the forecast, read out of a loader's cursor and mapped to everything the forecast
+ * list and the detail view show of it on the loader's thread.  The views only set the text and
+ * images they get from here.
+ * <p>
+ * The strings are those of the day the day was mapped on, in that day's locale; the loaders
+ * map the days again when the day, the time zone or the locale changes.
+ * <p>
+ * Days are Parcelable, so that the detail view can show a day the list already has in its
+ * first frame.
+ */
+public class ForecastDay implements Parcelable {
+
+    private final long mDate;
+    private final int mConditionId;
+    private final String mDescription;
+    private final double mHigh;
+    private final double mLow;
+
+    private final int mIconResource;
+    private final int mArtResource;
+    // the condition in the user's language, or the description where it isn't known
+    private final String mConditionText;
+    private final String mFriendlyDate;
+    private final String mDayName;
+    private final String mMonthDay;
+    private final String mHumidityText;
+    private final String mPressureText;
+    // formatted in both units, so that changing them needs no reload
+    private final UnitsText mMetric;
+    private final UnitsText mImperial;
+
+    /**
+     * The measurements of a day that are shown in the user's units.
+     */
+    public static final class UnitsText {
+        private final String mHigh;
+        private final String mLow;
+        private final String mWind;
+
+        public UnitsText(String high, String low, String wind) {
+            mHigh = high;
+            mLow = low;
+            mWind = wind;
+        }
+
+        public String getHigh() {
+            return mHigh;
+        }
+
+        public String getLow() {
+            return mLow;
+        }
+
+        public String getWind() {
+            return mWind;
+        }
+
+        private UnitsText(Parcel in) {
+            mHigh = in.readString();
+            mLow = in.readString();
+            mWind = in.readString();
+        }
+
+        private void writeToParcel(Parcel dest) {
+            dest.writeString(mHigh);
+            dest.writeString(mLow);
+            dest.writeString(mWind);
+        }
+
+        boolean hasSameContents(UnitsText other) {
+            return other != null
+                    && isSame(mHigh, other.mHigh)
+                    && isSame(mLow, other.mLow)
+                    && isSame(mWind, other.mWind);
+        }
+    }
+
+    /**
+     * Creates a day with nothing mapped, for comparing days.
+     */
+    public ForecastDay(long date, int conditionId, String description, double high, double low) {
+        this(date, conditionId, description, high, low, -1, -1, description, null, null, null,
+                null, null, null, null);
+    }
+
+    public ForecastDay(long date, int conditionId, String description, double high, double low,
+                       int iconResource, int artResource, String conditionText,
+                       String friendlyDate, String dayName, String monthDay,
+                       String humidityText, String pressureText,
+                       UnitsText metric, UnitsText imperial) {
+        mDate = date;
+        mConditionId = conditionId;
+        mDescription = description;
+        mHigh = high;
+        mLow = low;
+        mIconResource = iconResource;
+        mArtResource = artResource;
+        mConditionText = conditionText;
+        mFriendlyDate = friendlyDate;
+        mDayName = dayName;
+        mMonthDay = monthDay;
+        mHumidityText = humidityText;
+        mPressureText = pressureText;
+        mMetric = metric;
+        mImperial = imperial;
+    }
+
+    private ForecastDay(Parcel in) {
+        mDate = in.readLong();
+        mConditionId = in.readInt();
+        mDescription = in.readString();
+        mHigh = in.readDouble();
+        mLow = in.readDouble();
+        mIconResource = in.readInt();
+        mArtResource = in.readInt();
+        mConditionText = in.readString();
+        mFriendlyDate = in.readString();
+        mDayName = in.readString();
+        mMonthDay = in.readString();
+        mHumidityText = in.readString();
+        mPressureText = in.readString();
+        // days made for comparing have neither
+        boolean hasText = in.readInt() != 0;
+        mMetric = hasText ? new UnitsText(in) : null;
+        mImperial = hasText ? new UnitsText(in) : null;
+    }
+
+    public static final Parcelable.Creator<ForecastDay> CREATOR =
+            new Parcelable.Creator<ForecastDay>() {
+                @Override
+                public ForecastDay createFromParcel(Parcel in) {
+                    return new ForecastDay(in);
+                }
+
+                @Override
+                public ForecastDay[] newArray(int size) {
+                    return new ForecastDay[size];
+                }
+            };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(mDate);
+        dest.writeInt(mConditionId);
+        dest.writeString(mDescription);
+        dest.writeDouble(mHigh);
+        dest.writeDouble(mLow);
+        dest.writeInt(mIconResource);
+        dest.writeInt(mArtResource);
+        dest.writeString(mConditionText);
+        dest.writeString(mFriendlyDate);
+        dest.writeString(mDayName);
+        dest.writeString(mMonthDay);
+        dest.writeString(mHumidityText);
+        dest.writeString(mPressureText);
+        boolean hasText = mMetric != null && mImperial != null;
+        dest.writeInt(hasText ? 1 : 0);
+        if (hasText) {
+            mMetric.writeToParcel(dest);
+            mImperial.writeToParcel(dest);
+        }
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getConditionId() {
+        return mConditionId;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public double getHigh() {
+        return mHigh;
+    }
+
+    public double getLow() {
+        return mLow;
+    }
+
+    /**
+     * Returns the small icon of the weather, -1 if the condition isn't known.
+     */
+    public int getIconResource() {
+        return mIconResource;
+    }
+
+    /**
+     * Returns the large art of the weather, -1 if the condition isn't known.
+     */
+    public int getArtResource() {
+        return mArtResource;
+    }
+
+    /**
+     * Returns the content description of the weather icon.
+     */
+    public String getConditionText() {
+        return mConditionText;
+    }
+
+    /**
+     * See {@link Utility#getFriendlyDayString}.
+     */
+    public String getFriendlyDate() {
+        return mFriendlyDate;
+    }
+
+    /**
+     * See {@link Utility#getDayName}.
+     */
+    public String getDayName() {
+        return mDayName;
+    }
+
+    /**
+     * See {@link Utility#getFormattedMonthDay}.
+     */
+    public String getMonthDay() {
+        return mMonthDay;
+    }
+
+    public String getHumidityText() {
+        return mHumidityText;
+    }
+
+    public String getPressureText() {
+        return mPressureText;
+    }
+
+    /**
+     * Returns the measurements as shown in the given units.
+     */
+    public UnitsText getText(boolean isMetric) {
+        return isMetric ? mMetric : mImperial;
+    }
+
+    /**
+     * Returns whether a row showing the other day would look the same.  Days are told apart by
+     * their date, this compares everything else.
+     */
+    public boolean hasSameContents(ForecastDay other) {
+        return mConditionId == other.mConditionId
+                && mHigh == other.mHigh
+                && mLow == other.mLow
+                && isSame(mDescription, other.mDescription)
+                // the same day reads differently once the day rolls over or the locale changes
+                && isSame(mFriendlyDate, other.mFriendlyDate)
+                && (mMetric == null ? other.mMetric == null : mMetric.hasSameContents(other.mMetric))
+                && (mImperial == null ? other.mImperial == null
+                        : mImperial.hasSameContents(other.mImperial));
+    }
+
+    /**
+     * Returns whether the detail view showing the other day would look the same.
+     */
+    public boolean hasSameDetails(ForecastDay other) {
+        return hasSameContents(other)
+                && isSame(mDayName, other.mDayName)
+                && isSame(mMonthDay, other.mMonthDay)
+                && isSame(mHumidityText, other.mHumidityText)
+                && isSame(mPressureText, other.mPressureText);
+    }
+
+    private static boolean isSame(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherArrays;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.DisplayEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.WeatherUnits;
+
+/**
+ * Maps the rows of a weather query to {@link ForecastDay}s, on a loader's thread.
+ * <p>
+ * The measurements come formatted in both units from the display strings of the provider, see
+ * {@link DisplayEntry}.  Rows it has none for in this locale yet are formatted here, with the
+ * same resources, and {@link #requestDisplayStrings} has the provider format them for the next
+ * load.  One mapper maps the rows of one load, all on the day and in the locale it was created.
+ * The days of a {@link ForecastSnapshot} are formatted here too.
+ */
+final class ForecastDayMapper {
+
+    static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            // This works because the WeatherProvider returns location data joined with
+            // weather data, even though they're stored in two different tables.
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            WeatherEntry.COLUMN_LOC_KEY,
+            DisplayEntry.COLUMN_LOCALE,
+            DisplayEntry.COLUMN_HIGH_METRIC,
+            DisplayEntry.COLUMN_LOW_METRIC,
+            DisplayEntry.COLUMN_WIND_METRIC,
+            DisplayEntry.COLUMN_HIGH_IMPERIAL,
+            DisplayEntry.COLUMN_LOW_IMPERIAL,
+            DisplayEntry.COLUMN_WIND_IMPERIAL,
+            DisplayEntry.COLUMN_HUMIDITY,
+            DisplayEntry.COLUMN_PRESSURE
+    };
+
+    // These indices are tied to COLUMNS.  If COLUMNS changes, these must change.
+    static final int COL_WEATHER_DATE = 0;
+    static final int COL_WEATHER_DESC = 1;
+    static final int COL_WEATHER_MAX_TEMP = 2;
+    static final int COL_WEATHER_MIN_TEMP = 3;
+    static final int COL_WEATHER_HUMIDITY = 4;
+    static final int COL_WEATHER_PRESSURE = 5;
+    static final int COL_WEATHER_WIND_SPEED = 6;
+    static final int COL_WEATHER_DEGREES = 7;
+    static final int COL_WEATHER_CONDITION_ID = 8;
+    static final int COL_COORD_LAT = 9;
+    static final int COL_COORD_LONG = 10;
+    static final int COL_LOCATION_ID = 11;
+    static final int COL_DISPLAY_LOCALE = 12;
+    static final int COL_HIGH_METRIC = 13;
+    static final int COL_LOW_METRIC = 14;
+    static final int COL_WIND_METRIC = 15;
+    static final int COL_HIGH_IMPERIAL = 16;
+    static final int COL_LOW_IMPERIAL = 17;
+    static final int COL_WIND_IMPERIAL = 18;
+    static final int COL_HUMIDITY_TEXT = 19;
+    static final int COL_PRESSURE_TEXT = 20;
+
+    // the locale the provider was last asked to format the display strings in
+    private static volatile String sRequestedLocale;
+
+    private final Context mContext;
+    private final String mLocale;
+    private final DateFormatCache mDates;
+    private final String mTemperatureFormat;
+    private final String mWindKmhFormat;
+    private final String mWindMphFormat;
+    private final String mHumidityFormat;
+    private final String mPressureFormat;
+
+    // whether a row had no display strings in this locale
+    private boolean mFormatted;
+
+    ForecastDayMapper(Context context) {
+        mContext = context;
+        mLocale = DisplayEntry.getCurrentLocale();
+        mDates = DateFormatCache.getInstance(context);
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWindKmhFormat = context.getString(R.string.format_wind_kmh);
+        mWindMphFormat = context.getString(R.string.format_wind_mph);
+        mHumidityFormat = context.getString(R.string.format_humidity);
+        mPressureFormat = context.getString(R.string.format_pressure);
+    }
+
+    /**
+     * Returns the first moment the dates of the mapped days are out of date, when "today"
+     * becomes yesterday.
+     */
+    long getValidUntil() {
+        return mDates.getNextDayStart();
+    }
+
+    ForecastDay map(Cursor cursor) {
+        long date = cursor.getLong(COL_WEATHER_DATE);
+        int weatherId = cursor.getInt(COL_WEATHER_CONDITION_ID);
+        String description = cursor.getString(COL_WEATHER_DESC);
+        double high = cursor.getDouble(COL_WEATHER_MAX_TEMP);
+        double low = cursor.getDouble(COL_WEATHER_MIN_TEMP);
+
+        if (!mLocale.equals(cursor.getString(COL_DISPLAY_LOCALE))) {
+            mFormatted = true;
+            return format(date, weatherId, description, high, low,
+                    cursor.getFloat(COL_WEATHER_HUMIDITY), cursor.getFloat(COL_WEATHER_PRESSURE),
+                    cursor.getFloat(COL_WEATHER_WIND_SPEED), cursor.getFloat(COL_WEATHER_DEGREES));
+        }
+        return newDay(date, weatherId, description, high, low,
+                cursor.getString(COL_HUMIDITY_TEXT),
+                cursor.getString(COL_PRESSURE_TEXT),
+                new ForecastDay.UnitsText(cursor.getString(COL_HIGH_METRIC),
+                        cursor.getString(COL_LOW_METRIC), cursor.getString(COL_WIND_METRIC)),
+                new ForecastDay.UnitsText(cursor.getString(COL_HIGH_IMPERIAL),
+                        cursor.getString(COL_LOW_IMPERIAL), cursor.getString(COL_WIND_IMPERIAL)));
+    }
+
+    /**
+     * Maps a day of a snapshot, which has no display strings, to the same day a query of the
+     * database would map it to.
+     */
+    ForecastDay map(ForecastSnapshot snapshot, int row) {
+        return format(snapshot.getDate(row), snapshot.getWeatherId(row),
+                snapshot.getShortDesc(row),
+                snapshot.getMeasurement(row, WeatherArrays.MAX_TEMP),
+                snapshot.getMeasurement(row, WeatherArrays.MIN_TEMP),
+                (float) snapshot.getMeasurement(row, WeatherArrays.HUMIDITY),
+                (float) snapshot.getMeasurement(row, WeatherArrays.PRESSURE),
+                (float) snapshot.getMeasurement(row, WeatherArrays.WIND_SPEED),
+                (float) snapshot.getMeasurement(row, WeatherArrays.DEGREES));
+    }
+
+    // A day without display strings, formatted here the way the provider formats them.
+    private ForecastDay format(long date, int weatherId, String description, double high,
+                               double low, float humidity, float pressure, float windSpeed,
+                               float degrees) {
+        return newDay(date, weatherId, description, high, low,
+                String.format(mHumidityFormat, humidity),
+                String.format(mPressureFormat, pressure),
+                new ForecastDay.UnitsText(
+                        WeatherUnits.formatTemperature(mTemperatureFormat, high, true),
+                        WeatherUnits.formatTemperature(mTemperatureFormat, low, true),
+                        WeatherUnits.formatWind(mWindKmhFormat, windSpeed, degrees, true)),
+                new ForecastDay.UnitsText(
+                        WeatherUnits.formatTemperature(mTemperatureFormat, high, false),
+                        WeatherUnits.formatTemperature(mTemperatureFormat, low, false),
+                        WeatherUnits.formatWind(mWindMphFormat, windSpeed, degrees, false)));
+    }
+
+    private ForecastDay newDay(long date, int weatherId, String description, double high,
+                               double low, String humidityText, String pressureText,
+                               ForecastDay.UnitsText metric, ForecastDay.UnitsText imperial) {
+        String condition = Utility.getStringForWeatherCondition(mContext, weatherId);
+        return new ForecastDay(date, weatherId, description, high, low,
+                Utility.getIconResourceForWeatherCondition(weatherId),
+                Utility.getArtResourceForWeatherCondition(weatherId),
+                condition != null ? condition : description,
+                mDates.getFriendlyDayString(date),
+                mDates.getDayName(date),
+                mDates.getFormattedMonthDay(date),
+                humidityText,
+                pressureText,
+                metric,
+                imperial);
+    }
+
+    /**
+     * Asks the provider to format the display strings of the rows this mapped without them,
+     * once per locale.  Its change notification brings them to the next load.
+     */
+    void requestDisplayStrings() {
+        if (mFormatted && !mLocale.equals(sRequestedLocale)
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            sRequestedLocale = mLocale;
+            mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_FORMAT_DISPLAY, null, null);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * The changes that turn one forecast list into the next, as the removals, insertions and
+ * changes a {@link RecyclerView.Adapter} is notified of.  Both lists are in date order with one
+ * day per date, so a single walk down the two matches every day that is in both: a sync
+ * usually changes a few days, drops the past ones from the top and adds new ones at the
+ * bottom.
+ * <p>
+ * Computing it only reads the days, so it's done on the loader's thread and the UI thread just
+ * replays the result.
+ */
+public class ForecastDiff {
+
+    static final int REMOVE = 0;
+    static final int INSERT = 1;
+    static final int CHANGE = 2;
+
+    // Each operation is three ints: what it is, the position it starts at and how many rows.
+    private int[] mOperations = new int[3 * 4];
+    private int mSize;
+
+    /**
+     * Returns the changes from the old days to the new ones.  The positions are those of the
+     * list as it is after the operations before, the order an adapter expects them in.
+     */
+    public static ForecastDiff compute(List<ForecastDay> oldDays, List<ForecastDay> newDays) {
+        ForecastDiff diff = new ForecastDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        int position = 0;
+        while (oldIndex < oldDays.size() || newIndex < newDays.size()) {
+            if (newIndex == newDays.size()) {
+                diff.add(REMOVE, position, 1);
+                oldIndex++;
+                continue;
+            }
+            if (oldIndex == oldDays.size()) {
+                diff.add(INSERT, position++, 1);
+                newIndex++;
+                continue;
+            }
+            ForecastDay oldDay = oldDays.get(oldIndex);
+            ForecastDay newDay = newDays.get(newIndex);
+            if (oldDay.getDate() < newDay.getDate()) {
+                diff.add(REMOVE, position, 1);
+                oldIndex++;
+            } else if (oldDay.getDate() > newDay.getDate()) {
+                diff.add(INSERT, position++, 1);
+                newIndex++;
+            } else {
+                if (!oldDay.hasSameContents(newDay)) {
+                    diff.add(CHANGE, position, 1);
+                }
+                position++;
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Returns whether the lists were the same, in which case nothing needs to be rebound.
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    int size() {
+        return mSize / 3;
+    }
+
+    int getType(int operation) {
+        return mOperations[operation * 3];
+    }
+
+    int getPosition(int operation) {
+        return mOperations[operation * 3 + 1];
+    }
+
+    int getCount(int operation) {
+        return mOperations[operation * 3 + 2];
+    }
+
+    public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mSize; i += 3) {
+            int position = mOperations[i + 1];
+            int count = mOperations[i + 2];
+            switch (mOperations[i]) {
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(position, count);
+                    break;
+            }
+        }
+    }
+
+    // Appends an operation, extending the last one when it is of the same kind and continues it.
+    private void add(int type, int position, int count) {
+        if (mSize > 0 && mOperations[mSize - 3] == type) {
+            int lastPosition = mOperations[mSize - 2];
+            int lastCount = mOperations[mSize - 1];
+            // removals all happen at one position, the rows below move up into it
+            if ((type == REMOVE && position == lastPosition)
+                    || (type != REMOVE && position == lastPosition + lastCount)) {
+                mOperations[mSize - 1] = lastCount + count;
+                return;
+            }
+        }
+        if (mSize == mOperations.length) {
+            int[] operations = new int[mSize * 2];
+            System.arraycopy(mOperations, 0, operations, 0, mSize);
+            mOperations = operations;
+        }
+        mOperations[mSize++] = type;
+        mOperations[mSize++] = position;
+        mOperations[mSize++] = count;
+    }
+}
@@ -16,13 +16,14 @@
 package com.example.android.sunshine.app;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -30,57 +31,39 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.List;
+
 /**
- * Encapsulates fetching the forecast and displaying it as a {@link ListView} layout.
+ * Encapsulates fetching the forecast and displaying it as a {@link RecyclerView} list.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class ForecastFragment extends Fragment
+        implements LoaderManager.LoaderCallbacks<ForecastLoader.Result> {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
 
-    private ListView mListView;
-    private int mPosition = ListView.INVALID_POSITION;
+    private RecyclerView mRecyclerView;
+    private int mPosition = RecyclerView.NO_POSITION;
     private boolean mUseTodayLayout;
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
-    // For the forecast view we're showing only a small subset of the stored data.
-    // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
-            // In this case the id needs to be fully qualified with a table name, since
-            // the content provider joins the location & weather tables in the background
-            // (both have an _id column)
-            // On the one hand, that's annoying.  On the other, you can search the weather table
-            // using the location set by the user, which is only in the Location table.
-            // So the convenience is worth it.
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
-    };
-
-    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
-    // must change.
-    static final int COL_WEATHER_ID = 0;
-    static final int COL_WEATHER_DATE = 1;
-    static final int COL_WEATHER_DESC = 2;
-    static final int COL_WEATHER_MAX_TEMP = 3;
-    static final int COL_WEATHER_MIN_TEMP = 4;
-    static final int COL_LOCATION_SETTING = 5;
-    static final int COL_WEATHER_CONDITION_ID = 6;
-    static final int COL_COORD_LAT = 7;
-    static final int COL_COORD_LONG = 8;
+
+    // The location the list last showed days of, and its id.  Once the id is known, the
+    // queries name the location by it instead of by its setting.
+    private String mLocationSetting;
+    private long mLocationId = -1;
+    private double mLocationLat;
+    private double mLocationLon;
+
+    // for the time from creating the fragment to the first frame with days in it
+    private long mCreatedAt;
+    private boolean mFirstFrameMeasured;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -90,8 +73,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public interface Callback {
         /**
          * DetailFragmentCallback for when an item has been selected.
+         * @param dateUri the weather of the selected day
+         * @param days the days the list shows, so that the detail view can show them without
+         *             loading them first
+         * @param position the position of the selected day in {@code days}
          */
-        public void onItemSelected(Uri dateUri);
+        public void onItemSelected(Uri dateUri, List<ForecastDay> days, int position);
     }
 
     public ForecastFragment() {
@@ -100,6 +87,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedAt = SystemClock.elapsedRealtime();
         // Add this line in order for this fragment to handle menu events.
         setHasOptionsMenu(true);
     }
@@ -132,32 +120,28 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                              Bundle savedInstanceState) {
 
         // The ForecastAdapter will take data from a source and
-        // use it to populate the ListView it's attached to.
-        mForecastAdapter = new ForecastAdapter(getActivity(), null, 0);
-
-        View rootView = inflater.inflate(R.layout.fragment_main, container, false);
-
-        // Get a reference to the ListView, and attach this adapter to it.
-        mListView = (ListView) rootView.findViewById(R.id.listview_forecast);
-        mListView.setAdapter(mForecastAdapter);
-        // We'll call our MainActivity
-        mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-
+        // use it to populate the RecyclerView it's attached to.
+        mForecastAdapter = new ForecastAdapter(getActivity(), new ForecastAdapter.OnClickHandler() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                // CursorAdapter returns a cursor at the correct position for getItem(), or null
-                // if it cannot seek to that position.
-                Cursor cursor = (Cursor) adapterView.getItemAtPosition(position);
-                if (cursor != null) {
-                    String locationSetting = Utility.getPreferredLocation(getActivity());
-                    ((Callback) getActivity())
-                            .onItemSelected(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                                    locationSetting, cursor.getLong(COL_WEATHER_DATE)
-                            ));
-                }
+            public void onClick(ForecastDay day, int position) {
+                // We'll call our MainActivity
+                ((Callback) getActivity())
+                        .onItemSelected(WeatherContract.WeatherEntry.buildWeatherLocationIdWithDate(
+                                mLocationId, day.getDate()
+                        ), mForecastAdapter.getDays(), position);
                 mPosition = position;
             }
         });
+        mForecastAdapter.setSingleChoice(
+                getResources().getBoolean(R.bool.forecast_list_single_choice));
+
+        View rootView = inflater.inflate(R.layout.fragment_main, container, false);
+
+        // Get a reference to the RecyclerView, and attach this adapter to it.
+        mRecyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerview_forecast);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        mRecyclerView.setHasFixedSize(true);
+        mRecyclerView.setAdapter(mForecastAdapter);
 
         // If there's instance state, mine it for useful information.
         // The end-goal here is that the user never knows that turning their device sideways
@@ -183,7 +167,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged( ) {
-        updateWeather();
+        SunshineSyncAdapter.syncLocationChanged(getActivity());
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
     }
 
@@ -196,11 +180,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if ( null != mForecastAdapter ) {
-            Cursor c = mForecastAdapter.getCursor();
-            if ( null != c ) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+            if ( !mForecastAdapter.getDays().isEmpty() ) {
+                String posLat = Double.toString(mLocationLat);
+                String posLong = Double.toString(mLocationLon);
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -219,50 +201,96 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onSaveInstanceState(Bundle outState) {
         // When tablets rotate, the currently selected list item needs to be saved.
-        // When no item is selected, mPosition will be set to Listview.INVALID_POSITION,
+        // When no item is selected, mPosition will be set to RecyclerView.NO_POSITION,
         // so check for that before storing.
-        if (mPosition != ListView.INVALID_POSITION) {
+        if (mPosition != RecyclerView.NO_POSITION) {
             outState.putInt(SELECTED_KEY, mPosition);
         }
         super.onSaveInstanceState(outState);
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<ForecastLoader.Result> onCreateLoader(int i, Bundle bundle) {
         // This is called when a new Loader needs to be created.  This
         // fragment only uses one loader, so we don't care about checking the id.
 
         // To only show current and future dates, filter the query to return weather only for
         // dates after or including today.
 
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
-
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
-                FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+        Uri weatherForLocationUri;
+        if (mLocationId != -1 && locationSetting.equals(mLocationSetting)) {
+            weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationIdWithStartDate(
+                    mLocationId, System.currentTimeMillis());
+        } else {
+            weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    locationSetting, System.currentTimeMillis());
+        }
+
+        // The loader sorts by date, and compares each load with the one before on its thread.
+        ForecastLoader loader = new ForecastLoader(getActivity(), weatherForLocationUri);
+        if (mLocationId == -1) {
+            // nothing on screen yet, show what the last sync wrote until the query is back
+            loader.setSnapshotLocation(locationSetting);
+        }
+        return loader;
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
-        if (mPosition != ListView.INVALID_POSITION) {
+    public void onLoadFinished(Loader<ForecastLoader.Result> loader, ForecastLoader.Result data) {
+        Uri uri = ((ForecastLoader) loader).getUri();
+        if (!data.days.isEmpty()) {
+            // an id Uri keeps the setting it was made for
+            if (!WeatherContract.WeatherEntry.isLocationIdUri(uri)) {
+                mLocationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+            }
+            mLocationId = data.locationId;
+            mLocationLat = data.lat;
+            mLocationLon = data.lon;
+        } else if (mLocationId != -1) {
+            // the location may have been evicted and added again under a new id, or it was
+            // only the snapshot's
+            mLocationId = -1;
+            if (WeatherContract.WeatherEntry.isLocationIdUri(uri)) {
+                getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
+                return;
+            }
+        }
+        mForecastAdapter.swapDays(data);
+        if (!mFirstFrameMeasured && !data.days.isEmpty()) {
+            measureFirstFrame(data.fromSnapshot);
+        }
+        if (mPosition != RecyclerView.NO_POSITION && mPosition < data.days.size()) {
             // If we don't need to restart the loader, and there's a desired position to restore
             // to, do so now.
-            mListView.smoothScrollToPosition(mPosition);
+            mForecastAdapter.setSelectedDate(data.days.get(mPosition).getDate());
+            mRecyclerView.smoothScrollToPosition(mPosition);
         }
     }
 
+    /*
+        Records the time from creating the fragment to the first frame the list draws days in,
+        and logs whether they were the snapshot's or the database's.
+     */
+    private void measureFirstFrame(final boolean fromSnapshot) {
+        mFirstFrameMeasured = true;
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        Log.d(LOG_TAG, "First forecast frame " +
+                                (fromSnapshot ? "from the snapshot" : "from the database"));
+                        StartupOrchestrator.recordPhase(
+                                StartupOrchestrator.PHASE_FIRST_FORECAST_FRAME, mCreatedAt);
+                        return true;
+                    }
+                });
+    }
+
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+    public void onLoaderReset(Loader<ForecastLoader.Result> loader) {
+        mForecastAdapter.swapDays(null);
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
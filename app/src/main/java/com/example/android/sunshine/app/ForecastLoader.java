@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads forecast days like a CursorLoader would, reloading whenever the weather changes, but
+ * maps the rows to {@link ForecastDay}s with {@link ForecastDayMapper} and compares them with
+ * the days it delivered last, on its own thread.  The list then only rebinds the rows that
+ * changed, and neither it nor the detail view format anything.
+ * <p>
+ * The days are mapped on one day and in one locale, so this also reloads when the day rolls
+ * over, and when the time, the time zone or the locale change.
+ * <p>
+ * A loader given a location setting with {@link #setSnapshotLocation} delivers the days of its
+ * {@link ForecastSnapshot} as soon as it starts, on the UI thread, and then the days of its
+ * query.  The list diffs one against the other like any two loads, so it shows a forecast in
+ * its first frame and rebinds only the days the last sync did not write.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastLoader.Result> {
+
+    /**
+     * The days of one load, and how they differ from the days of the load before.
+     */
+    public static class Result {
+        public final List<ForecastDay> days;
+        // what the diff was computed against, so that a list showing something else, such as a
+        // new one after a rotation, knows to bind everything instead
+        public final List<ForecastDay> previousDays;
+        public final ForecastDiff diff;
+        // -1 and no coordinates when there are no days
+        public final long locationId;
+        public final double lat;
+        public final double lon;
+        // when "today" in the days becomes yesterday
+        final long validUntil;
+        // whether the days are those of a snapshot rather than of the database
+        public final boolean fromSnapshot;
+
+        Result(List<ForecastDay> days, List<ForecastDay> previousDays, ForecastDiff diff,
+               long locationId, double lat, double lon, long validUntil, boolean fromSnapshot) {
+            this.days = days;
+            this.previousDays = previousDays;
+            this.diff = diff;
+            this.locationId = locationId;
+            this.lat = lat;
+            this.lon = lon;
+            this.validUntil = validUntil;
+            this.fromSnapshot = fromSnapshot;
+        }
+    }
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final BroadcastReceiver mDateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // before the cache's own receiver may have run
+            DateFormatCache.invalidate();
+            onContentChanged();
+        }
+    };
+    private final Uri mUri;
+    private String mSnapshotLocation;
+    private boolean mObserving;
+
+    // written on the UI thread once a result is delivered, read by the next load
+    private volatile Result mResult;
+
+    public ForecastLoader(Context context, Uri uri) {
+        super(context);
+        mUri = uri;
+    }
+
+    public Uri getUri() {
+        return mUri;
+    }
+
+    /**
+     * Has the first start deliver the snapshot of a location setting, see {@link ForecastSnapshot}.
+     * Only for a loader of the upcoming days of that setting.
+     */
+    public void setSnapshotLocation(String locationSetting) {
+        mSnapshotLocation = locationSetting;
+    }
+
+    @Override
+    public Result loadInBackground() {
+        ForecastDayMapper mapper = new ForecastDayMapper(getContext());
+        Cursor cursor = getContext().getContentResolver().query(mUri, ForecastDayMapper.COLUMNS,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        List<ForecastDay> days = new ArrayList<ForecastDay>();
+        long locationId = -1;
+        double lat = 0;
+        double lon = 0;
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    days.add(mapper.map(cursor));
+                    if (locationId == -1) {
+                        locationId = cursor.getLong(ForecastDayMapper.COL_LOCATION_ID);
+                        lat = cursor.getDouble(ForecastDayMapper.COL_COORD_LAT);
+                        lon = cursor.getDouble(ForecastDayMapper.COL_COORD_LONG);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        mapper.requestDisplayStrings();
+
+        Result last = mResult;
+        List<ForecastDay> previousDays = last != null
+                ? last.days : Collections.<ForecastDay>emptyList();
+        return new Result(days, previousDays, ForecastDiff.compute(previousDays, days),
+                locationId, lat, lon, mapper.getValidUntil(), false);
+    }
+
+    // The upcoming days of the snapshot, or null if there are none.
+    private Result loadSnapshot() {
+        ForecastSnapshot snapshot = ForecastSnapshot.open(getContext(), mSnapshotLocation);
+        if (snapshot == null) {
+            return null;
+        }
+        ForecastDayMapper mapper = new ForecastDayMapper(getContext());
+        List<ForecastDay> days = new ArrayList<ForecastDay>(snapshot.size());
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int row = snapshot.getFirstRow(today); row < snapshot.size(); row++) {
+            days.add(mapper.map(snapshot, row));
+        }
+        if (days.isEmpty()) {
+            return null;
+        }
+        List<ForecastDay> previousDays = Collections.emptyList();
+        return new Result(days, previousDays, ForecastDiff.compute(previousDays, days),
+                snapshot.getLocationId(), snapshot.getLat(), snapshot.getLon(),
+                mapper.getValidUntil(), true);
+    }
+
+    @Override
+    public void deliverResult(Result result) {
+        if (isReset()) {
+            return;
+        }
+        mResult = result;
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            // the weather is notified under its content Uri whichever way it was queried
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            // the date changes at midnight, which the loader may have slept through
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            getContext().registerReceiver(mDateReceiver, filter);
+            mObserving = true;
+        }
+        if (mResult != null) {
+            deliverResult(mResult);
+        } else if (mSnapshotLocation != null) {
+            // a file of about a kilobyte, mapped rather than queried; the query follows below
+            Result snapshot = loadSnapshot();
+            mSnapshotLocation = null;
+            if (snapshot != null) {
+                deliverResult(snapshot);
+            }
+        }
+        if (takeContentChanged() || mResult == null || mResult.fromSnapshot
+                || System.currentTimeMillis() >= mResult.validUntil) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            getContext().unregisterReceiver(mDateReceiver);
+            mObserving = false;
+        }
+        mResult = null;
+    }
+}
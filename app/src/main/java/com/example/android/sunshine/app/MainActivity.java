@@ -18,11 +18,13 @@ package com.example.android.sunshine.app;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v7.app.ActionBarActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 
-import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MainActivity extends ActionBarActivity implements ForecastFragment.Callback {
 
@@ -34,6 +36,7 @@ public class MainActivity extends ActionBarActivity implements ForecastFragment.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long startTime = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
 
@@ -60,7 +63,9 @@ public class MainActivity extends ActionBarActivity implements ForecastFragment.
                 .findFragmentById(R.id.fragment_forecast));
         forecastFragment.setUseTodayLayout(!mTwoPane);
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // the sync account and schedule aren't needed for the first frame
+        StartupOrchestrator.start(this);
+        StartupOrchestrator.recordPhase(StartupOrchestrator.PHASE_ACTIVITY_CREATE, startTime);
     }
 
     @Override
@@ -105,23 +110,22 @@ public class MainActivity extends ActionBarActivity implements ForecastFragment.
     }
 
     @Override
-    public void onItemSelected(Uri contentUri) {
+    public void onItemSelected(Uri contentUri, List<ForecastDay> days, int position) {
         if (mTwoPane) {
             // In two-pane mode, show the detail view in this activity by
             // adding or replacing the detail fragment using a
             // fragment transaction.
-            Bundle args = new Bundle();
-            args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
-
-            DetailFragment fragment = new DetailFragment();
-            fragment.setArguments(args);
+            DetailFragment fragment = DetailFragment.newInstance(contentUri, days.get(position));
 
             getSupportFragmentManager().beginTransaction()
                     .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
                     .commit();
         } else {
             Intent intent = new Intent(this, DetailActivity.class)
-                    .setData(contentUri);
+                    .setData(contentUri)
+                    .putParcelableArrayListExtra(DetailActivity.EXTRA_DAYS,
+                            new ArrayList<ForecastDay>(days))
+                    .putExtra(DetailActivity.EXTRA_POSITION, position);
             startActivity(intent);
         }
     }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * The settings the app reads while binding rows, syncing and notifying, read out of the
+ * SharedPreferences once and kept as an immutable snapshot.  A listener takes a new snapshot
+ * whenever a preference changes, with the next version number, and publishes it through a
+ * volatile field, so reading the settings from any thread is a single read without a lock, a
+ * map lookup or a resource.
+ */
+public final class PreferenceSnapshot {
+
+    private static volatile PreferenceSnapshot sSnapshot;
+
+    // SharedPreferences only keep weak references to their listeners.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final int mVersion;
+    private final String mLocation;
+    private final String mUnits;
+    private final boolean mMetric;
+    private final boolean mNotificationsEnabled;
+    private final long mLastNotification;
+
+    private PreferenceSnapshot(Context context, SharedPreferences prefs, int version) {
+        mVersion = version;
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metric = context.getString(R.string.pref_units_metric);
+        mUnits = prefs.getString(context.getString(R.string.pref_units_key), metric);
+        mMetric = mUnits.equals(metric);
+        mNotificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        mLastNotification = prefs.getLong(context.getString(R.string.pref_last_notification), 0);
+    }
+
+    /**
+     * Returns the current settings.  Only the first call reads the SharedPreferences.
+     */
+    public static PreferenceSnapshot get(Context context) {
+        PreferenceSnapshot snapshot = sSnapshot;
+        return snapshot != null ? snapshot : load(context);
+    }
+
+    private static synchronized PreferenceSnapshot load(Context context) {
+        if (sSnapshot == null) {
+            final Context appContext = context.getApplicationContext();
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    update(appContext, sharedPreferences);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sSnapshot = new PreferenceSnapshot(appContext, prefs, 0);
+        }
+        return sSnapshot;
+    }
+
+    private static synchronized void update(Context context, SharedPreferences prefs) {
+        sSnapshot = new PreferenceSnapshot(context, prefs, sSnapshot.mVersion + 1);
+    }
+
+    /**
+     * Returns a number that is different for each snapshot, so that something computed from
+     * the settings can tell whether they have changed since.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * Returns the units setting as stored, "metric" or "imperial".
+     */
+    public String getUnits() {
+        return mUnits;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    public boolean areNotificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+
+    public long getLastNotification() {
+        return mLastNotification;
+    }
+}
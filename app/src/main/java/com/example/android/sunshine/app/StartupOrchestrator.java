@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the work of starting the app that the first frame doesn't need on a background thread,
+ * once per process, and records how long each phase of a start takes.
+ * <p>
+ * Setting up the sync looks up its account in the AccountManager, and the first time also
+ * adds the account, schedules the periodic sync and requests the first one, all of which are
+ * calls into system services.  The account is then cached by
+ * {@link SunshineSyncAdapter#getSyncAccount}, so later syncs requested from the UI thread
+ * don't look it up again.
+ */
+public final class StartupOrchestrator {
+
+    private static final String LOG_TAG = StartupOrchestrator.class.getSimpleName();
+
+    // MainActivity.onCreate, on the UI thread
+    public static final String PHASE_ACTIVITY_CREATE = "activity_create";
+    // the sync account and its schedule, on the startup thread
+    public static final String PHASE_SYNC_SETUP = "sync_setup";
+    // from creating the forecast list to the first frame with days in it
+    public static final String PHASE_FIRST_FORECAST_FRAME = "first_forecast_frame";
+
+    private static final ExecutorService sExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "startup");
+                }
+            });
+
+    private static final Map<String, Long> sPhaseMillis = new ConcurrentHashMap<String, Long>();
+
+    private static Future<?> sStartup;
+
+    private StartupOrchestrator() {
+    }
+
+    /**
+     * Starts the background work of starting the app, unless it was started before in this
+     * process.  Returns at once.
+     */
+    public static synchronized void start(Context context) {
+        if (sStartup != null) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        sStartup = sExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                long startTime = SystemClock.elapsedRealtime();
+                try {
+                    SunshineSyncAdapter.initializeSyncAdapter(appContext);
+                } catch (RuntimeException e) {
+                    // the UI thread no longer crashes on it, so say so here
+                    Log.e(LOG_TAG, "Sync setup failed", e);
+                    return;
+                }
+                recordPhase(PHASE_SYNC_SETUP, startTime);
+            }
+        });
+    }
+
+    /**
+     * Records that a phase which began at {@code startTime}, in
+     * {@link SystemClock#elapsedRealtime}, ended now.  A phase that runs again replaces its
+     * last time.
+     */
+    public static void recordPhase(String phase, long startTime) {
+        long millis = SystemClock.elapsedRealtime() - startTime;
+        sPhaseMillis.put(phase, millis);
+        Log.d(LOG_TAG, "Startup phase " + phase + " took " + millis + " ms");
+    }
+
+    /**
+     * Returns how long a phase took the last time it ran, or -1 if it hasn't run.
+     */
+    public static long getPhaseMillis(String phase) {
+        Long millis = sPhaseMillis.get(phase);
+        return millis != null ? millis : -1;
+    }
+
+    /**
+     * Waits for the background work to finish, for tests.  Returns false if it didn't finish
+     * in time or wasn't started.
+     */
+    static boolean awaitStartup(long timeoutMillis) throws InterruptedException {
+        Future<?> startup;
+        synchronized (StartupOrchestrator.class) {
+            startup = sStartup;
+        }
+        if (startup == null) {
+            return false;
+        }
+        try {
+            startup.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Startup failed", e.getCause());
+            return false;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+}
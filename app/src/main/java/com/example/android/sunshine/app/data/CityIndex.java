@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * The bundled offline city list, for autocompleting the location setting and for syncing a
+ * known city by its id rather than by a name the server has to resolve.
+ * <p>
+ * The index is built from the city list by {@link CityIndexWriter} when the app is built, and
+ * stored uncompressed in the APK so that it can be memory-mapped.  Nothing of it is loaded
+ * into the heap: searches binary search the sorted records in place and compare keys byte by
+ * byte, and a city is identified by its record number.  Only names that are displayed become
+ * Strings.
+ */
+public final class CityIndex {
+
+    private static final String LOG_TAG = CityIndex.class.getSimpleName();
+
+    public static final String ASSET_NAME = "cities.idx";
+
+    // Fuzzy searches allow one typo in a short query and two in a longer one.
+    private static final int FUZZY_SHORT_QUERY = 5;
+
+    private static CityIndex sInstance;
+    private static boolean sLoaded;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mIdsOffset;
+
+    CityIndex(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.getInt(0) != CityIndexWriter.MAGIC) {
+            throw new IOException("Not a city index");
+        }
+        mCount = buffer.getInt(4);
+        mIdsOffset = buffer.getInt(8);
+    }
+
+    /**
+     * Returns the bundled index, mapping it on first use, or null if the app was built without
+     * one.  The mapping is shared by every caller for the life of the process.
+     */
+    public static synchronized CityIndex getInstance(Context context) {
+        if (!sLoaded) {
+            sLoaded = true;
+            try {
+                AssetFileDescriptor descriptor =
+                        context.getAssets().openFd(ASSET_NAME);
+                FileInputStream stream = descriptor.createInputStream();
+                try {
+                    sInstance = new CityIndex(stream.getChannel().map(
+                            FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                            descriptor.getLength()));
+                } finally {
+                    // the mapping stays valid once the file is closed
+                    stream.close();
+                    descriptor.close();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "No city index, city search is off", e);
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Maps an index file, such as one written by a test.
+     */
+    static CityIndex open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            return new CityIndex(input.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, input.length()));
+        } finally {
+            input.close();
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public int getCityId(int city) {
+        return mBuffer.getInt(getRecord(city) + 8);
+    }
+
+    public String getName(int city) {
+        int record = getRecord(city);
+        int nameOffset = getKeyOffset(city) + (mBuffer.getShort(record + 4) & 0xffff);
+        int nameLength = mBuffer.getShort(record + 6) & 0xffff;
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = mBuffer.get(nameOffset + i);
+        }
+        return new String(name, CityIndexWriter.UTF_8);
+    }
+
+    public String getCountry(int city) {
+        int record = getRecord(city);
+        return new String(new char[]{
+                (char) mBuffer.get(record + 20), (char) mBuffer.get(record + 21)}).trim();
+    }
+
+    public double getLat(int city) {
+        return mBuffer.getFloat(getRecord(city) + 12);
+    }
+
+    public double getLon(int city) {
+        return mBuffer.getFloat(getRecord(city) + 16);
+    }
+
+    /**
+     * Returns how a city is offered as a location setting, "Zurich, CH".
+     */
+    public String getLocationSetting(int city) {
+        String country = getCountry(city);
+        return country.length() == 0 ? getName(city) : getName(city) + ", " + country;
+    }
+
+    /**
+     * Returns the city with an id, or -1.
+     */
+    public int findById(int cityId) {
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = mIdsOffset + middle * CityIndexWriter.ID_ENTRY_BYTES;
+            int middleId = mBuffer.getInt(entry);
+            if (middleId < cityId) {
+                low = middle + 1;
+            } else if (middleId > cityId) {
+                high = middle - 1;
+            } else {
+                return mBuffer.getInt(entry + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the city a location setting names, or -1.  The setting is a city name, optionally
+     * followed by a comma and a two letter country code as {@link #getLocationSetting} writes it.
+     * Without a country, only a city listed without one is taken, as the autocomplete offers it;
+     * any other name is left for the server to resolve.
+     */
+    public int findCity(String locationSetting) {
+        String name = locationSetting;
+        String country = "";
+        int comma = locationSetting.lastIndexOf(',');
+        if (comma != -1) {
+            String code = locationSetting.substring(comma + 1).trim();
+            if (code.length() == 2) {
+                name = locationSetting.substring(0, comma);
+                country = code.toUpperCase(Locale.US);
+            }
+        }
+        byte[] key = CityIndexWriter.normalize(name).getBytes(CityIndexWriter.UTF_8);
+        if (key.length == 0) {
+            return -1;
+        }
+        for (int city = lowerBound(key); city < mCount && compareKey(city, key, false) == 0; city++) {
+            if (country.equals(getCountry(city))) {
+                return city;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fills {@code cities} with the cities whose name starts with the query, in the order of
+     * their search keys, and returns how many there were.  If no name starts with it, returns
+     * the closest fuzzy matches instead, see {@link #searchFuzzy}.
+     */
+    public int search(String query, int[] cities) {
+        byte[] key = CityIndexWriter.normalize(query).getBytes(CityIndexWriter.UTF_8);
+        if (key.length == 0) {
+            return 0;
+        }
+        int found = 0;
+        for (int city = lowerBound(key);
+             city < mCount && found < cities.length && compareKey(city, key, true) == 0; city++) {
+            cities[found++] = city;
+        }
+        return found > 0 ? found : searchFuzzy(key, cities);
+    }
+
+    /*
+        The cities whose name starts with something within a few typos of the query, closest
+        first.  Only names with the same first letter as the query are measured, which keeps a
+        search to a small part of the index, and a name is given up as soon as no prefix of it
+        can get close enough.
+     */
+    int searchFuzzy(byte[] key, int[] cities) {
+        if (cities.length == 0) {
+            return 0;
+        }
+        int maxDistance = key.length < FUZZY_SHORT_QUERY ? 1 : 2;
+        int[] distances = new int[cities.length];
+        int[] previous = new int[key.length + 1];
+        int[] current = new int[key.length + 1];
+        int found = 0;
+
+        byte[] first = new byte[]{key[0]};
+        int end = mCount;
+        if ((key[0] & 0xff) < 0xff) {
+            end = lowerBound(new byte[]{(byte) (key[0] + 1)});
+        }
+        for (int city = lowerBound(first); city < end; city++) {
+            int distance = getPrefixDistance(city, key, maxDistance, previous, current);
+            if (distance > maxDistance || (found == cities.length && distance >= distances[found - 1])) {
+                continue;
+            }
+            // insertion sort into the closest so far, the result array is small
+            int i = found == cities.length ? found - 1 : found++;
+            while (i > 0 && distances[i - 1] > distance) {
+                cities[i] = cities[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            cities[i] = city;
+            distances[i] = distance;
+        }
+        return found;
+    }
+
+    /*
+        The edit distance between the query and the closest prefix of a city's key, by the
+        Levenshtein recurrence with the query along the rows, one key byte per step.  Returns
+        maxDistance + 1 as soon as every entry of a row is over the limit.
+     */
+    private int getPrefixDistance(int city, byte[] query, int maxDistance,
+                                  int[] previous, int[] current) {
+        int keyOffset = getKeyOffset(city);
+        int keyLength = mBuffer.getShort(getRecord(city) + 4) & 0xffff;
+        for (int i = 0; i <= query.length; i++) {
+            previous[i] = i;
+        }
+        int best = query.length;
+        for (int j = 1; j <= keyLength; j++) {
+            byte keyByte = mBuffer.get(keyOffset + j - 1);
+            current[0] = j;
+            int rowMin = j;
+            for (int i = 1; i <= query.length; i++) {
+                int substitution = previous[i - 1] + (query[i - 1] == keyByte ? 0 : 1);
+                current[i] = Math.min(substitution, Math.min(previous[i], current[i - 1]) + 1);
+                rowMin = Math.min(rowMin, current[i]);
+            }
+            best = Math.min(best, current[query.length]);
+            if (rowMin > maxDistance) {
+                break;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return best;
+    }
+
+    // The first city whose key is not less than the given key.
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKey(middle, key, false) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Compares a city's key with the given key as unsigned bytes, like CityIndexWriter sorts
+    // them.  As a prefix match, a city key that starts with the given key compares equal.
+    private int compareKey(int city, byte[] key, boolean prefix) {
+        int keyOffset = getKeyOffset(city);
+        int keyLength = mBuffer.getShort(getRecord(city) + 4) & 0xffff;
+        int length = Math.min(keyLength, key.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (mBuffer.get(keyOffset + i) & 0xff) - (key[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        if (prefix && keyLength >= key.length) {
+            return 0;
+        }
+        return keyLength - key.length;
+    }
+
+    private static int getRecord(int city) {
+        return CityIndexWriter.HEADER_BYTES + city * CityIndexWriter.RECORD_BYTES;
+    }
+
+    private int getKeyOffset(int city) {
+        return mBuffer.getInt(getRecord(city));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Writes the city index that {@link CityIndex} reads.  The build runs this over the bundled
+ * city list, see app/build.gradle, so it only uses the Java library and no Android classes.
+ * <p>
+ * The file is big-endian and has four parts:
+ * <ul>
+ * <li>a header of {@link #HEADER_BYTES}: {@link #MAGIC}, the city count, and the offsets of
+ * the id table and of the strings</li>
+ * <li>a record of {@link #RECORD_BYTES} per city, sorted by search key: the offset of its key,
+ * the lengths of its key and of its name, the city id, latitude and longitude as floats, the
+ * two letter country code and two bytes of padding</li>
+ * <li>the id table, a (city id, record) pair of ints per city sorted by city id</li>
+ * <li>the strings, each city's UTF-8 search key followed by its UTF-8 name</li>
+ * </ul>
+ */
+public final class CityIndexWriter {
+
+    public static final int MAGIC = 0x43495831; // "CIX1"
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 24;
+    public static final int ID_ENTRY_BYTES = 8;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ArrayList<City> mCities = new ArrayList<City>();
+
+    /**
+     * Adds a city.  Names that reduce to an empty search key, or do not fit the 16 bit
+     * lengths of a record, are left out.
+     */
+    public void add(int cityId, String name, String country, double lat, double lon) {
+        byte[] key = normalize(name).getBytes(UTF_8);
+        byte[] nameBytes = name.getBytes(UTF_8);
+        if (key.length == 0 || key.length > 0xffff || nameBytes.length > 0xffff) {
+            return;
+        }
+        mCities.add(new City(cityId, key, nameBytes, country, (float) lat, (float) lon));
+    }
+
+    public int size() {
+        return mCities.size();
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        Collections.sort(mCities, new Comparator<City>() {
+            @Override
+            public int compare(City a, City b) {
+                int byKey = compareKeys(a.mKey, b.mKey);
+                if (byKey != 0) {
+                    return byKey;
+                }
+                int byCountry = a.mCountry.compareTo(b.mCountry);
+                return byCountry != 0 ? byCountry : compareInts(a.mCityId, b.mCityId);
+            }
+        });
+
+        int count = mCities.size();
+        int idsOffset = HEADER_BYTES + count * RECORD_BYTES;
+        int stringsOffset = idsOffset + count * ID_ENTRY_BYTES;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(count);
+        out.writeInt(idsOffset);
+        out.writeInt(stringsOffset);
+
+        int stringOffset = stringsOffset;
+        for (City city : mCities) {
+            out.writeInt(stringOffset);
+            out.writeShort(city.mKey.length);
+            out.writeShort(city.mName.length);
+            out.writeInt(city.mCityId);
+            out.writeFloat(city.mLat);
+            out.writeFloat(city.mLon);
+            out.writeByte(city.mCountry.length() > 0 ? city.mCountry.charAt(0) : ' ');
+            out.writeByte(city.mCountry.length() > 1 ? city.mCountry.charAt(1) : ' ');
+            out.writeShort(0);
+            stringOffset += city.mKey.length + city.mName.length;
+        }
+
+        Integer[] byId = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byId[i] = i;
+        }
+        Arrays.sort(byId, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareInts(mCities.get(a).mCityId, mCities.get(b).mCityId);
+            }
+        });
+        for (Integer record : byId) {
+            out.writeInt(mCities.get(record).mCityId);
+            out.writeInt(record);
+        }
+
+        for (City city : mCities) {
+            out.write(city.mKey);
+            out.write(city.mName);
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the search key of a name or query: lower case, without accents, with runs of
+     * anything but letters and digits turned into single spaces.  A name with accents has the
+     * same key as the name without them, and so do "St. Louis" and "st louis".
+     */
+    public static String normalize(String name) {
+        // lower case first, some capitals lower to a letter and a combining mark
+        String decomposed = Normalizer.normalize(name.toLowerCase(Locale.US), Normalizer.Form.NFD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (space && key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return key.toString();
+    }
+
+    // Keys compare as unsigned bytes, which is how CityIndex compares them too.
+    static int compareKeys(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static int compareInts(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private static final class City {
+        final int mCityId;
+        final byte[] mKey;
+        final byte[] mName;
+        final String mCountry;
+        final float mLat;
+        final float mLon;
+
+        City(int cityId, byte[] key, byte[] name, String country, float lat, float lon) {
+            mCityId = cityId;
+            mKey = key;
+            mName = name;
+            mCountry = country == null ? "" : country.toUpperCase(Locale.US);
+            mLat = lat;
+            mLon = lon;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The days of a location as its last sync wrote them, for showing a forecast before the
+ * database has been opened and queried, such as in the first frame of a cold start.
+ * <p>
+ * Each location setting has its own small file, written by {@link ForecastSnapshotWriter} and
+ * memory-mapped here.  Like {@link CityIndex}, nothing is copied into the heap but the
+ * descriptions that are read.  A snapshot is replaced by renaming a new file over it, so
+ * readers in any process need no lock.  It is only ever as new as the last sync, and the
+ * database stays the source of truth: readers show a snapshot until their query comes back.
+ */
+public final class ForecastSnapshot {
+
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    static final String DIRECTORY_NAME = "snapshots";
+    // by then not a day of the forecast is upcoming any more
+    static final long MAX_AGE_MILLIS = 14 * WeatherContract.DAY_IN_MILLIS;
+
+    private static final int MEASUREMENTS = WeatherEntry.MEASUREMENT_COLUMNS.length;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mSettingLength;
+
+    ForecastSnapshot(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.limit() < ForecastSnapshotWriter.HEADER_BYTES
+                || buffer.getInt(0) != ForecastSnapshotWriter.MAGIC) {
+            throw new IOException("Not a forecast snapshot");
+        }
+        if (buffer.getInt(4) != ForecastSnapshotWriter.VERSION) {
+            throw new IOException("Forecast snapshot version " + buffer.getInt(4));
+        }
+        mCount = buffer.getInt(8);
+        mSettingLength = buffer.getInt(12);
+        if (mCount < 0 || mSettingLength < 0 || buffer.limit() <
+                ForecastSnapshotWriter.HEADER_BYTES + (long) mCount * ForecastSnapshotWriter.RECORD_BYTES
+                        + mSettingLength) {
+            throw new IOException("Truncated forecast snapshot");
+        }
+    }
+
+    /**
+     * Returns the file of a location setting's snapshot.  Settings are hashed into the name,
+     * the snapshot itself records which one it is of.
+     */
+    public static File getFile(Context context, String locationSetting) {
+        return new File(new File(context.getFilesDir(), DIRECTORY_NAME),
+                "forecast_" + Integer.toHexString(locationSetting.hashCode()));
+    }
+
+    /**
+     * Maps the snapshot of a location setting, or returns null if there is none, or none this
+     * version of the app can read.
+     */
+    public static ForecastSnapshot open(Context context, String locationSetting) {
+        try {
+            ForecastSnapshot snapshot = open(getFile(context, locationSetting));
+            return locationSetting.equals(snapshot.getLocationSetting()) ? snapshot : null;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unreadable forecast snapshot of " + locationSetting, e);
+            return null;
+        }
+    }
+
+    /**
+     * Maps a snapshot file, such as one written by a test.
+     */
+    static ForecastSnapshot open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            return new ForecastSnapshot(input.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, input.length()));
+        } finally {
+            // the mapping stays valid once the file is closed
+            input.close();
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public long getWrittenAt() {
+        return mBuffer.getLong(16);
+    }
+
+    public long getLocationId() {
+        return mBuffer.getLong(24);
+    }
+
+    public double getLat() {
+        return mBuffer.getDouble(32);
+    }
+
+    public double getLon() {
+        return mBuffer.getDouble(40);
+    }
+
+    public String getLocationSetting() {
+        return getString(getStringsOffset(), mSettingLength);
+    }
+
+    public long getDate(int row) {
+        return mBuffer.getLong(getRecord(row));
+    }
+
+    public int getWeatherId(int row) {
+        return mBuffer.getInt(getRecord(row) + 8);
+    }
+
+    public String getShortDesc(int row) {
+        int record = getRecord(row) + 12 + 4 * MEASUREMENTS;
+        return getString(mBuffer.getInt(record), mBuffer.getShort(record + 4) & 0xffff);
+    }
+
+    /**
+     * Returns a measurement in its unit.
+     *
+     * @param measurement index into {@link WeatherEntry#MEASUREMENT_COLUMNS}, such as
+     *                    {@link WeatherArrays#MAX_TEMP}
+     */
+    public double getMeasurement(int row, int measurement) {
+        return (double) getScaledMeasurement(row, measurement) / WeatherEntry.MEASUREMENT_SCALE;
+    }
+
+    private int getScaledMeasurement(int row, int measurement) {
+        return mBuffer.getInt(getRecord(row) + 12 + 4 * measurement);
+    }
+
+    /**
+     * Returns the first day on or after a date, or {@link #size} if there is none.
+     */
+    public int getFirstRow(long date) {
+        int row = 0;
+        while (row < mCount && getDate(row) < date) {
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * Reads the days from startDate to endDate inclusive, like
+     * {@link WeatherArrays#read(android.content.ContentResolver, long, long, long)} reads them
+     * from the database.
+     */
+    public WeatherArrays read(long startDate, long endDate) {
+        startDate = WeatherContract.normalizeDate(startDate);
+        endDate = WeatherContract.normalizeDate(endDate);
+        int first = getFirstRow(startDate);
+        int end = first;
+        while (end < mCount && getDate(end) <= endDate) {
+            end++;
+        }
+        WeatherArrays rows = new WeatherArrays(end - first);
+        int[] measurements = new int[MEASUREMENTS];
+        for (int row = first; row < end; row++) {
+            for (int m = 0; m < MEASUREMENTS; m++) {
+                measurements[m] = getScaledMeasurement(row, m);
+            }
+            rows.addScaled(getLocationId(), getDate(row), getWeatherId(row), getShortDesc(row),
+                    measurements);
+        }
+        return rows;
+    }
+
+    private int getStringsOffset() {
+        return ForecastSnapshotWriter.HEADER_BYTES + mCount * ForecastSnapshotWriter.RECORD_BYTES;
+    }
+
+    private static int getRecord(int row) {
+        return ForecastSnapshotWriter.HEADER_BYTES + row * ForecastSnapshotWriter.RECORD_BYTES;
+    }
+
+    private String getString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(offset + i);
+        }
+        return new String(bytes, CityIndexWriter.UTF_8);
+    }
+}
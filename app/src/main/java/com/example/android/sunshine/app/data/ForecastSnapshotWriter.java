@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Writes the forecast snapshot of a location that {@link ForecastSnapshot} reads.  The sync
+ * writes one after committing the days it fetched.
+ * <p>
+ * The file is big-endian and has three parts:
+ * <ul>
+ * <li>a header of {@link #HEADER_BYTES}: {@link #MAGIC}, {@link #VERSION}, the day count, the
+ * length of the location setting, the time it was written, the location id, latitude and
+ * longitude</li>
+ * <li>a record of {@link #RECORD_BYTES} per day, earliest first: the date, the weather id, the
+ * measurements scaled as the weather table stores them in the order of
+ * {@link WeatherEntry#MEASUREMENT_COLUMNS}, the offset and length of the description and two
+ * bytes of padding</li>
+ * <li>the strings, the UTF-8 location setting followed by each day's UTF-8 description</li>
+ * </ul>
+ */
+public final class ForecastSnapshotWriter {
+
+    public static final int MAGIC = 0x46534e50; // "FSNP"
+    // A reader ignores a snapshot of any other version, so a change to the format only costs
+    // the first frame of one cold start.
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 48;
+    public static final int RECORD_BYTES = 12 + 4 * WeatherEntry.MEASUREMENT_COLUMNS.length + 8;
+
+    private final String mLocationSetting;
+    private final long mLocationId;
+    private final double mLat;
+    private final double mLon;
+    private final ArrayList<Day> mDays = new ArrayList<Day>();
+
+    public ForecastSnapshotWriter(String locationSetting, long locationId, double lat, double lon) {
+        mLocationSetting = locationSetting;
+        mLocationId = locationId;
+        mLat = lat;
+        mLon = lon;
+    }
+
+    /**
+     * Adds the days of some weather rows.  Days have to be added earliest first.
+     */
+    public void add(WeatherArrays weather) {
+        for (int row = 0; row < weather.size(); row++) {
+            int[] measurements = new int[WeatherEntry.MEASUREMENT_COLUMNS.length];
+            for (int m = 0; m < measurements.length; m++) {
+                measurements[m] = weather.getScaledMeasurement(row, m);
+            }
+            mDays.add(new Day(weather.getDate(row), weather.getWeatherId(row),
+                    weather.getShortDesc(row).getBytes(CityIndexWriter.UTF_8), measurements));
+        }
+    }
+
+    public int size() {
+        return mDays.size();
+    }
+
+    public void write(OutputStream stream, long writtenAt) throws IOException {
+        byte[] setting = mLocationSetting.getBytes(CityIndexWriter.UTF_8);
+        int stringOffset = HEADER_BYTES + mDays.size() * RECORD_BYTES + setting.length;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(mDays.size());
+        out.writeInt(setting.length);
+        out.writeLong(writtenAt);
+        out.writeLong(mLocationId);
+        out.writeDouble(mLat);
+        out.writeDouble(mLon);
+
+        for (Day day : mDays) {
+            out.writeLong(day.mDate);
+            out.writeInt(day.mWeatherId);
+            for (int measurement : day.mMeasurements) {
+                out.writeInt(measurement);
+            }
+            out.writeInt(stringOffset);
+            out.writeShort(day.mShortDesc.length);
+            out.writeShort(0);
+            stringOffset += day.mShortDesc.length;
+        }
+
+        out.write(setting);
+        for (Day day : mDays) {
+            out.write(day.mShortDesc);
+        }
+        out.flush();
+    }
+
+    /**
+     * Replaces the snapshot of the location setting.  The new file is written next to the old
+     * one and renamed over it, so a reader maps either the old snapshot or the new one, never
+     * half of one, and one that mapped the old file keeps reading it.  Snapshots nobody wrote
+     * in {@link ForecastSnapshot#MAX_AGE_MILLIS} are deleted.
+     */
+    public void save(Context context) throws IOException {
+        File file = ForecastSnapshot.getFile(context, mLocationSetting);
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        long now = System.currentTimeMillis();
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            write(out, now);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Can't replace " + file);
+        }
+
+        File[] snapshots = directory.listFiles();
+        if (snapshots != null) {
+            for (File snapshot : snapshots) {
+                if (now - snapshot.lastModified() > ForecastSnapshot.MAX_AGE_MILLIS) {
+                    snapshot.delete();
+                }
+            }
+        }
+    }
+
+    private static final class Day {
+        final long mDate;
+        final int mWeatherId;
+        final byte[] mShortDesc;
+        final int[] mMeasurements;
+
+        Day(long date, int weatherId, byte[] shortDesc, int[] measurements) {
+            mDate = date;
+            mWeatherId = weatherId;
+            mShortDesc = shortDesc;
+            mMeasurements = measurements;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records when the forecast of a location was last read, for
+ * {@link LocationEntry#COLUMN_LAST_ACCESS}.
+ * <p>
+ * Reads happen on every loader requery, and writing from them would queue each read behind
+ * whatever the sync is writing.  So a read only notes the time in memory, and {@link #flush}
+ * writes the latest time of every location read since in one transaction, from the maintenance
+ * pass that evicts by it.  Times not flushed yet are lost with the process, which at worst
+ * makes a location look as old as its last flush.  The write does not notify observers, since
+ * nothing displays it.
+ */
+class LocationAccessTracker {
+
+    // The last read of each location setting since the last flush.
+    private final HashMap<String, Long> mPending = new HashMap<String, Long>();
+    // The same for locations read by their id.
+    private final HashMap<Long, Long> mPendingById = new HashMap<Long, Long>();
+
+    synchronized void recordAccess(String locationSetting, long now) {
+        mPending.put(locationSetting, now);
+    }
+
+    synchronized void recordAccess(long locationId, long now) {
+        mPendingById.put(locationId, now);
+    }
+
+    /**
+     * Writes the access times recorded since the last flush.
+     */
+    void flush(SQLiteDatabase db) {
+        HashMap<String, Long> pending;
+        HashMap<Long, Long> pendingById;
+        synchronized (this) {
+            if (mPending.isEmpty() && mPendingById.isEmpty()) {
+                return;
+            }
+            pending = new HashMap<String, Long>(mPending);
+            pendingById = new HashMap<Long, Long>(mPendingById);
+            mPending.clear();
+            mPendingById.clear();
+        }
+
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, Long> access : pending.entrySet()) {
+                writeAccess(db, LocationEntry.COLUMN_LOCATION_SETTING, access.getKey(),
+                        access.getValue());
+            }
+            for (Map.Entry<Long, Long> access : pendingById.entrySet()) {
+                writeAccess(db, LocationEntry._ID, Long.toString(access.getKey()),
+                        access.getValue());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Never moves an access time back, such as that of a location added since the read.
+    private static void writeAccess(SQLiteDatabase db, String column, String value, long time) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LAST_ACCESS, time);
+        db.update(LocationEntry.TABLE_NAME, values,
+                column + " = ? AND " + LocationEntry.COLUMN_LAST_ACCESS + " < ?",
+                new String[]{value, Long.toString(time)});
+    }
+
+    /**
+     * Forgets the reads not written yet, for when locations are deleted and may come back.
+     */
+    synchronized void clear() {
+        mPending.clear();
+        mPendingById.clear();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/**
+ * Finds the stored locations nearest to a point, for {@link LocationEntry#buildNearestUri}.
+ * <p>
+ * The search reads the locations in a square of grid cells around the point through
+ * {@link LocationEntry#INDEX_GRID} and widens the square, doubling it, until it holds enough
+ * locations and every location outside of it is farther away than the ones found.  A search
+ * near stored locations reads a few cells, however many locations there are elsewhere.
+ * SQLite has no trigonometry, so the distances are computed here and the rows are then read
+ * with each distance as a literal.
+ */
+final class NearestLocationFinder {
+
+    // Mean radius of the earth, in kilometers.
+    static final double EARTH_RADIUS_KM = 6371.0;
+
+    // More would not be "nearby" any more, and the distances go into the SQL.
+    static final int MAX_COUNT = 100;
+
+    private static final int GRID_LAT_CELLS = 180 * LocationEntry.GRID_CELLS_PER_DEGREE;
+    private static final int GRID_LONG_CELLS = 360 * LocationEntry.GRID_CELLS_PER_DEGREE;
+    private static final double KM_PER_CELL = Math.toRadians(1.0 / LocationEntry.GRID_CELLS_PER_DEGREE) *
+            EARTH_RADIUS_KM;
+
+    //SELECT _id, coord_lat, coord_long FROM location WHERE grid_lat >= ? AND grid_lat <= ?
+    //  AND (grid_long >= ? AND grid_long <= ? OR grid_long >= ? AND grid_long <= ?)
+    private static final String sCandidatesSql = "SELECT " + LocationEntry._ID + ", " +
+            LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG +
+            " FROM " + LocationEntry.TABLE_NAME +
+            " WHERE " + LocationEntry.COLUMN_GRID_LAT + " >= ? AND " +
+            LocationEntry.COLUMN_GRID_LAT + " <= ? AND (" +
+            LocationEntry.COLUMN_GRID_LONG + " >= ? AND " + LocationEntry.COLUMN_GRID_LONG + " <= ? OR " +
+            LocationEntry.COLUMN_GRID_LONG + " >= ? AND " + LocationEntry.COLUMN_GRID_LONG + " <= ?)";
+
+    private NearestLocationFinder() {
+    }
+
+    /**
+     * Returns the location rows nearest to (lat, lon), nearest first, with
+     * {@link LocationEntry#COLUMN_DISTANCE}.  A null projection returns every column.
+     */
+    static Cursor query(SQLiteDatabase db, double lat, double lon, int count, String[] projection) {
+        if (count <= 0 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("Nearest location count out of range: " + count);
+        }
+        // NaN compares false with every bound, so it has to be rejected on its own
+        if (Double.isNaN(lat) || Double.isNaN(lon) ||
+                lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            throw new IllegalArgumentException("Not a coordinate: " + lat + ", " + lon);
+        }
+
+        Nearest nearest = new Nearest(count);
+        int gridLat = LocationEntry.getGridLat(lat);
+        int gridLong = LocationEntry.getGridLong(lon);
+        for (int radius = 1; ; radius *= 2) {
+            nearest.clear();
+            readCandidates(db, lat, lon, gridLat, gridLong, radius, nearest);
+
+            // the cells run from 0 to GRID_LAT_CELLS inclusive, the poles have a cell of their own
+            boolean wholeWorld = gridLat - radius <= 0 && gridLat + radius >= GRID_LAT_CELLS &&
+                    2 * radius + 1 >= GRID_LONG_CELLS;
+            if (wholeWorld || (nearest.mSize == count &&
+                    nearest.mDistances[count - 1] <= getSearchedRadiusKm(lat, radius))) {
+                break;
+            }
+        }
+        return readRows(db, nearest, projection);
+    }
+
+    private static void readCandidates(SQLiteDatabase db, double lat, double lon,
+                                       int gridLat, int gridLong, int radius, Nearest nearest) {
+        // the square may cross the antimeridian, then its other part is the second range
+        int westLong = gridLong - radius;
+        int eastLong = gridLong + radius;
+        int wrappedWest = GRID_LONG_CELLS;
+        int wrappedEast = -1;
+        if (2 * radius + 1 >= GRID_LONG_CELLS) {
+            westLong = 0;
+            eastLong = GRID_LONG_CELLS;
+        } else if (westLong < 0) {
+            wrappedWest = westLong + GRID_LONG_CELLS;
+            wrappedEast = GRID_LONG_CELLS;
+        } else if (eastLong >= GRID_LONG_CELLS) {
+            wrappedWest = 0;
+            wrappedEast = eastLong - GRID_LONG_CELLS;
+        }
+
+        Cursor cursor = db.rawQuery(sCandidatesSql, new String[]{
+                Integer.toString(gridLat - radius), Integer.toString(gridLat + radius),
+                Integer.toString(westLong), Integer.toString(eastLong),
+                Integer.toString(wrappedWest), Integer.toString(wrappedEast)});
+        try {
+            while (cursor.moveToNext()) {
+                nearest.offer(cursor.getLong(0),
+                        getDistanceKm(lat, lon, cursor.getDouble(1), cursor.getDouble(2)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        How far from the point the square of cells reaches at least, in every direction.  The
+        point may lie anywhere in its own cell, so the square reaches radius cells past it.
+        East and west those cells narrow with the cosine of the latitude, smallest at the
+        edge of the square nearest to a pole.
+     */
+    private static double getSearchedRadiusKm(double lat, int radius) {
+        double polewardLat = Math.min(90, Math.abs(lat) + (double) radius / LocationEntry.GRID_CELLS_PER_DEGREE);
+        return radius * KM_PER_CELL * Math.cos(Math.toRadians(polewardLat));
+    }
+
+    // Great circle distance by the haversine formula.
+    static double getDistanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    //SELECT <projection>, CASE _id WHEN 12 THEN 1.5 ... END AS distance FROM location
+    //  WHERE _id IN (12, ...) ORDER BY CASE _id WHEN 12 THEN 1.5 ... END ASC
+    private static Cursor readRows(SQLiteDatabase db, Nearest nearest, String[] projection) {
+        StringBuilder distance = new StringBuilder("CASE " + LocationEntry._ID);
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < nearest.mSize; i++) {
+            distance.append(" WHEN ").append(nearest.mIds[i])
+                    .append(" THEN ").append(nearest.mDistances[i]);
+            ids.append(i == 0 ? "" : ", ").append(nearest.mIds[i]);
+        }
+        // a CASE needs at least one WHEN, an empty database has nothing to measure
+        String distanceExpression = nearest.mSize == 0 ? "NULL" : distance.append(" END").toString();
+        String distanceColumn = distanceExpression + " AS " + LocationEntry.COLUMN_DISTANCE;
+
+        String[] columns;
+        if (projection == null) {
+            columns = new String[]{"*", distanceColumn};
+        } else {
+            columns = new String[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                columns[i] = LocationEntry.COLUMN_DISTANCE.equals(projection[i])
+                        ? distanceColumn : projection[i];
+            }
+        }
+        // ordered by the expression, in case the projection leaves the distance out
+        return db.query(LocationEntry.TABLE_NAME, columns,
+                LocationEntry._ID + " IN (" + ids + ")", null, null, null,
+                distanceExpression + " ASC");
+    }
+
+    // The count nearest locations offered so far, nearest first.
+    private static class Nearest {
+        final long[] mIds;
+        final double[] mDistances;
+        int mSize;
+
+        Nearest(int count) {
+            mIds = new long[count];
+            mDistances = new double[count];
+        }
+
+        void clear() {
+            mSize = 0;
+        }
+
+        void offer(long id, double distance) {
+            if (mSize == mIds.length && distance >= mDistances[mSize - 1]) {
+                return;
+            }
+            int i = mSize == mIds.length ? mSize - 1 : mSize++;
+            // insertion sort, the count is small
+            while (i > 0 && mDistances[i - 1] > distance) {
+                mIds[i] = mIds[i - 1];
+                mDistances[i] = mDistances[i - 1];
+                i--;
+            }
+            mIds[i] = id;
+            mDistances[i] = distance;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Collects change notifications raised by {@link WeatherProvider} during a write burst and
+ * delivers one notification per distinct Uri once the burst is over.
+ * <p>
+ * A burst is either an explicit batch ({@link #beginBatch()} / {@link #endBatch()}, used around
+ * transactions) or a run of writes that arrive closer together than the debounce window.  A
+ * single sync inserts a location, bulk inserts the weather and purges old rows; without this,
+ * every one of those writes makes each attached CursorLoader requery and rebind.
+ */
+class NotificationCoalescer {
+
+    // Default quiet period after the last write before observers are told about it.
+    static final long DEFAULT_DEBOUNCE_MILLIS = 150;
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+    private final LinkedHashSet<Uri> mPendingUris = new LinkedHashSet<Uri>();
+    // raised inside the current batch, pending only once it ends
+    private final LinkedHashSet<Uri> mBatchUris = new LinkedHashSet<Uri>();
+
+    private long mDebounceMillis;
+    private int mBatchDepth;
+    private boolean mBatchDiscarded;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    NotificationCoalescer(ContentResolver resolver, long debounceMillis) {
+        mResolver = resolver;
+        mHandler = new Handler(Looper.getMainLooper());
+        mDebounceMillis = debounceMillis;
+    }
+
+    /**
+     * Sets the debounce window.  A window of 0 disables debouncing, so notifications outside
+     * an explicit batch are delivered immediately.
+     */
+    synchronized void setDebounceMillis(long debounceMillis) {
+        mDebounceMillis = Math.max(0, debounceMillis);
+    }
+
+    synchronized long getDebounceMillis() {
+        return mDebounceMillis;
+    }
+
+    /**
+     * Starts a batch.  Batches nest; notifications are held until the outermost batch ends.
+     */
+    synchronized void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Ends a batch started with {@link #beginBatch()}.  When the outermost batch ends the
+     * pending notifications are scheduled like any other write.
+     */
+    void endBatch() {
+        endBatch(false);
+    }
+
+    /**
+     * Ends a batch whose writes were rolled back.  Nothing raised inside the outermost batch
+     * is delivered, since a nested transaction that fails rolls back the outer one too.
+     */
+    void discardBatch() {
+        endBatch(true);
+    }
+
+    private void endBatch(boolean discard) {
+        synchronized (this) {
+            if (mBatchDepth == 0) {
+                throw new IllegalStateException("endBatch() without matching beginBatch()");
+            }
+            mBatchDepth--;
+            mBatchDiscarded |= discard;
+            if (mBatchDepth > 0) {
+                return;
+            }
+            if (!mBatchDiscarded) {
+                mPendingUris.addAll(mBatchUris);
+            }
+            mBatchUris.clear();
+            mBatchDiscarded = false;
+            if (mPendingUris.isEmpty()) {
+                return;
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Records that the data behind {@code uri} changed.
+     */
+    void notifyChange(Uri uri) {
+        synchronized (this) {
+            if (mBatchDepth > 0) {
+                mBatchUris.add(uri);
+                return;
+            }
+            mPendingUris.add(uri);
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        long debounceMillis = getDebounceMillis();
+        if (debounceMillis == 0) {
+            flush();
+        } else {
+            // Every new write pushes the delivery back, so a burst ends up as one notification.
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.postDelayed(mFlushRunnable, debounceMillis);
+        }
+    }
+
+    /**
+     * Delivers everything that is pending right now, ignoring the debounce window.
+     */
+    void flush() {
+        ArrayList<Uri> uris;
+        synchronized (this) {
+            if (mBatchDepth > 0 || mPendingUris.isEmpty()) {
+                return;
+            }
+            uris = new ArrayList<Uri>(mPendingUris);
+            mPendingUris.clear();
+        }
+        mHandler.removeCallbacks(mFlushRunnable);
+        for (Uri uri : uris) {
+            mResolver.notifyChange(uri, null);
+        }
+    }
+}
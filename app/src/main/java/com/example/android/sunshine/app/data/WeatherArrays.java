@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * Weather rows packed column by column into primitive arrays, for passing them through
+ * {@link android.content.ContentResolver#call} in a {@link Bundle}.
+ * <p>
+ * A ContentValues[] is parcelled as one map per row, with every column name and boxed value
+ * written again for each row.  Here each column is a single array under its column name, and
+ * the measurements are already scaled to the integers the weather table stores (see
+ * {@link WeatherEntry#MEASUREMENT_SCALE}), so a row costs a few dozen bytes on the wire and the
+ * provider binds them without converting anything.
+ */
+public final class WeatherArrays {
+
+    // Indices into WeatherEntry.MEASUREMENT_COLUMNS, for getMeasurement.
+    public static final int MIN_TEMP = 0;
+    public static final int MAX_TEMP = 1;
+    public static final int HUMIDITY = 2;
+    public static final int PRESSURE = 3;
+    public static final int WIND_SPEED = 4;
+    public static final int DEGREES = 5;
+
+    private final long[] mLocationIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mShortDescs;
+    // indexed like WeatherEntry.MEASUREMENT_COLUMNS, then by row
+    private final int[][] mMeasurements;
+    private int mSize;
+
+    public WeatherArrays(int capacity) {
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mShortDescs = new String[capacity];
+        mMeasurements = new int[WeatherEntry.MEASUREMENT_COLUMNS.length][capacity];
+    }
+
+    private WeatherArrays(Bundle bundle) {
+        mLocationIds = bundle.getLongArray(WeatherEntry.COLUMN_LOC_KEY);
+        mDates = bundle.getLongArray(WeatherEntry.COLUMN_DATE);
+        mWeatherIds = bundle.getIntArray(WeatherEntry.COLUMN_WEATHER_ID);
+        mShortDescs = bundle.getStringArray(WeatherEntry.COLUMN_SHORT_DESC);
+        if (mLocationIds == null || mDates == null || mWeatherIds == null || mShortDescs == null) {
+            throw new IllegalArgumentException("Not a bundle of weather rows");
+        }
+        mMeasurements = new int[WeatherEntry.MEASUREMENT_COLUMNS.length][];
+        for (int m = 0; m < mMeasurements.length; m++) {
+            mMeasurements[m] = bundle.getIntArray(WeatherEntry.MEASUREMENT_COLUMNS[m]);
+            if (mMeasurements[m] == null) {
+                throw new IllegalArgumentException("Missing " + WeatherEntry.MEASUREMENT_COLUMNS[m]);
+            }
+        }
+        mSize = mDates.length;
+    }
+
+    /**
+     * Reads the rows packed by {@link #toBundle()}.
+     */
+    public static WeatherArrays fromBundle(Bundle bundle) {
+        return new WeatherArrays(bundle);
+    }
+
+    /**
+     * Appends a row given as it would be to {@link WeatherProvider#insert}.  Every column of
+     * the weather table and its description have to be there.
+     */
+    public void add(ContentValues values) {
+        int row = mSize;
+        mLocationIds[row] = getRequired(values, WeatherEntry.COLUMN_LOC_KEY).longValue();
+        mDates[row] = getRequired(values, WeatherEntry.COLUMN_DATE).longValue();
+        mWeatherIds[row] = getRequired(values, WeatherEntry.COLUMN_WEATHER_ID).intValue();
+        mShortDescs[row] = values.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        if (mShortDescs[row] == null) {
+            throw new IllegalArgumentException("Missing " + WeatherEntry.COLUMN_SHORT_DESC);
+        }
+        for (int m = 0; m < mMeasurements.length; m++) {
+            double value = getRequired(values, WeatherEntry.MEASUREMENT_COLUMNS[m]).doubleValue();
+            mMeasurements[m][row] = (int) Math.round(value * WeatherEntry.MEASUREMENT_SCALE);
+        }
+        mSize++;
+    }
+
+    /*
+        Appends a row as the weather table stores it, from a cursor with the location id, date,
+        weather id and description, followed by the measurement columns in the order of
+        WeatherEntry.MEASUREMENT_COLUMNS.  Like add, it refuses a row without a description.
+     */
+    void addStored(Cursor cursor) {
+        int row = mSize;
+        mLocationIds[row] = cursor.getLong(0);
+        mDates[row] = cursor.getLong(1);
+        mWeatherIds[row] = cursor.getInt(2);
+        mShortDescs[row] = cursor.getString(3);
+        if (mShortDescs[row] == null) {
+            throw new IllegalArgumentException("Missing " + WeatherEntry.COLUMN_SHORT_DESC);
+        }
+        for (int m = 0; m < mMeasurements.length; m++) {
+            mMeasurements[m][row] = cursor.getInt(4 + m);
+        }
+        mSize++;
+    }
+
+    // Appends a row whose measurements are scaled already, as ForecastSnapshot stores them.
+    void addScaled(long locationId, long date, int weatherId, String shortDesc,
+                   int[] measurements) {
+        int row = mSize;
+        mLocationIds[row] = locationId;
+        mDates[row] = date;
+        mWeatherIds[row] = weatherId;
+        mShortDescs[row] = shortDesc;
+        for (int m = 0; m < mMeasurements.length; m++) {
+            mMeasurements[m][row] = measurements[m];
+        }
+        mSize++;
+    }
+
+    private static Number getRequired(ContentValues values, String column) {
+        Object value = values.get(column);
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof String) {
+            return Double.valueOf((String) value);
+        }
+        throw new IllegalArgumentException("Missing " + column);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getLocationId(int row) {
+        return mLocationIds[row];
+    }
+
+    public long getDate(int row) {
+        return mDates[row];
+    }
+
+    public int getWeatherId(int row) {
+        return mWeatherIds[row];
+    }
+
+    public String getShortDesc(int row) {
+        return mShortDescs[row];
+    }
+
+    /**
+     * Returns a measurement in its unit.
+     *
+     * @param measurement index into {@link WeatherEntry#MEASUREMENT_COLUMNS}
+     */
+    public double getMeasurement(int row, int measurement) {
+        return (double) mMeasurements[measurement][row] / WeatherEntry.MEASUREMENT_SCALE;
+    }
+
+    // The measurement as the weather table stores it.
+    int getScaledMeasurement(int row, int measurement) {
+        return mMeasurements[measurement][row];
+    }
+
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLongArray(WeatherEntry.COLUMN_LOC_KEY, Arrays.copyOf(mLocationIds, mSize));
+        bundle.putLongArray(WeatherEntry.COLUMN_DATE, Arrays.copyOf(mDates, mSize));
+        bundle.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, Arrays.copyOf(mWeatherIds, mSize));
+        bundle.putStringArray(WeatherEntry.COLUMN_SHORT_DESC, Arrays.copyOf(mShortDescs, mSize));
+        for (int m = 0; m < mMeasurements.length; m++) {
+            bundle.putIntArray(WeatherEntry.MEASUREMENT_COLUMNS[m],
+                    Arrays.copyOf(mMeasurements[m], mSize));
+        }
+        return bundle;
+    }
+
+    /**
+     * Writes weather rows through the provider in calls of at most
+     * {@link WeatherContract#MAX_ROWS_PER_WRITE} rows, so that no batch is too large for one
+     * Binder transaction.  Each call is committed on its own; a batch that fails part way keeps
+     * the calls before it.  Before Honeycomb, which has no ContentResolver.call, the calls are
+     * bulk inserts of the same size.
+     *
+     * @return the number of rows written
+     */
+    public static int bulkWrite(ContentResolver resolver, ContentValues[] values) {
+        int written = 0;
+        for (int start = 0; start < values.length; start += WeatherContract.MAX_ROWS_PER_WRITE) {
+            int end = Math.min(values.length, start + WeatherContract.MAX_ROWS_PER_WRITE);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                WeatherArrays rows = new WeatherArrays(end - start);
+                for (int i = start; i < end; i++) {
+                    rows.add(values[i]);
+                }
+                Bundle result = resolver.call(WeatherContract.BASE_CONTENT_URI,
+                        WeatherContract.METHOD_BULK_WRITE, null, rows.toBundle());
+                written += result.getInt(WeatherContract.EXTRA_ROWS_WRITTEN);
+            } else {
+                written += resolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                        Arrays.copyOfRange(values, start, end));
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Reads the days of a location from startDate to endDate inclusive, at most
+     * {@link WeatherContract#MAX_ROWS_PER_READ} of them, earliest first.  The provider copies
+     * them out of its own cursor into arrays and returns them in one Bundle, so no
+     * CursorWindow is shared with the caller or filled again on its side.  Before Honeycomb
+     * this falls back to a cursor query of the date range.
+     */
+    public static WeatherArrays read(ContentResolver resolver, String locationSetting,
+                                     long startDate, long endDate) {
+        return read(resolver, locationSetting, -1, startDate, endDate);
+    }
+
+    /**
+     * Like {@link #read(ContentResolver, String, long, long)}, for a caller that knows the
+     * {@link WeatherContract.LocationEntry#_ID} of the location.
+     */
+    public static WeatherArrays read(ContentResolver resolver, long locationId,
+                                     long startDate, long endDate) {
+        return read(resolver, null, locationId, startDate, endDate);
+    }
+
+    // The location is either its setting or, if locationId is not -1, its id.
+    private static WeatherArrays read(ContentResolver resolver, String locationSetting,
+                                      long locationId, long startDate, long endDate) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle extras = new Bundle();
+            extras.putLong(WeatherContract.EXTRA_START_DATE, startDate);
+            extras.putLong(WeatherContract.EXTRA_END_DATE, endDate);
+            if (locationId != -1) {
+                extras.putLong(WeatherContract.EXTRA_LOCATION_ID, locationId);
+            }
+            return fromBundle(resolver.call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_READ_WEATHER, locationSetting, extras));
+        }
+
+        String[] projection = new String[4 + WeatherEntry.MEASUREMENT_COLUMNS.length];
+        projection[0] = WeatherEntry.COLUMN_LOC_KEY;
+        projection[1] = WeatherEntry.COLUMN_DATE;
+        projection[2] = WeatherEntry.COLUMN_WEATHER_ID;
+        projection[3] = WeatherEntry.COLUMN_SHORT_DESC;
+        System.arraycopy(WeatherEntry.MEASUREMENT_COLUMNS, 0, projection, 4,
+                WeatherEntry.MEASUREMENT_COLUMNS.length);
+        Uri rangeUri = locationId != -1
+                ? WeatherEntry.buildWeatherLocationIdWithDateRange(locationId, startDate, endDate)
+                : WeatherEntry.buildWeatherLocationWithDateRange(locationSetting, startDate, endDate);
+        Uri uri = WeatherEntry.buildPagedUri(rangeUri, WeatherContract.MAX_ROWS_PER_READ, 0);
+        Cursor cursor = resolver.query(uri, projection, null, null, null);
+        if (cursor == null) {
+            return new WeatherArrays(0);
+        }
+        try {
+            WeatherArrays rows = new WeatherArrays(cursor.getCount());
+            ContentValues values = new ContentValues();
+            while (cursor.moveToNext()) {
+                DatabaseUtils.cursorRowToContentValues(cursor, values);
+                rows.add(values);
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -21,6 +21,8 @@ import android.net.Uri;
 import android.provider.BaseColumns;
 import android.text.format.Time;
 
+import java.util.Locale;
+
 /**
  * Defines table and column names for the weather database.
  */
@@ -43,6 +45,56 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_AGGREGATE = "aggregate";
+    public static final String PATH_ROLLUP = "rollup";
+
+    // Provider method (see ContentResolver.call, API 11+) that runs one maintenance pass: days
+    // that left the daily window are rolled up into RollupEntry and old weekly rows are
+    // dropped, then the least recently used locations are evicted until the database fits its
+    // storage budget.  Work is done in small batches; a long backlog is worked off over several
+    // passes.  The call's arg is the location setting in use, which is never evicted.
+    public static final String METHOD_MAINTENANCE = "maintenance";
+    // Optional extra, the time the pass should treat as now.  Defaults to the current time.
+    public static final String EXTRA_NOW = "now";
+    // Optional extras overriding the storage budget: the bytes the database may use, and the
+    // number of weather and rollup rows it may hold.  The sync passes the budget of its
+    // integer resources max_database_kilobytes and max_weather_rows.
+    public static final String EXTRA_MAX_DATABASE_BYTES = "max_database_bytes";
+    public static final String EXTRA_MAX_ROWS = "max_rows";
+    public static final long DEFAULT_MAX_DATABASE_BYTES = 2 * 1024 * 1024;
+    public static final long DEFAULT_MAX_ROWS = 20000;
+    // Result extras, how many daily rows were rolled up, how many weekly rows were dropped,
+    // how many locations were evicted, and how many bytes the database uses afterwards.
+    public static final String EXTRA_ROWS_ROLLED_UP = "rows_rolled_up";
+    public static final String EXTRA_ROWS_PRUNED = "rows_pruned";
+    public static final String EXTRA_LOCATIONS_EVICTED = "locations_evicted";
+    public static final String EXTRA_DATABASE_BYTES = "database_bytes";
+
+    // Formats the display strings of the weather rows that have none in the current locale,
+    // see DisplayEntry.  The maintenance pass does this too, after the days it rolled up are
+    // gone; this is for readers that found rows without strings, such as after a locale change.
+    // The result holds EXTRA_ROWS_FORMATTED, as does the maintenance pass's.
+    public static final String METHOD_FORMAT_DISPLAY = "format_display";
+    public static final String EXTRA_ROWS_FORMATTED = "rows_formatted";
+
+    // Writes weather rows packed by WeatherArrays, at most MAX_ROWS_PER_WRITE per call, which
+    // keeps each call far below the Binder transaction limit.  WeatherArrays.bulkWrite splits
+    // any batch into such calls.  The result holds EXTRA_ROWS_WRITTEN.
+    public static final String METHOD_BULK_WRITE = "bulk_write";
+    public static final int MAX_ROWS_PER_WRITE = 250;
+    public static final String EXTRA_ROWS_WRITTEN = "rows_written";
+
+    // Reads the days of the location setting passed as the call's arg, from EXTRA_START_DATE
+    // to EXTRA_END_DATE inclusive, as a bundle for WeatherArrays.fromBundle.  This is for
+    // background readers that want a few values without a Cursor, see WeatherArrays.read.  At
+    // most MAX_ROWS_PER_READ days are returned, earliest first.  A caller that knows the
+    // LocationEntry._ID passes it in EXTRA_LOCATION_ID instead of the arg.  Without extras,
+    // today's weather of the location setting is read.
+    public static final String METHOD_READ_WEATHER = "read_weather";
+    public static final String EXTRA_START_DATE = "start_date";
+    public static final String EXTRA_END_DATE = "end_date";
+    public static final String EXTRA_LOCATION_ID = "location_id";
+    public static final int MAX_ROWS_PER_READ = 250;
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -54,6 +106,15 @@ public class WeatherContract {
         return time.setJulianDay(julianDay);
     }
 
+    // Stored dates are the start of a local day, which can be up to half a day away from the
+    // start of the UTC day.  Rounding to the nearest UTC day gives every stored date a stable
+    // day number that can be grouped on, both here and in SQL (see AggregateEntry).
+    public static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    public static long getDayNumber(long normalizedDate) {
+        return (normalizedDate + DAY_IN_MILLIS / 2) / DAY_IN_MILLIS;
+    }
+
     /* Inner class that defines the table contents of the location table */
     public static final class LocationEntry implements BaseColumns {
 
@@ -81,9 +142,119 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // When the forecast of this location was last read, in milliseconds since the epoch.
+        // The provider keeps the exact times of reads in memory and writes them in one batch
+        // before each maintenance pass and when it shuts down, so the stored time can lag the
+        // last read until then; locations that have not been read for the longest time are
+        // evicted first when the database is over its budget.
+        public static final String COLUMN_LAST_ACCESS = "last_access";
+
+        // The grid cell of the coordinates, GRID_CELLS_PER_DEGREE cells to a degree counted from
+        // the south pole and from the antimeridian, so both are never negative.  Kept by
+        // triggers from the coordinates and indexed together, which bounds a search around a
+        // point to the rows of the cells near it, see buildNearestUri.
+        public static final String COLUMN_GRID_LAT = "grid_lat";
+        public static final String COLUMN_GRID_LONG = "grid_long";
+        public static final int GRID_CELLS_PER_DEGREE = 10;
+        public static final String INDEX_GRID = "location_grid_idx";
+        public static final String TRIGGER_GRID_INSERT = "location_grid_insert";
+        public static final String TRIGGER_GRID_UPDATE = "location_grid_update";
+
+        // The _id of the location whose weather rows this location reads.  Set for a location
+        // setting that resolved into the shared cell of a location synced before it, such as
+        // "Mountain View, CA" after "94043", so that both share one fetch and one set of rows.
+        // Null for a location with weather rows of its own.  The provider resolves it for every
+        // weather, aggregate and rollup query, so readers never need to.
+        public static final String COLUMN_SHARED_ID = "shared_id";
+        public static final String INDEX_SHARED_ID = "location_shared_idx";
+
+        // When the weather of this location was last fetched, in milliseconds since the epoch.
+        // Only kept for locations with weather rows of their own.
+        public static final String COLUMN_LAST_FETCH = "last_fetch";
+
+        // The nearest locations query, location/nearest?lat=..&long=..&count=..  It returns
+        // the location rows plus COLUMN_DISTANCE, nearest first.
+        public static final String PATH_NEAREST = "nearest";
+        public static final String QUERY_LAT = "lat";
+        public static final String QUERY_LONG = "long";
+        public static final String QUERY_COUNT = "count";
+        // Great circle distance from the queried point, in kilometers.
+        public static final String COLUMN_DISTANCE = "distance";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /**
+         * Builds a Uri for the {@code count} stored locations nearest to a point.
+         */
+        public static Uri buildNearestUri(double lat, double lon, int count) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAREST)
+                    .appendQueryParameter(QUERY_LAT, Double.toString(lat))
+                    .appendQueryParameter(QUERY_LONG, Double.toString(lon))
+                    .appendQueryParameter(QUERY_COUNT, Integer.toString(count)).build();
+        }
+
+        public static double getLatFromUri(Uri uri) {
+            return getDoubleQueryParameter(uri, QUERY_LAT);
+        }
+
+        public static double getLongFromUri(Uri uri) {
+            return getDoubleQueryParameter(uri, QUERY_LONG);
+        }
+
+        public static int getCountFromUri(Uri uri) {
+            String value = uri.getQueryParameter(QUERY_COUNT);
+            if (null != value && value.length() > 0)
+                return Integer.parseInt(value);
+            else
+                return 1;
+        }
+
+        private static double getDoubleQueryParameter(Uri uri, String key) {
+            String value = uri.getQueryParameter(key);
+            if (null == value || value.length() == 0) {
+                throw new IllegalArgumentException("Missing " + key + " in " + uri);
+            }
+            return Double.parseDouble(value);
+        }
+
+        /**
+         * Returns the grid cell of a latitude, as stored in {@link #COLUMN_GRID_LAT}.
+         */
+        public static int getGridLat(double lat) {
+            return (int) ((lat + 90) * GRID_CELLS_PER_DEGREE);
+        }
+
+        /**
+         * Returns the grid cell of a longitude, as stored in {@link #COLUMN_GRID_LONG}.
+         */
+        public static int getGridLong(double lon) {
+            return (int) ((lon + 180) * GRID_CELLS_PER_DEGREE);
+        }
+
+        /**
+         * Returns the selection of the locations with weather rows of their own in a shared
+         * cell, to go with {@link #buildSharedCellArgs}.
+         */
+        public static String buildSharedCellSelection() {
+            return COLUMN_GRID_LAT + " >= ? AND " + COLUMN_GRID_LAT + " < ? AND " +
+                    COLUMN_GRID_LONG + " >= ? AND " + COLUMN_GRID_LONG + " < ? AND " +
+                    COLUMN_SHARED_ID + " IS NULL";
+        }
+
+        /**
+         * Returns the arguments of {@link #buildSharedCellSelection} for the shared cell of a
+         * point.  Shared cells are squares of {@code cellSize} grid cells, snapped to multiples
+         * of it, so every point in one maps onto the same cell.
+         */
+        public static String[] buildSharedCellArgs(double lat, double lon, int cellSize) {
+            int cellLat = getGridLat(lat) / cellSize * cellSize;
+            int cellLong = getGridLong(lon) / cellSize * cellSize;
+            return new String[]{
+                    Integer.toString(cellLat), Integer.toString(cellLat + cellSize),
+                    Integer.toString(cellLong), Integer.toString(cellLong + cellSize)};
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -99,6 +270,9 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        // Index over (location_id, date), used to bound per-location date range scans.
+        public static final String INDEX_LOCATION_DATE = "weather_location_date_idx";
+
         // Column with the foreign key into the location table.
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date, stored as long in milliseconds since the epoch
@@ -108,24 +282,53 @@ public class WeatherContract {
 
         // Short description and long description of the weather, as provided by API.
         // e.g "clear" vs "sky is clear".
+        // The description only depends on the weather id, so the weather table does not store
+        // it.  Writes put it into ConditionEntry and reads join it back in.
         public static final String COLUMN_SHORT_DESC = "short_desc";
 
-        // Min and max temperatures for the day (stored as floats)
+        // Min and max temperatures for the day in degrees Celsius (stored scaled, see
+        // MEASUREMENT_SCALE)
         public static final String COLUMN_MIN_TEMP = "min";
         public static final String COLUMN_MAX_TEMP = "max";
 
-        // Humidity is stored as a float representing percentage
+        // Humidity as a percentage (stored scaled)
         public static final String COLUMN_HUMIDITY = "humidity";
 
-        // Humidity is stored as a float representing percentage
+        // Atmospheric pressure in hPa (stored scaled)
         public static final String COLUMN_PRESSURE = "pressure";
 
-        // Windspeed is stored as a float representing windspeed  mph
+        // Wind speed as the API returns it for metric units (stored scaled)
         public static final String COLUMN_WIND_SPEED = "wind";
 
-        // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
+        // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored scaled.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // The measurements above are stored as integers in hundredths of their unit, which
+        // SQLite packs into 2 or 3 bytes instead of the 8 of a REAL.  The provider scales them
+        // on the way in and reads through VIEW_NAME, which has the same columns as the table
+        // with the measurements back in their units.  Selections passed to update and delete
+        // see the units too, the provider matches them against the view.
+        public static final int MEASUREMENT_SCALE = 100;
+        public static final String[] MEASUREMENT_COLUMNS = {
+                COLUMN_MIN_TEMP,
+                COLUMN_MAX_TEMP,
+                COLUMN_HUMIDITY,
+                COLUMN_PRESSURE,
+                COLUMN_WIND_SPEED,
+                COLUMN_DEGREES
+        };
+        public static final String VIEW_NAME = "weather_values";
+
+        // Query parameters for reading a page of rows, see buildPagedUri.
+        public static final String QUERY_LIMIT = "limit";
+        public static final String QUERY_OFFSET = "offset";
+
+        // Path segment of the Uris that name a location by its LocationEntry._ID instead of its
+        // location setting, weather/id/<location id>/...  They are served by an index lookup on
+        // the id, without comparing the setting string, so use them once the id is known.
+        // A location setting of "id" cannot be queried through the location setting Uris.
+        public static final String PATH_LOCATION_ID = "id";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,14 +352,95 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * Builds a Uri for the days of a location from {@code startDate} to {@code endDate},
+         * both inclusive.
+         */
+        public static Uri buildWeatherLocationWithDateRange(
+                String locationSetting, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(Long.toString(normalizeDate(startDate)))
+                    .appendPath(Long.toString(normalizeDate(endDate))).build();
+        }
+
+        public static Uri buildWeatherLocationId(long locationId) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_LOCATION_ID)
+                    .appendPath(Long.toString(locationId)).build();
+        }
+
+        public static Uri buildWeatherLocationIdWithStartDate(long locationId, long startDate) {
+            return buildWeatherLocationId(locationId).buildUpon()
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizeDate(startDate))).build();
+        }
+
+        public static Uri buildWeatherLocationIdWithDate(long locationId, long date) {
+            return buildWeatherLocationId(locationId).buildUpon()
+                    .appendPath(Long.toString(normalizeDate(date))).build();
+        }
+
+        /**
+         * Builds a Uri for the days of the location with {@code locationId} from
+         * {@code startDate} to {@code endDate}, both inclusive.
+         */
+        public static Uri buildWeatherLocationIdWithDateRange(
+                long locationId, long startDate, long endDate) {
+            return buildWeatherLocationId(locationId).buildUpon()
+                    .appendPath(Long.toString(normalizeDate(startDate)))
+                    .appendPath(Long.toString(normalizeDate(endDate))).build();
+        }
+
+        /**
+         * Limits a location or date range Uri to one page of rows.  Offsets get slower the
+         * deeper the page; for long histories, page by key instead: ask for the next page with
+         * a start date just after the last date of the previous one.
+         */
+        public static Uri buildPagedUri(Uri uri, int limit, int offset) {
+            return uri.buildUpon()
+                    .appendQueryParameter(QUERY_LIMIT, Integer.toString(limit))
+                    .appendQueryParameter(QUERY_OFFSET, Integer.toString(offset)).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
 
-        public static long getDateFromUri(Uri uri) {
+        public static boolean isLocationIdUri(Uri uri) {
+            return PATH_LOCATION_ID.equals(uri.getPathSegments().get(1));
+        }
+
+        public static long getLocationIdFromUri(Uri uri) {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        // Works for both forms of Uri; the id form has one more segment before the dates.
+        public static long getDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(getFirstDateSegment(uri)));
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(getFirstDateSegment(uri) + 1));
+        }
+
+        private static int getFirstDateSegment(Uri uri) {
+            return isLocationIdUri(uri) ? 3 : 2;
+        }
+
+        public static int getLimitFromUri(Uri uri) {
+            return getIntQueryParameter(uri, QUERY_LIMIT);
+        }
+
+        public static int getOffsetFromUri(Uri uri) {
+            return getIntQueryParameter(uri, QUERY_OFFSET);
+        }
+
+        private static int getIntQueryParameter(Uri uri, String key) {
+            String value = uri.getQueryParameter(key);
+            if (null != value && value.length() > 0)
+                return Integer.parseInt(value);
+            else
+                return 0;
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
@@ -165,4 +449,237 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        Inner class that defines the condition dictionary: the description the API last gave
+        for each weather id.  There are only a few dozen ids, so every day of every location
+        shares these rows instead of repeating the text.  It is maintained by the provider
+        from the descriptions written with weather rows.
+     */
+    public static final class ConditionEntry {
+
+        public static final String TABLE_NAME = "weather_condition";
+
+        // The weather id, as stored in WeatherEntry.COLUMN_WEATHER_ID.  Named differently so
+        // that joining the dictionary does not make weather_id ambiguous.
+        public static final String COLUMN_CONDITION_ID = "condition_id";
+
+        public static final String COLUMN_SHORT_DESC = WeatherEntry.COLUMN_SHORT_DESC;
+    }
+
+    /*
+        Inner class that defines the display table: the strings each weather row is shown with,
+        in both metric and imperial units, formatted once after a sync instead of on every bind
+        and every detail load.  Queries of the weather Uris join them in, so a projection can
+        ask for these columns next to the weather columns; they are null for rows that have not
+        been formatted yet.  Strings are only valid for the locale in COLUMN_LOCALE, see
+        getCurrentLocale.  Triggers drop a row's strings when the row changes or goes away.
+     */
+    public static final class DisplayEntry {
+
+        public static final String TABLE_NAME = "weather_display";
+
+        // The _id of the weather row, named differently so that joining does not make _id
+        // ambiguous.
+        public static final String COLUMN_WEATHER_KEY = "weather_key";
+
+        // The locale the strings were formatted in.
+        public static final String COLUMN_LOCALE = "display_locale";
+
+        public static final String COLUMN_HIGH_METRIC = "high_metric";
+        public static final String COLUMN_LOW_METRIC = "low_metric";
+        public static final String COLUMN_HIGH_IMPERIAL = "high_imperial";
+        public static final String COLUMN_LOW_IMPERIAL = "low_imperial";
+        public static final String COLUMN_WIND_METRIC = "wind_metric";
+        public static final String COLUMN_WIND_IMPERIAL = "wind_imperial";
+        // Humidity and pressure are shown in the same units either way.
+        public static final String COLUMN_HUMIDITY = "humidity_text";
+        public static final String COLUMN_PRESSURE = "pressure_text";
+
+        public static final String TRIGGER_WEATHER_UPDATE = "display_weather_update";
+        public static final String TRIGGER_WEATHER_DELETE = "display_weather_delete";
+
+        /**
+         * Returns the locale display strings formatted now are stored under.
+         */
+        public static String getCurrentLocale() {
+            return Locale.getDefault().toString();
+        }
+    }
+
+    /*
+        Inner class that defines the forecast table: every weather row with the columns of its
+        location copied in, keyed by (location_setting, date).  The weather/* queries look up
+        the location they name once and read its days from here with a range scan of the
+        (location_id, date) index, which also serves locations sharing the weather of another
+        one, see LocationEntry.COLUMN_SHARED_ID.  Triggers on the weather and location
+        tables keep it in step within the same transaction, whichever code path writes them.
+        The columns are named as in WeatherEntry and LocationEntry.
+     */
+    public static final class ForecastEntry {
+
+        public static final String TABLE_NAME = "forecast";
+
+        // The forecast with the measurements in their units, see WeatherEntry.VIEW_NAME.
+        public static final String VIEW_NAME = "forecast_values";
+
+        // Index over (location_id, date), for the weather/id/# queries.
+        public static final String INDEX_LOCATION_ID_DATE = "forecast_location_id_date_idx";
+
+        public static final String TRIGGER_WEATHER_INSERT = "forecast_weather_insert";
+        public static final String TRIGGER_WEATHER_UPDATE = "forecast_weather_update";
+        public static final String TRIGGER_WEATHER_DELETE = "forecast_weather_delete";
+        public static final String TRIGGER_LOCATION_INSERT = "forecast_location_insert";
+        public static final String TRIGGER_LOCATION_UPDATE = "forecast_location_update";
+        public static final String TRIGGER_LOCATION_DELETE = "forecast_location_delete";
+    }
+
+    /*
+        Inner class that defines the aggregate rows the provider computes from the weather table.
+        These are not stored; every query groups the days of one location inside SQLite, so
+        only one row per bucket crosses the process boundary.
+     */
+    public static final class AggregateEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_AGGREGATE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATE;
+
+        // Query parameter choosing the bucket size.  Either one of the named buckets or a
+        // number of days.  Weeks start on Monday.
+        public static final String QUERY_BUCKET = "bucket";
+        public static final String BUCKET_DAY = "day";
+        public static final String BUCKET_WEEK = "week";
+        public static final String BUCKET_MONTH = "month";
+
+        // First and last stored date that fell into the bucket, and how many days it holds.
+        public static final String COLUMN_BUCKET_START = "bucket_start";
+        public static final String COLUMN_BUCKET_END = "bucket_end";
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest daily minimum, highest daily maximum, and the mean of both.
+        public static final String COLUMN_MIN_TEMP = "min_temp";
+        public static final String COLUMN_MAX_TEMP = "max_temp";
+        public static final String COLUMN_AVG_MIN_TEMP = "avg_min_temp";
+        public static final String COLUMN_AVG_MAX_TEMP = "avg_max_temp";
+
+        public static final String COLUMN_MIN_HUMIDITY = "min_humidity";
+        public static final String COLUMN_MAX_HUMIDITY = "max_humidity";
+        public static final String COLUMN_AVG_HUMIDITY = "avg_humidity";
+
+        public static final String COLUMN_MIN_PRESSURE = "min_pressure";
+        public static final String COLUMN_MAX_PRESSURE = "max_pressure";
+        public static final String COLUMN_AVG_PRESSURE = "avg_pressure";
+
+        public static final String COLUMN_MIN_WIND_SPEED = "min_wind";
+        public static final String COLUMN_MAX_WIND_SPEED = "max_wind";
+        public static final String COLUMN_AVG_WIND_SPEED = "avg_wind";
+
+        /**
+         * Builds a Uri for the aggregates of a location between two dates, both inclusive,
+         * grouped into {@code bucket} sized buckets.
+         */
+        public static Uri buildAggregateUri(String locationSetting, long startDate, long endDate,
+                                            String bucket) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(Long.toString(normalizeDate(startDate)))
+                    .appendPath(Long.toString(normalizeDate(endDate)))
+                    .appendQueryParameter(QUERY_BUCKET, bucket).build();
+        }
+
+        public static Uri buildAggregateUri(String locationSetting, long startDate, long endDate,
+                                            int bucketDays) {
+            return buildAggregateUri(locationSetting, startDate, endDate,
+                    Integer.toString(bucketDays));
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(2));
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(3));
+        }
+
+        public static String getBucketFromUri(Uri uri) {
+            String bucket = uri.getQueryParameter(QUERY_BUCKET);
+            if (null != bucket && bucket.length() > 0)
+                return bucket;
+            else
+                return BUCKET_WEEK;
+        }
+    }
+
+    /*
+        Inner class that defines the weekly and monthly summary tables.  Days older than the
+        daily window are folded into one row per week and one row per month of their location,
+        and the daily rows are deleted.  Weekly rows are kept for a year, monthly rows forever,
+        so the history grows by twelve rows a year per location instead of one per day.
+
+        Queries return the same columns as AggregateEntry.  The tables store sums rather than
+        means, so that folding in another day never needs the days already folded in.
+     */
+    public static final class RollupEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ROLLUP).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ROLLUP;
+
+        public static final String TABLE_WEEKLY = "weather_weekly";
+        public static final String TABLE_MONTHLY = "weather_monthly";
+
+        // Path segments choosing the table in query Uris.
+        public static final String PERIOD_WEEKLY = "weekly";
+        public static final String PERIOD_MONTHLY = "monthly";
+
+        // How many days before today are kept as daily rows, and how long weekly rows are kept.
+        public static final int DAILY_RETENTION_DAYS = 30;
+        public static final int WEEKLY_RETENTION_DAYS = 366;
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+
+        // The week (numbered like the week buckets of AggregateEntry) or the month, as yyyyMM.
+        public static final String COLUMN_BUCKET = "bucket";
+
+        public static final String COLUMN_BUCKET_START = AggregateEntry.COLUMN_BUCKET_START;
+        public static final String COLUMN_BUCKET_END = AggregateEntry.COLUMN_BUCKET_END;
+        public static final String COLUMN_DAY_COUNT = AggregateEntry.COLUMN_DAY_COUNT;
+
+        public static final String COLUMN_MIN_TEMP = AggregateEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = AggregateEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_MIN_HUMIDITY = AggregateEntry.COLUMN_MIN_HUMIDITY;
+        public static final String COLUMN_MAX_HUMIDITY = AggregateEntry.COLUMN_MAX_HUMIDITY;
+        public static final String COLUMN_MIN_PRESSURE = AggregateEntry.COLUMN_MIN_PRESSURE;
+        public static final String COLUMN_MAX_PRESSURE = AggregateEntry.COLUMN_MAX_PRESSURE;
+        public static final String COLUMN_MIN_WIND_SPEED = AggregateEntry.COLUMN_MIN_WIND_SPEED;
+        public static final String COLUMN_MAX_WIND_SPEED = AggregateEntry.COLUMN_MAX_WIND_SPEED;
+
+        // Stored sums; queries turn them into the AggregateEntry means.
+        public static final String COLUMN_SUM_MIN_TEMP = "sum_min_temp";
+        public static final String COLUMN_SUM_MAX_TEMP = "sum_max_temp";
+        public static final String COLUMN_SUM_HUMIDITY = "sum_humidity";
+        public static final String COLUMN_SUM_PRESSURE = "sum_pressure";
+        public static final String COLUMN_SUM_WIND_SPEED = "sum_wind";
+
+        public static Uri buildRollupUri(String period, String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(period).appendPath(locationSetting).build();
+        }
+
+        public static String getPeriodFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+    }
 }
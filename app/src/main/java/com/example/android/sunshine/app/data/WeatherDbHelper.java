@@ -15,11 +15,18 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.DisplayEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ForecastEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -27,11 +34,20 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
+    // If you change the database schema, you must increment the database version,
+    // and add the step that upgrades the previous version to WeatherDbMigrations.
+    static final int DATABASE_VERSION = 12;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // PRAGMA auto_vacuum value, see onOpen
+    static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Set by onCreate, for onOpen to finish setting up the new database.
+    private boolean mCreated;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -45,7 +61,14 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_LAST_ACCESS + " INTEGER NOT NULL DEFAULT 0, " +
+                // filled in by the grid triggers, see buildCreateLocationGridSql
+                LocationEntry.COLUMN_GRID_LAT + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_GRID_LONG + " INTEGER NOT NULL DEFAULT 0, " +
+                // the location whose weather this one reads, see LocationEntry.COLUMN_SHARED_ID
+                LocationEntry.COLUMN_SHARED_ID + " INTEGER, " +
+                LocationEntry.COLUMN_LAST_FETCH + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -59,16 +82,17 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 // the ID of the location entry associated with this weather data
                 WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                // the description is looked up in the condition table by this id
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
 
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                // measurements in hundredths, see WeatherEntry.MEASUREMENT_SCALE
+                WeatherEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
 
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " INTEGER NOT NULL, " +
 
                 // Set up the location column as a foreign key to location table.
                 " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
@@ -79,20 +103,353 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        // One row per weather id.  The id is the INTEGER PRIMARY KEY, so joining a weather row
+        // to its description is a rowid lookup.
+        final String SQL_CREATE_CONDITION_TABLE = "CREATE TABLE " + ConditionEntry.TABLE_NAME + " (" +
+                ConditionEntry.COLUMN_CONDITION_ID + " INTEGER PRIMARY KEY," +
+                ConditionEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL " +
+                " );";
+
+        // The UNIQUE constraint above indexes (date, location_id), which cannot bound a scan of
+        // one location's days.  Forecast, range and paging queries all filter on the location
+        // first and then on a date range, so they need the columns the other way around.
+        final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+                WeatherEntry.INDEX_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_CONDITION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(buildCreateWeatherViewSql());
+        sqLiteDatabase.execSQL(buildCreateRollupTableSql(RollupEntry.TABLE_WEEKLY));
+        sqLiteDatabase.execSQL(buildCreateRollupTableSql(RollupEntry.TABLE_MONTHLY));
+        for (String sql : buildCreateForecastSql()) {
+            sqLiteDatabase.execSQL(sql);
+        }
+        sqLiteDatabase.execSQL(buildCreateForecastLocationIdIndexSql());
+        for (String sql : buildCreateLocationGridSql()) {
+            sqLiteDatabase.execSQL(sql);
+        }
+        sqLiteDatabase.execSQL(buildCreateLocationSharedIdIndexSql());
+        for (String sql : buildCreateDisplaySql()) {
+            sqLiteDatabase.execSQL(sql);
+        }
+        mCreated = true;
+    }
+
+    /*
+        Switches a new database to incremental auto-vacuum, so that WeatherStorageManager can
+        hand the pages of evicted rows back to the filesystem a few at a time.  The mode can
+        only be changed by rebuilding the file with VACUUM, which can't run in the transaction
+        of onCreate, and which is only cheap while there is nothing in the file yet.  Databases
+        created before keep their mode; their free pages are reused by later writes.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (mCreated && !db.isReadOnly()) {
+            mCreated = false;
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+    }
+
+    /*
+        The display table and the triggers that drop a weather row's strings when the row
+        changes or goes away, see DisplayEntry.  The strings are formatted again by the next
+        WeatherDisplayFormatter pass.  A weather row replaced through its UNIQUE constraint is
+        deleted without firing the delete trigger; its strings are left behind under the old
+        _id, which the pass deletes as orphans.
+     */
+    static String[] buildCreateDisplaySql() {
+        String deleteOldWeather = "DELETE FROM " + DisplayEntry.TABLE_NAME +
+                " WHERE " + DisplayEntry.COLUMN_WEATHER_KEY + " = OLD." + WeatherEntry._ID + ";";
+        return new String[]{
+                "CREATE TABLE " + DisplayEntry.TABLE_NAME + " (" +
+                        // the _id of the weather row
+                        DisplayEntry.COLUMN_WEATHER_KEY + " INTEGER PRIMARY KEY," +
+                        DisplayEntry.COLUMN_LOCALE + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_HIGH_METRIC + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_LOW_METRIC + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_HIGH_IMPERIAL + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_LOW_IMPERIAL + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_WIND_METRIC + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_WIND_IMPERIAL + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_HUMIDITY + " TEXT NOT NULL, " +
+                        DisplayEntry.COLUMN_PRESSURE + " TEXT NOT NULL " +
+                        " );",
+
+                "CREATE TRIGGER " + DisplayEntry.TRIGGER_WEATHER_UPDATE +
+                        " AFTER UPDATE ON " + WeatherEntry.TABLE_NAME +
+                        " BEGIN " + deleteOldWeather + " END",
+
+                "CREATE TRIGGER " + DisplayEntry.TRIGGER_WEATHER_DELETE +
+                        " AFTER DELETE ON " + WeatherEntry.TABLE_NAME +
+                        " BEGIN " + deleteOldWeather + " END"
+        };
+    }
+
+    // Evicting a location evicts the locations sharing its weather, found through this index.
+    static String buildCreateLocationSharedIdIndexSql() {
+        return "CREATE INDEX IF NOT EXISTS " + LocationEntry.INDEX_SHARED_ID + " ON " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_SHARED_ID + ");";
+    }
+
+    //IFNULL(location.shared_id, location._id)
+    // The location whose weather rows a location reads, given the prefix of its columns.
+    static String buildSharedIdSql(String prefix) {
+        return "IFNULL(" + prefix + LocationEntry.COLUMN_SHARED_ID + ", " +
+                prefix + LocationEntry._ID + ")";
+    }
+
+    // Queries that name the location by its id read the forecast by (location_id, date), which
+    // the (location_setting, date) key of the forecast table cannot bound.
+    static String buildCreateForecastLocationIdIndexSql() {
+        return "CREATE INDEX IF NOT EXISTS " + ForecastEntry.INDEX_LOCATION_ID_DATE + " ON " +
+                ForecastEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ");";
+    }
+
+    // The weather table as readers see it, with the measurements back in their units.  SQLite
+    // flattens a view this simple into the query using it, so the location/date index still
+    // bounds scans through it.
+    static String buildCreateWeatherViewSql() {
+        StringBuilder sql = new StringBuilder("CREATE VIEW " + WeatherEntry.VIEW_NAME + " AS SELECT " +
+                WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID);
+        for (String column : WeatherEntry.MEASUREMENT_COLUMNS) {
+            sql.append(", ").append(column).append(" / ")
+                    .append(WeatherEntry.MEASUREMENT_SCALE).append(".0 AS ").append(column);
+        }
+        return sql.append(" FROM ").append(WeatherEntry.TABLE_NAME).toString();
+    }
+
+    /**
+     * Returns a copy of weather values with the measurements scaled to how they are stored.
+     * The caller's values keep their units.
+     */
+    static ContentValues scaleMeasurements(ContentValues values) {
+        ContentValues scaled = new ContentValues(values);
+        for (String column : WeatherEntry.MEASUREMENT_COLUMNS) {
+            Double value = values.getAsDouble(column);
+            if (value != null) {
+                scaled.put(column, Math.round(value * WeatherEntry.MEASUREMENT_SCALE));
+            }
+        }
+        return scaled;
+    }
+
+    /*
+        The forecast table, its view and the triggers that keep it in step with the weather and
+        location tables, see ForecastEntry.  Triggers go with their table, so a migration that
+        rebuilds the weather or location table has to create them again.
+
+        A weather row replaced through its UNIQUE constraint is deleted without firing the
+        delete trigger, but the insert trigger's INSERT OR REPLACE then replaces its forecast
+        row through the (location_setting, date) key.  Location updates only touch the forecast
+        when a copied column changes, not for every LocationEntry.COLUMN_LAST_ACCESS write.
+     */
+    static String[] buildCreateForecastSql() {
+        String locationColumns = LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_CITY_NAME + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG;
+        String newLocationColumns = "NEW." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                "NEW." + LocationEntry.COLUMN_CITY_NAME + ", " +
+                "NEW." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                "NEW." + LocationEntry.COLUMN_COORD_LONG;
+
+        // the columns of the day itself, as named in the weather table and in a weather trigger
+        StringBuilder dayColumns = new StringBuilder(WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID);
+        StringBuilder newDayColumns = new StringBuilder("NEW." + WeatherEntry.COLUMN_DATE + ", " +
+                "NEW." + WeatherEntry.COLUMN_WEATHER_ID);
+        StringBuilder dayViewColumns = new StringBuilder(dayColumns);
+        StringBuilder dayDefinitions = new StringBuilder(
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, ");
+        for (String column : WeatherEntry.MEASUREMENT_COLUMNS) {
+            dayColumns.append(", ").append(column);
+            newDayColumns.append(", NEW.").append(column);
+            dayViewColumns.append(", ").append(column).append(" / ")
+                    .append(WeatherEntry.MEASUREMENT_SCALE).append(".0 AS ").append(column);
+            dayDefinitions.append(column).append(" INTEGER NOT NULL, ");
+        }
+
+        String createTable = "CREATE TABLE " + ForecastEntry.TABLE_NAME + " (" +
+                // the _id of the weather row
+                WeatherEntry._ID + " INTEGER PRIMARY KEY," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                dayDefinitions +
+                // the forecast queries filter on the location setting, then on a date range
+                " UNIQUE (" + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        String createView = "CREATE VIEW " + ForecastEntry.VIEW_NAME + " AS SELECT " +
+                WeatherEntry._ID + ", " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                locationColumns + ", " + dayViewColumns +
+                " FROM " + ForecastEntry.TABLE_NAME;
+
+        String insertForecast = "INSERT OR REPLACE INTO " + ForecastEntry.TABLE_NAME + " (" +
+                WeatherEntry._ID + ", " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                locationColumns + ", " + dayColumns + ") ";
+
+        //INSERT OR REPLACE INTO forecast (...) SELECT NEW._id, NEW.location_id, location_setting,
+        //  ..., NEW.date, ... FROM location WHERE _id = NEW.location_id;
+        String insertNewWeather = insertForecast + "SELECT " +
+                "NEW." + WeatherEntry._ID + ", NEW." + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                locationColumns + ", " + newDayColumns +
+                " FROM " + LocationEntry.TABLE_NAME +
+                " WHERE " + LocationEntry._ID + " = NEW." + WeatherEntry.COLUMN_LOC_KEY + ";";
+
+        String deleteOldWeather = "DELETE FROM " + ForecastEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry._ID + " = OLD." + WeatherEntry._ID + ";";
+
+        return new String[]{
+                createTable,
+                createView,
+
+                "CREATE TRIGGER " + ForecastEntry.TRIGGER_WEATHER_INSERT +
+                        " AFTER INSERT ON " + WeatherEntry.TABLE_NAME +
+                        " BEGIN " + insertNewWeather + " END",
+
+                "CREATE TRIGGER " + ForecastEntry.TRIGGER_WEATHER_UPDATE +
+                        " AFTER UPDATE ON " + WeatherEntry.TABLE_NAME +
+                        " BEGIN " + deleteOldWeather + " " + insertNewWeather + " END",
+
+                "CREATE TRIGGER " + ForecastEntry.TRIGGER_WEATHER_DELETE +
+                        " AFTER DELETE ON " + WeatherEntry.TABLE_NAME +
+                        " BEGIN " + deleteOldWeather + " END",
+
+                // picks up weather rows written before their location
+                "CREATE TRIGGER " + ForecastEntry.TRIGGER_LOCATION_INSERT +
+                        " AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+                        " BEGIN " + insertForecast + "SELECT " +
+                        WeatherEntry._ID + ", " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                        newLocationColumns + ", " + dayColumns +
+                        " FROM " + WeatherEntry.TABLE_NAME +
+                        " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = NEW." + LocationEntry._ID +
+                        "; END",
+
+                "CREATE TRIGGER " + ForecastEntry.TRIGGER_LOCATION_UPDATE +
+                        " AFTER UPDATE OF " + locationColumns + " ON " + LocationEntry.TABLE_NAME +
+                        " BEGIN UPDATE " + ForecastEntry.TABLE_NAME + " SET " +
+                        LocationEntry.COLUMN_LOCATION_SETTING + " = NEW." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                        LocationEntry.COLUMN_CITY_NAME + " = NEW." + LocationEntry.COLUMN_CITY_NAME + ", " +
+                        LocationEntry.COLUMN_COORD_LAT + " = NEW." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                        LocationEntry.COLUMN_COORD_LONG + " = NEW." + LocationEntry.COLUMN_COORD_LONG +
+                        " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = OLD." + LocationEntry._ID +
+                        "; END",
+
+                "CREATE TRIGGER " + ForecastEntry.TRIGGER_LOCATION_DELETE +
+                        " AFTER DELETE ON " + LocationEntry.TABLE_NAME +
+                        " BEGIN DELETE FROM " + ForecastEntry.TABLE_NAME +
+                        " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = OLD." + LocationEntry._ID +
+                        "; END"
+        };
+    }
+
+    /*
+        The index over the grid cells of the locations and the triggers that compute the cells
+        from the coordinates, see LocationEntry.COLUMN_GRID_LAT.  The cells are computed like
+        LocationEntry.getGridLat and getGridLong do, CAST truncating toward zero as the Java
+        cast does, so that a search computes the same cells for a point as were stored for it.
+     */
+    static String[] buildCreateLocationGridSql() {
+        String setGrid = "UPDATE " + LocationEntry.TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_GRID_LAT + " = " +
+                buildGridSql("NEW." + LocationEntry.COLUMN_COORD_LAT, 90) + ", " +
+                LocationEntry.COLUMN_GRID_LONG + " = " +
+                buildGridSql("NEW." + LocationEntry.COLUMN_COORD_LONG, 180) +
+                " WHERE " + LocationEntry._ID + " = NEW." + LocationEntry._ID + ";";
+        return new String[]{
+                // with the coordinates, so that a search reads nothing but the index
+                "CREATE INDEX " + LocationEntry.INDEX_GRID + " ON " + LocationEntry.TABLE_NAME +
+                        " (" + LocationEntry.COLUMN_GRID_LAT + ", " +
+                        LocationEntry.COLUMN_GRID_LONG + ", " +
+                        LocationEntry.COLUMN_COORD_LAT + ", " +
+                        LocationEntry.COLUMN_COORD_LONG + ");",
+
+                "CREATE TRIGGER " + LocationEntry.TRIGGER_GRID_INSERT +
+                        " AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+                        " BEGIN " + setGrid + " END",
+
+                // only the coordinates, so that setting the cells does not run it again
+                "CREATE TRIGGER " + LocationEntry.TRIGGER_GRID_UPDATE +
+                        " AFTER UPDATE OF " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                        LocationEntry.COLUMN_COORD_LONG + " ON " + LocationEntry.TABLE_NAME +
+                        " BEGIN " + setGrid + " END"
+        };
+    }
+
+    //CAST((coordinate + offset) * 10 AS INTEGER)
+    static String buildGridSql(String coordinate, int offset) {
+        return "CAST((" + coordinate + " + " + offset + ") * " +
+                LocationEntry.GRID_CELLS_PER_DEGREE + " AS INTEGER)";
+    }
+
+    // The weekly and monthly summary tables share one layout, see RollupEntry.
+    static String buildCreateRollupTableSql(String tableName) {
+        return "CREATE TABLE " + tableName + " (" +
+                RollupEntry._ID + " INTEGER PRIMARY KEY," +
+                RollupEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                RollupEntry.COLUMN_BUCKET + " INTEGER NOT NULL, " +
+                RollupEntry.COLUMN_BUCKET_START + " INTEGER NOT NULL, " +
+                RollupEntry.COLUMN_BUCKET_END + " INTEGER NOT NULL, " +
+                RollupEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+
+                RollupEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_SUM_MIN_TEMP + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_SUM_MAX_TEMP + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_MIN_HUMIDITY + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_MAX_HUMIDITY + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_SUM_HUMIDITY + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_MIN_PRESSURE + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_MAX_PRESSURE + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_SUM_PRESSURE + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_MIN_WIND_SPEED + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_MAX_WIND_SPEED + " REAL NOT NULL, " +
+                RollupEntry.COLUMN_SUM_WIND_SPEED + " REAL NOT NULL, " +
+
+                " FOREIGN KEY (" + RollupEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // one row per bucket and location; rolling up finds it through this index
+                " UNIQUE (" + RollupEntry.COLUMN_LOC_KEY + ", " +
+                RollupEntry.COLUMN_BUCKET + "));";
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (!WeatherDbMigrations.canMigrate(oldVersion)) {
+            // Nothing to migrate from, so fall back to discarding this cache and starting over.
+            sqLiteDatabase.execSQL("DROP VIEW IF EXISTS " + WeatherEntry.VIEW_NAME);
+            sqLiteDatabase.execSQL("DROP VIEW IF EXISTS " + ForecastEntry.VIEW_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ForecastEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + RollupEntry.TABLE_WEEKLY);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + RollupEntry.TABLE_MONTHLY);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ConditionEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + DisplayEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        // Upgrade in place, so the forecast is still there on the first launch after an update.
+        long startTime = SystemClock.elapsedRealtime();
+        WeatherDbMigrations.migrate(sqLiteDatabase, oldVersion, newVersion);
+        Log.d(LOG_TAG, "Migrated database from version " + oldVersion + " to " + newVersion +
+                " in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
     }
 }
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ConditionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.DisplayEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ForecastEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * In-place schema migrations for the weather database.
+ * <p>
+ * Each step upgrades the schema by exactly one version and keeps the rows, so that an app
+ * update never shows an empty forecast while the first sync runs.  When the schema changes,
+ * bump {@link WeatherDbHelper#DATABASE_VERSION}, make {@link WeatherDbHelper#onCreate} build the
+ * new schema and add the step that gets an existing database from the previous version there.
+ */
+final class WeatherDbMigrations {
+
+    // Databases older than this predate the migrations and are simply rebuilt.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
+
+    private WeatherDbMigrations() {
+    }
+
+    static boolean canMigrate(int fromVersion) {
+        return fromVersion >= OLDEST_MIGRATABLE_VERSION;
+    }
+
+    /**
+     * Runs every step from {@code fromVersion} up to {@code toVersion}.  The caller owns the
+     * transaction; SQLiteOpenHelper already wraps onUpgrade in one.
+     */
+    static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion; version < toVersion; version++) {
+            switch (version) {
+                case 2:
+                    upgradeFrom2To3(db);
+                    break;
+                case 3:
+                    upgradeFrom3To4(db);
+                    break;
+                case 4:
+                    upgradeFrom4To5(db);
+                    break;
+                case 5:
+                    upgradeFrom5To6(db);
+                    break;
+                case 6:
+                    upgradeFrom6To7(db);
+                    break;
+                case 7:
+                    upgradeFrom7To8(db);
+                    break;
+                case 8:
+                    upgradeFrom8To9(db);
+                    break;
+                case 9:
+                    upgradeFrom9To10(db);
+                    break;
+                case 10:
+                    upgradeFrom10To11(db);
+                    break;
+                case 11:
+                    upgradeFrom11To12(db);
+                    break;
+                default:
+                    throw new IllegalStateException(
+                            "No migration from database version " + version);
+            }
+        }
+    }
+
+    // 3: index for per-location date range scans
+    private static void upgradeFrom2To3(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + WeatherEntry.INDEX_LOCATION_DATE + " ON " +
+                WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ");");
+    }
+
+    // 4: weekly and monthly rollup tables, empty until the first retention pass.  Both have
+    // the version 4 layout spelled out, like the steps that rebuild a table.
+    private static void upgradeFrom3To4(SQLiteDatabase db) {
+        String[] tables = {RollupEntry.TABLE_WEEKLY, RollupEntry.TABLE_MONTHLY};
+        for (String table : tables) {
+            db.execSQL("CREATE TABLE " + table + " (" +
+                    RollupEntry._ID + " INTEGER PRIMARY KEY," +
+                    RollupEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                    RollupEntry.COLUMN_BUCKET + " INTEGER NOT NULL, " +
+                    RollupEntry.COLUMN_BUCKET_START + " INTEGER NOT NULL, " +
+                    RollupEntry.COLUMN_BUCKET_END + " INTEGER NOT NULL, " +
+                    RollupEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+                    RollupEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_SUM_MIN_TEMP + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_SUM_MAX_TEMP + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_MIN_HUMIDITY + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_MAX_HUMIDITY + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_SUM_HUMIDITY + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_MIN_PRESSURE + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_MAX_PRESSURE + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_SUM_PRESSURE + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_MIN_WIND_SPEED + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_MAX_WIND_SPEED + " REAL NOT NULL, " +
+                    RollupEntry.COLUMN_SUM_WIND_SPEED + " REAL NOT NULL, " +
+                    " FOREIGN KEY (" + RollupEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                    LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                    " UNIQUE (" + RollupEntry.COLUMN_LOC_KEY + ", " +
+                    RollupEntry.COLUMN_BUCKET + "));");
+        }
+    }
+
+    // 5: last access time of each location, for evicting the least recently used ones.
+    // Existing locations start out as never read; the location in use is never evicted.
+    private static void upgradeFrom4To5(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + WeatherContract.LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                WeatherContract.LocationEntry.COLUMN_LAST_ACCESS + " INTEGER NOT NULL DEFAULT 0");
+    }
+
+    // 6: descriptions move into the condition dictionary.  SQLite cannot drop a column, so
+    // the weather table is rebuilt without short_desc.  The layout is spelled out here rather
+    // than taken from WeatherDbHelper, since later versions may change it again.
+    private static void upgradeFrom5To6(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ConditionEntry.TABLE_NAME + " (" +
+                ConditionEntry.COLUMN_CONDITION_ID + " INTEGER PRIMARY KEY," +
+                ConditionEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL " +
+                " );");
+        // one description per id; the most recent day has the latest wording from the API
+        db.execSQL("INSERT OR REPLACE INTO " + ConditionEntry.TABLE_NAME + " (" +
+                ConditionEntry.COLUMN_CONDITION_ID + ", " + ConditionEntry.COLUMN_SHORT_DESC +
+                ") SELECT " + WeatherEntry.COLUMN_WEATHER_ID + ", " + WeatherEntry.COLUMN_SHORT_DESC +
+                " FROM " + WeatherEntry.TABLE_NAME + " ORDER BY " + WeatherEntry.COLUMN_DATE + " ASC");
+
+        String newTable = WeatherEntry.TABLE_NAME + "_v6";
+        String columns = WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_HUMIDITY + ", " +
+                WeatherEntry.COLUMN_PRESSURE + ", " +
+                WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                WeatherEntry.COLUMN_DEGREES;
+        db.execSQL("CREATE TABLE " + newTable + " (" +
+                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);");
+        db.execSQL("INSERT INTO " + newTable + " (" + columns + ") SELECT " + columns +
+                " FROM " + WeatherEntry.TABLE_NAME);
+        // dropping the table drops its index too
+        db.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + WeatherEntry.TABLE_NAME);
+        db.execSQL("CREATE INDEX " + WeatherEntry.INDEX_LOCATION_DATE + " ON " +
+                WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ");");
+    }
+
+    // 7: measurements stored as integer hundredths, read through the weather_values view.
+    // Rebuilds the weather table like the step to 6, with the version 7 layout spelled out.
+    private static void upgradeFrom6To7(SQLiteDatabase db) {
+        String newTable = WeatherEntry.TABLE_NAME + "_v7";
+        String keyColumns = WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID;
+        String[] measurements = {
+                WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_HUMIDITY,
+                WeatherEntry.COLUMN_PRESSURE,
+                WeatherEntry.COLUMN_WIND_SPEED,
+                WeatherEntry.COLUMN_DEGREES
+        };
+
+        StringBuilder createTable = new StringBuilder("CREATE TABLE " + newTable + " (" +
+                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,");
+        StringBuilder columns = new StringBuilder(keyColumns);
+        StringBuilder scaledValues = new StringBuilder(keyColumns);
+        StringBuilder viewColumns = new StringBuilder(keyColumns);
+        for (String column : measurements) {
+            createTable.append(column).append(" INTEGER NOT NULL, ");
+            columns.append(", ").append(column);
+            scaledValues.append(", CAST(ROUND(").append(column).append(" * 100) AS INTEGER)");
+            viewColumns.append(", ").append(column).append(" / 100.0 AS ").append(column);
+        }
+        createTable.append(" FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);");
+
+        db.execSQL(createTable.toString());
+        db.execSQL("INSERT INTO " + newTable + " (" + columns + ") SELECT " + scaledValues +
+                " FROM " + WeatherEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + WeatherEntry.TABLE_NAME);
+        db.execSQL("CREATE INDEX " + WeatherEntry.INDEX_LOCATION_DATE + " ON " +
+                WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ");");
+        db.execSQL("CREATE VIEW " + WeatherEntry.VIEW_NAME + " AS SELECT " + viewColumns +
+                " FROM " + WeatherEntry.TABLE_NAME);
+    }
+
+    // 8: the forecast table with its view and triggers, filled from the days already stored.
+    // The version 8 layout is spelled out like the weather table of the steps to 6 and 7.
+    private static void upgradeFrom7To8(SQLiteDatabase db) {
+        String[] measurements = {
+                WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_HUMIDITY,
+                WeatherEntry.COLUMN_PRESSURE,
+                WeatherEntry.COLUMN_WIND_SPEED,
+                WeatherEntry.COLUMN_DEGREES
+        };
+        String locationColumns = LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_CITY_NAME + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG;
+        String newLocationColumns = "NEW." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                "NEW." + LocationEntry.COLUMN_CITY_NAME + ", " +
+                "NEW." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                "NEW." + LocationEntry.COLUMN_COORD_LONG;
+
+        StringBuilder dayColumns = new StringBuilder(WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID);
+        StringBuilder newDayColumns = new StringBuilder("NEW." + WeatherEntry.COLUMN_DATE + ", " +
+                "NEW." + WeatherEntry.COLUMN_WEATHER_ID);
+        StringBuilder weatherDayColumns = new StringBuilder(
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_WEATHER_ID);
+        StringBuilder dayViewColumns = new StringBuilder(dayColumns);
+        StringBuilder dayDefinitions = new StringBuilder(
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, ");
+        for (String column : measurements) {
+            dayColumns.append(", ").append(column);
+            newDayColumns.append(", NEW.").append(column);
+            weatherDayColumns.append(", ").append(WeatherEntry.TABLE_NAME).append(".").append(column);
+            dayViewColumns.append(", ").append(column).append(" / 100.0 AS ").append(column);
+            dayDefinitions.append(column).append(" INTEGER NOT NULL, ");
+        }
+
+        db.execSQL("CREATE TABLE " + ForecastEntry.TABLE_NAME + " (" +
+                WeatherEntry._ID + " INTEGER PRIMARY KEY," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                dayDefinitions +
+                " UNIQUE (" + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);");
+        db.execSQL("CREATE VIEW " + ForecastEntry.VIEW_NAME + " AS SELECT " +
+                WeatherEntry._ID + ", " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                locationColumns + ", " + dayViewColumns +
+                " FROM " + ForecastEntry.TABLE_NAME);
+
+        String insertForecast = "INSERT OR REPLACE INTO " + ForecastEntry.TABLE_NAME + " (" +
+                WeatherEntry._ID + ", " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                locationColumns + ", " + dayColumns + ") ";
+        String insertNewWeather = insertForecast + "SELECT " +
+                "NEW." + WeatherEntry._ID + ", NEW." + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                locationColumns + ", " + newDayColumns +
+                " FROM " + LocationEntry.TABLE_NAME +
+                " WHERE " + LocationEntry._ID + " = NEW." + WeatherEntry.COLUMN_LOC_KEY + ";";
+        String deleteOldWeather = "DELETE FROM " + ForecastEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry._ID + " = OLD." + WeatherEntry._ID + ";";
+
+        db.execSQL("CREATE TRIGGER " + ForecastEntry.TRIGGER_WEATHER_INSERT +
+                " AFTER INSERT ON " + WeatherEntry.TABLE_NAME +
+                " BEGIN " + insertNewWeather + " END");
+        db.execSQL("CREATE TRIGGER " + ForecastEntry.TRIGGER_WEATHER_UPDATE +
+                " AFTER UPDATE ON " + WeatherEntry.TABLE_NAME +
+                " BEGIN " + deleteOldWeather + " " + insertNewWeather + " END");
+        db.execSQL("CREATE TRIGGER " + ForecastEntry.TRIGGER_WEATHER_DELETE +
+                " AFTER DELETE ON " + WeatherEntry.TABLE_NAME +
+                " BEGIN " + deleteOldWeather + " END");
+        db.execSQL("CREATE TRIGGER " + ForecastEntry.TRIGGER_LOCATION_INSERT +
+                " AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + insertForecast + "SELECT " +
+                WeatherEntry._ID + ", " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                newLocationColumns + ", " + dayColumns +
+                " FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = NEW." + LocationEntry._ID +
+                "; END");
+        db.execSQL("CREATE TRIGGER " + ForecastEntry.TRIGGER_LOCATION_UPDATE +
+                " AFTER UPDATE OF " + locationColumns + " ON " + LocationEntry.TABLE_NAME +
+                " BEGIN UPDATE " + ForecastEntry.TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " = NEW." + LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_CITY_NAME + " = NEW." + LocationEntry.COLUMN_CITY_NAME + ", " +
+                LocationEntry.COLUMN_COORD_LAT + " = NEW." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + " = NEW." + LocationEntry.COLUMN_COORD_LONG +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = OLD." + LocationEntry._ID +
+                "; END");
+        db.execSQL("CREATE TRIGGER " + ForecastEntry.TRIGGER_LOCATION_DELETE +
+                " AFTER DELETE ON " + LocationEntry.TABLE_NAME +
+                " BEGIN DELETE FROM " + ForecastEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = OLD." + LocationEntry._ID +
+                "; END");
+
+        db.execSQL(insertForecast + "SELECT " +
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + ", " +
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                locationColumns + ", " + weatherDayColumns +
+                " FROM " + WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME +
+                " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = " +
+                LocationEntry.TABLE_NAME + "." + LocationEntry._ID);
+    }
+
+    // 9: index for reading the forecast by location id
+    private static void upgradeFrom8To9(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + ForecastEntry.INDEX_LOCATION_ID_DATE + " ON " +
+                ForecastEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ");");
+    }
+
+    // 10: grid cells of the locations, for the nearest locations query, with the index and
+    // triggers of version 10 spelled out and its ten cells per degree
+    private static void upgradeFrom9To10(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                LocationEntry.COLUMN_GRID_LAT + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                LocationEntry.COLUMN_GRID_LONG + " INTEGER NOT NULL DEFAULT 0");
+        //CAST((coordinate + offset) * 10 AS INTEGER)
+        db.execSQL("UPDATE " + LocationEntry.TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_GRID_LAT + " = CAST((" +
+                LocationEntry.COLUMN_COORD_LAT + " + 90) * 10 AS INTEGER), " +
+                LocationEntry.COLUMN_GRID_LONG + " = CAST((" +
+                LocationEntry.COLUMN_COORD_LONG + " + 180) * 10 AS INTEGER)");
+
+        String setGrid = "UPDATE " + LocationEntry.TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_GRID_LAT + " = CAST((NEW." +
+                LocationEntry.COLUMN_COORD_LAT + " + 90) * 10 AS INTEGER), " +
+                LocationEntry.COLUMN_GRID_LONG + " = CAST((NEW." +
+                LocationEntry.COLUMN_COORD_LONG + " + 180) * 10 AS INTEGER)" +
+                " WHERE " + LocationEntry._ID + " = NEW." + LocationEntry._ID + ";";
+        db.execSQL("CREATE INDEX " + LocationEntry.INDEX_GRID + " ON " + LocationEntry.TABLE_NAME +
+                " (" + LocationEntry.COLUMN_GRID_LAT + ", " +
+                LocationEntry.COLUMN_GRID_LONG + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + ");");
+        db.execSQL("CREATE TRIGGER " + LocationEntry.TRIGGER_GRID_INSERT +
+                " AFTER INSERT ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + setGrid + " END");
+        db.execSQL("CREATE TRIGGER " + LocationEntry.TRIGGER_GRID_UPDATE +
+                " AFTER UPDATE OF " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + " ON " + LocationEntry.TABLE_NAME +
+                " BEGIN " + setGrid + " END");
+    }
+
+    // 11: locations sharing the weather of another location in their cell, and when each
+    // location's weather was last fetched.  Every existing location has weather of its own.
+    private static void upgradeFrom10To11(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                LocationEntry.COLUMN_SHARED_ID + " INTEGER");
+        db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                LocationEntry.COLUMN_LAST_FETCH + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + LocationEntry.INDEX_SHARED_ID + " ON " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_SHARED_ID + ");");
+    }
+
+    // 12: display strings of the weather rows, empty until the next maintenance pass formats
+    // them.  Readers format the rows without strings themselves until then.  The table and
+    // its triggers are spelled out as version 12 has them.
+    private static void upgradeFrom11To12(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + DisplayEntry.TABLE_NAME + " (" +
+                DisplayEntry.COLUMN_WEATHER_KEY + " INTEGER PRIMARY KEY," +
+                DisplayEntry.COLUMN_LOCALE + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_HIGH_METRIC + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_LOW_METRIC + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_HIGH_IMPERIAL + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_LOW_IMPERIAL + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_WIND_METRIC + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_WIND_IMPERIAL + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_HUMIDITY + " TEXT NOT NULL, " +
+                DisplayEntry.COLUMN_PRESSURE + " TEXT NOT NULL " +
+                " );");
+        String deleteOldWeather = "DELETE FROM " + DisplayEntry.TABLE_NAME +
+                " WHERE " + DisplayEntry.COLUMN_WEATHER_KEY + " = OLD." + WeatherEntry._ID + ";";
+        db.execSQL("CREATE TRIGGER " + DisplayEntry.TRIGGER_WEATHER_UPDATE +
+                " AFTER UPDATE ON " + WeatherEntry.TABLE_NAME +
+                " BEGIN " + deleteOldWeather + " END");
+        db.execSQL("CREATE TRIGGER " + DisplayEntry.TRIGGER_WEATHER_DELETE +
+                " AFTER DELETE ON " + WeatherEntry.TABLE_NAME +
+                " BEGIN " + deleteOldWeather + " END");
+    }
+}
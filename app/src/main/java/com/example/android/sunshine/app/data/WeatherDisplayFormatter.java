@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract.DisplayEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.WeatherUnits;
+
+/**
+ * Formats the display strings of the weather rows, see {@link DisplayEntry}.
+ * <p>
+ * A pass first deletes the strings of another locale and those left behind by weather rows
+ * that were replaced, then formats every row that has none, in both units, with the same
+ * format resources as {@link com.example.android.sunshine.app.Utility}.  Like
+ * {@link WeatherRetention}, each batch runs in its own short transaction and a pass stops
+ * after a fixed number of batches.
+ */
+final class WeatherDisplayFormatter {
+
+    static final int BATCH_SIZE = 100;
+    static final int MAX_BATCHES_PER_PASS = 20;
+
+    //SELECT weather._id, max, min, humidity, pressure, wind, degrees FROM weather_values AS weather
+    //  LEFT JOIN weather_display ON weather._id = weather_display.weather_key
+    //  WHERE weather_display.weather_key IS NULL LIMIT 100
+    private static final String sUnformattedSql = "SELECT " +
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES +
+            " FROM " + WeatherEntry.VIEW_NAME + " AS " + WeatherEntry.TABLE_NAME +
+            " LEFT JOIN " + DisplayEntry.TABLE_NAME +
+            " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + " = " +
+            DisplayEntry.TABLE_NAME + "." + DisplayEntry.COLUMN_WEATHER_KEY +
+            " WHERE " + DisplayEntry.TABLE_NAME + "." + DisplayEntry.COLUMN_WEATHER_KEY +
+            " IS NULL LIMIT " + BATCH_SIZE;
+
+    private static final String sInsertDisplaySql = "INSERT OR REPLACE INTO " +
+            DisplayEntry.TABLE_NAME + " (" +
+            DisplayEntry.COLUMN_WEATHER_KEY + ", " +
+            DisplayEntry.COLUMN_LOCALE + ", " +
+            DisplayEntry.COLUMN_HIGH_METRIC + ", " +
+            DisplayEntry.COLUMN_LOW_METRIC + ", " +
+            DisplayEntry.COLUMN_HIGH_IMPERIAL + ", " +
+            DisplayEntry.COLUMN_LOW_IMPERIAL + ", " +
+            DisplayEntry.COLUMN_WIND_METRIC + ", " +
+            DisplayEntry.COLUMN_WIND_IMPERIAL + ", " +
+            DisplayEntry.COLUMN_HUMIDITY + ", " +
+            DisplayEntry.COLUMN_PRESSURE +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int COL_ID = 0;
+    private static final int COL_MAX_TEMP = 1;
+    private static final int COL_MIN_TEMP = 2;
+    private static final int COL_HUMIDITY = 3;
+    private static final int COL_PRESSURE = 4;
+    private static final int COL_WIND_SPEED = 5;
+    private static final int COL_DEGREES = 6;
+
+    private final SQLiteDatabase mDb;
+    private final String mLocale;
+    private final String mTemperatureFormat;
+    private final String mWindKmhFormat;
+    private final String mWindMphFormat;
+    private final String mHumidityFormat;
+    private final String mPressureFormat;
+
+    private int mRowsFormatted;
+
+    WeatherDisplayFormatter(SQLiteDatabase db, Context context) {
+        mDb = db;
+        mLocale = DisplayEntry.getCurrentLocale();
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWindKmhFormat = context.getString(R.string.format_wind_kmh);
+        mWindMphFormat = context.getString(R.string.format_wind_mph);
+        mHumidityFormat = context.getString(R.string.format_humidity);
+        mPressureFormat = context.getString(R.string.format_pressure);
+    }
+
+    int getRowsFormatted() {
+        return mRowsFormatted;
+    }
+
+    /**
+     * Runs one pass in the current locale.
+     */
+    void runPass() {
+        // Both are rare: a locale change, and days a sync wrote again.
+        mDb.delete(DisplayEntry.TABLE_NAME,
+                DisplayEntry.COLUMN_LOCALE + " != ? OR " + DisplayEntry.COLUMN_WEATHER_KEY +
+                        " NOT IN (SELECT " + WeatherEntry._ID + " FROM " + WeatherEntry.TABLE_NAME + ")",
+                new String[]{mLocale});
+
+        SQLiteStatement insertDisplay = mDb.compileStatement(sInsertDisplaySql);
+        try {
+            for (int batch = 0; batch < MAX_BATCHES_PER_PASS; batch++) {
+                int formatted;
+                mDb.beginTransaction();
+                try {
+                    formatted = formatBatch(insertDisplay);
+                    mDb.setTransactionSuccessful();
+                } finally {
+                    mDb.endTransaction();
+                }
+                mRowsFormatted += formatted;
+                if (formatted < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } finally {
+            insertDisplay.close();
+        }
+    }
+
+    private int formatBatch(SQLiteStatement insertDisplay) {
+        Cursor cursor = mDb.rawQuery(sUnformattedSql, null);
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                double high = cursor.getDouble(COL_MAX_TEMP);
+                double low = cursor.getDouble(COL_MIN_TEMP);
+                float windSpeed = cursor.getFloat(COL_WIND_SPEED);
+                float degrees = cursor.getFloat(COL_DEGREES);
+
+                insertDisplay.bindLong(1, cursor.getLong(COL_ID));
+                insertDisplay.bindString(2, mLocale);
+                insertDisplay.bindString(3, WeatherUnits.formatTemperature(mTemperatureFormat, high, true));
+                insertDisplay.bindString(4, WeatherUnits.formatTemperature(mTemperatureFormat, low, true));
+                insertDisplay.bindString(5, WeatherUnits.formatTemperature(mTemperatureFormat, high, false));
+                insertDisplay.bindString(6, WeatherUnits.formatTemperature(mTemperatureFormat, low, false));
+                insertDisplay.bindString(7, WeatherUnits.formatWind(mWindKmhFormat, windSpeed, degrees, true));
+                insertDisplay.bindString(8, WeatherUnits.formatWind(mWindMphFormat, windSpeed, degrees, false));
+                insertDisplay.bindString(9, String.format(mHumidityFormat, cursor.getFloat(COL_HUMIDITY)));
+                insertDisplay.bindString(10, String.format(mPressureFormat, cursor.getFloat(COL_PRESSURE)));
+                insertDisplay.execute();
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+}
@@ -17,91 +17,542 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Pattern;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private NotificationCoalescer mNotifier;
+    private LocationAccessTracker mAccessTracker;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_WITH_LOCATION_AND_DATE_RANGE = 103;
+    static final int WEATHER_WITH_LOCATION_ID = 104;
+    static final int WEATHER_WITH_LOCATION_ID_AND_DATE = 105;
+    static final int WEATHER_WITH_LOCATION_ID_AND_DATE_RANGE = 106;
+    static final int AGGREGATE = 200;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAREST = 301;
+    static final int ROLLUP = 400;
+    static final int ROLLUP_WITH_LOCATION = 401;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sWeatherQueryBuilder;
+
+    // Reads go through the view that turns the stored hundredths back into units.  Naming it
+    // weather keeps every "weather." column reference in selections and projections working.
+    //weather_values AS weather
+    private static final String sWeatherTable = WeatherContract.WeatherEntry.VIEW_NAME +
+            " AS " + WeatherContract.WeatherEntry.TABLE_NAME;
+
+    // Queries by location read the forecast table, see ForecastEntry, joined to the location
+    // they name.  A location sharing the weather of another one, see
+    // LocationEntry.COLUMN_SHARED_ID, gets that one's days under its own location columns.
+    // Under the weather alias too, so projections like weather._id keep working.
+    //(SELECT shared._id AS _id, location._id AS location_id, ...) AS weather, see buildForecastTable
+    private static final String sForecastTable =
+            buildForecastTable(WeatherContract.ForecastEntry.VIEW_NAME);
+
+    // Brings back the description of every weather row, see ConditionEntry.
+    //LEFT JOIN weather_condition ON weather.weather_id = weather_condition.condition_id
+    private static final String sConditionJoin =
+            " LEFT JOIN " + WeatherContract.ConditionEntry.TABLE_NAME +
+                    " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID +
+                    " = " + WeatherContract.ConditionEntry.TABLE_NAME +
+                    "." + WeatherContract.ConditionEntry.COLUMN_CONDITION_ID;
+
+    // Brings back the display strings of every weather row, null until they are formatted,
+    // see DisplayEntry.
+    //LEFT JOIN weather_display ON weather._id = weather_display.weather_key
+    private static final String sDisplayJoin =
+            " LEFT JOIN " + WeatherContract.DisplayEntry.TABLE_NAME +
+                    " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry._ID +
+                    " = " + WeatherContract.DisplayEntry.TABLE_NAME +
+                    "." + WeatherContract.DisplayEntry.COLUMN_WEATHER_KEY;
+
+    //INSERT INTO weather (location_id, date, weather_id, min, max, ...) VALUES (?, ?, ?, ?, ...)
+    private static final String sInsertWeatherSql = buildInsertWeatherSql();
+
+    //INSERT OR REPLACE INTO weather_condition (condition_id, short_desc) VALUES (?, ?)
+    private static final String sInsertConditionSql =
+            "INSERT OR REPLACE INTO " + WeatherContract.ConditionEntry.TABLE_NAME + " (" +
+                    WeatherContract.ConditionEntry.COLUMN_CONDITION_ID + ", " +
+                    WeatherContract.ConditionEntry.COLUMN_SHORT_DESC + ") VALUES (?, ?)";
+
+    private static String buildInsertWeatherSql() {
+        StringBuilder columns = new StringBuilder(WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                ", " + WeatherContract.WeatherEntry.COLUMN_DATE +
+                ", " + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        StringBuilder values = new StringBuilder("?, ?, ?");
+        for (String column : WeatherContract.WeatherEntry.MEASUREMENT_COLUMNS) {
+            columns.append(", ").append(column);
+            values.append(", ?");
+        }
+        return "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " (" + columns + ") VALUES (" + values + ")";
+    }
+
+    // Finds a measurement column named in a caller's selection.  Matching SQL such as MIN(...)
+    // too only costs that selection the subquery below.
+    private static final Pattern sMeasurementColumnPattern = Pattern.compile(
+            "\\b(" + TextUtils.join("|", WeatherContract.WeatherEntry.MEASUREMENT_COLUMNS) + ")\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /*
+        Returns a selection on the weather table that picks the same rows as a caller's
+        selection does through the view, so that update and delete read measurements in their
+        units like query does.  Selections that name no measurement are the same on both and
+        are returned as they are, keeping the location/date index usable for them.
+        //weather._id IN (SELECT _id FROM weather_values AS weather WHERE (<selection>))
+     */
+    private static String getStoredWeatherSelection(String selection) {
+        if (selection == null || !sMeasurementColumnPattern.matcher(selection).find()) {
+            return selection;
+        }
+        return WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID +
+                " IN (SELECT " + WeatherContract.WeatherEntry._ID + " FROM " + sWeatherTable +
+                " WHERE (" + selection + "))";
+    }
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
         
-        //This is an inner join which looks like
-        //weather INNER JOIN location ON weather.location_id = location._id
-        sWeatherByLocationSettingQueryBuilder.setTables(
-                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
-                        WeatherContract.LocationEntry.TABLE_NAME +
-                        " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
-                        "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
-                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
-                        "." + WeatherContract.LocationEntry._ID);
+        //A lookup of the location and a range scan of its days in the forecast table, with the
+        //descriptions looked up by id:
+        //(SELECT ... FROM location INNER JOIN forecast_values AS shared ...) AS weather
+        //LEFT JOIN weather_condition ON weather.weather_id = weather_condition.condition_id
+        //LEFT JOIN weather_display ON weather._id = weather_display.weather_key
+        sWeatherByLocationSettingQueryBuilder.setTables(sForecastTable + sConditionJoin +
+                sDisplayJoin);
+
+        sWeatherQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherQueryBuilder.setTables(sWeatherTable + sConditionJoin + sDisplayJoin);
     }
 
-    //location.location_setting = ?
+    //weather.location_setting = ?
     private static final String sLocationSettingSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
+            WeatherContract.WeatherEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
-    //location.location_setting = ? AND date >= ?
+    //weather.location_setting = ? AND date >= ?
     private static final String sLocationSettingWithStartDateSelection =
-            WeatherContract.LocationEntry.TABLE_NAME+
+            WeatherContract.WeatherEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
-    //location.location_setting = ? AND date = ?
+    //weather.location_setting = ? AND date = ?
     private static final String sLocationSettingAndDaySelection =
-            WeatherContract.LocationEntry.TABLE_NAME +
+            WeatherContract.WeatherEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+    //weather.location_setting = ? AND date >= ? AND date <= ?
+    private static final String sLocationSettingAndDateRangeSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    //weather.location_id = ?
+    private static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //weather.location_id = ? AND date >= ?
+    private static final String sLocationIdWithStartDateSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    //weather.location_id = ? AND date = ?
+    private static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    //weather.location_id = ? AND date >= ? AND date <= ?
+    private static final String sLocationIdAndDateRangeSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    /*
+        The days of a location joined to the location rows reading them, with the location
+        columns of the reading location instead of those the days were stored with.  The
+        location selections above then pick a location's days by its setting or id in one
+        statement: SQLite flattens the subquery, looks the location up by its setting or id,
+        and the (location_id, date) index of the forecast table bounds the scan of its days.
+        //(SELECT shared._id AS _id, location._id AS location_id,
+        //  location.location_setting AS location_setting, location.city_name AS city_name,
+        //  location.coord_lat AS coord_lat, location.coord_long AS coord_long,
+        //  shared.date AS date, shared.weather_id AS weather_id, shared.min AS min, ...
+        //  FROM location INNER JOIN forecast_values AS shared
+        //  ON shared.location_id = IFNULL(location.shared_id, location._id)) AS weather
+     */
+    private static String buildForecastTable(String forecastTable) {
+        String location = WeatherContract.LocationEntry.TABLE_NAME + ".";
+        StringBuilder columns = new StringBuilder();
+        appendColumn(columns, "shared.", WeatherContract.WeatherEntry._ID);
+        columns.append(", ").append(location).append(WeatherContract.LocationEntry._ID)
+                .append(" AS ").append(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        appendColumn(columns, location, WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        appendColumn(columns, location, WeatherContract.LocationEntry.COLUMN_CITY_NAME);
+        appendColumn(columns, location, WeatherContract.LocationEntry.COLUMN_COORD_LAT);
+        appendColumn(columns, location, WeatherContract.LocationEntry.COLUMN_COORD_LONG);
+        appendColumn(columns, "shared.", WeatherContract.WeatherEntry.COLUMN_DATE);
+        appendColumn(columns, "shared.", WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        for (String column : WeatherContract.WeatherEntry.MEASUREMENT_COLUMNS) {
+            appendColumn(columns, "shared.", column);
+        }
+        return "(SELECT " + columns +
+                " FROM " + WeatherContract.LocationEntry.TABLE_NAME +
+                " INNER JOIN " + forecastTable + " AS shared" +
+                " ON shared." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = " +
+                WeatherDbHelper.buildSharedIdSql(location) +
+                ") AS " + WeatherContract.WeatherEntry.TABLE_NAME;
+    }
+
+    private static void appendColumn(StringBuilder columns, String prefix, String column) {
+        if (columns.length() > 0) {
+            columns.append(", ");
+        }
+        columns.append(prefix).append(column).append(" AS ").append(column);
+    }
+
+    //location.location_setting = ?
+    private static final String sRollupLocationSettingSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    private static final String sDateAscendingSortOrder =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    // The stored days of a location setting in a date range, in the column order of
+    // WeatherArrays.addStored.  Reads the table rather than the view, so the measurements stay
+    // the integers WeatherArrays carries, through the join of buildForecastTable.
+    //SELECT weather.location_id, weather.date, weather.weather_id, weather_condition.short_desc,
+    //  weather.min, ... FROM (SELECT ... FROM location INNER JOIN forecast AS shared ...) AS weather
+    //  LEFT JOIN weather_condition ...
+    //  WHERE weather.location_setting = ? AND date >= ? AND date <= ? ORDER BY date ASC LIMIT 250
+    private static final String sReadWeatherSql =
+            buildReadWeatherSql(sLocationSettingAndDateRangeSelection);
+
+    // The same by location id: ... WHERE weather.location_id = ? AND date >= ? AND date <= ? ...
+    private static final String sReadWeatherByLocationIdSql =
+            buildReadWeatherSql(sLocationIdAndDateRangeSelection);
+
+    private static String buildReadWeatherSql(String selection) {
+        String weather = WeatherContract.WeatherEntry.TABLE_NAME + ".";
+        StringBuilder sql = new StringBuilder("SELECT " +
+                weather + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                weather + WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                weather + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherContract.ConditionEntry.TABLE_NAME + "." +
+                WeatherContract.ConditionEntry.COLUMN_SHORT_DESC);
+        for (String column : WeatherContract.WeatherEntry.MEASUREMENT_COLUMNS) {
+            sql.append(", ").append(weather).append(column);
+        }
+        return sql.append(" FROM ")
+                .append(buildForecastTable(WeatherContract.ForecastEntry.TABLE_NAME))
+                .append(sConditionJoin)
+                .append(" WHERE ").append(selection)
+                .append(" ORDER BY ").append(weather).append(WeatherContract.WeatherEntry.COLUMN_DATE)
+                .append(" ASC LIMIT ").append(WeatherContract.MAX_ROWS_PER_READ)
+                .toString();
+    }
+
+    private static final String sWeatherColumnPrefix = WeatherContract.WeatherEntry.TABLE_NAME + ".";
+
+    // Day number of a stored date, see WeatherContract.getDayNumber
+    private static final String sDayNumberExpression =
+            "((" + sWeatherColumnPrefix + WeatherContract.WeatherEntry.COLUMN_DATE + " + " +
+                    (WeatherContract.DAY_IN_MILLIS / 2) + ") / " + WeatherContract.DAY_IN_MILLIS + ")";
+
+    // Maps every aggregate column to the SQL computing it over one group of weather rows.
+    private static final HashMap<String, String> sAggregateProjectionMap = buildAggregateProjectionMap();
+
+    private static HashMap<String, String> buildAggregateProjectionMap() {
+        HashMap<String, String> map = new HashMap<String, String>();
+        String date = sWeatherColumnPrefix + WeatherContract.WeatherEntry.COLUMN_DATE;
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_BUCKET_START, "MIN(" + date + ")");
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_BUCKET_END, "MAX(" + date + ")");
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_DAY_COUNT, "COUNT(*)");
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MIN_TEMP,
+                "MIN", WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MAX_TEMP,
+                "MAX", WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_AVG_MIN_TEMP,
+                "AVG", WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_AVG_MAX_TEMP,
+                "AVG", WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MIN_HUMIDITY,
+                "MIN", WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MAX_HUMIDITY,
+                "MAX", WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_AVG_HUMIDITY,
+                "AVG", WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MIN_PRESSURE,
+                "MIN", WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MAX_PRESSURE,
+                "MAX", WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_AVG_PRESSURE,
+                "AVG", WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MIN_WIND_SPEED,
+                "MIN", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_MAX_WIND_SPEED,
+                "MAX", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+        putAggregate(map, WeatherContract.AggregateEntry.COLUMN_AVG_WIND_SPEED,
+                "AVG", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+        return map;
+    }
+
+    private static void putAggregate(HashMap<String, String> map, String column,
+                                     String function, String weatherColumn) {
+        putAggregate(map, column, function + "(" + sWeatherColumnPrefix + weatherColumn + ")");
+    }
+
+    private static void putAggregate(HashMap<String, String> map, String column, String expression) {
+        map.put(column, expression + " AS " + column);
+    }
+
+    // Returns the SQL expression that puts every day of the same bucket into one group.
+    private static String getBucketExpression(String bucket) {
+        if (WeatherContract.AggregateEntry.BUCKET_DAY.equals(bucket)) {
+            return sDayNumberExpression;
+        } else if (WeatherContract.AggregateEntry.BUCKET_WEEK.equals(bucket)) {
+            // day 0 was a Thursday, shift by 3 so that weeks start on Monday
+            return "((" + sDayNumberExpression + " + 3) / 7)";
+        } else if (WeatherContract.AggregateEntry.BUCKET_MONTH.equals(bucket)) {
+            return "strftime('%Y%m', " + sDayNumberExpression + " * 86400, 'unixepoch')";
+        }
+
+        int bucketDays;
+        try {
+            bucketDays = Integer.parseInt(bucket);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown aggregate bucket: " + bucket);
+        }
+        if (bucketDays <= 0) {
+            throw new IllegalArgumentException("Unknown aggregate bucket: " + bucket);
+        }
+        return "(" + sDayNumberExpression + " / " + bucketDays + ")";
+    }
+
+    private Cursor getAggregates(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.AggregateEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.AggregateEntry.getStartDateFromUri(uri);
+        long endDate = WeatherContract.AggregateEntry.getEndDateFromUri(uri);
+        String bucket = WeatherContract.AggregateEntry.getBucketFromUri(uri);
+
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(sForecastTable);
+        queryBuilder.setProjectionMap(sAggregateProjectionMap);
+
+        if (sortOrder == null) {
+            sortOrder = WeatherContract.AggregateEntry.COLUMN_BUCKET_START + " ASC";
+        }
+
+        return queryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingAndDateRangeSelection,
+                new String[]{locationSetting, Long.toString(startDate), Long.toString(endDate)},
+                getBucketExpression(bucket),
+                null,
+                sortOrder
+        );
+    }
+
+    // Both rollup tables are queried under this alias, so one projection map fits both.
+    private static final String sRollupAlias = "rollup";
+    private static final String sRollupColumnPrefix = sRollupAlias + ".";
+
+    // Maps the rollup columns to the AggregateEntry columns, turning the stored sums into means.
+    private static final HashMap<String, String> sRollupProjectionMap = buildRollupProjectionMap();
+
+    private static HashMap<String, String> buildRollupProjectionMap() {
+        HashMap<String, String> map = new HashMap<String, String>();
+        String[] storedColumns = {
+                WeatherContract.RollupEntry._ID,
+                WeatherContract.RollupEntry.COLUMN_BUCKET,
+                WeatherContract.RollupEntry.COLUMN_BUCKET_START,
+                WeatherContract.RollupEntry.COLUMN_BUCKET_END,
+                WeatherContract.RollupEntry.COLUMN_DAY_COUNT,
+                WeatherContract.RollupEntry.COLUMN_MIN_TEMP,
+                WeatherContract.RollupEntry.COLUMN_MAX_TEMP,
+                WeatherContract.RollupEntry.COLUMN_MIN_HUMIDITY,
+                WeatherContract.RollupEntry.COLUMN_MAX_HUMIDITY,
+                WeatherContract.RollupEntry.COLUMN_MIN_PRESSURE,
+                WeatherContract.RollupEntry.COLUMN_MAX_PRESSURE,
+                WeatherContract.RollupEntry.COLUMN_MIN_WIND_SPEED,
+                WeatherContract.RollupEntry.COLUMN_MAX_WIND_SPEED
+        };
+        for (String column : storedColumns) {
+            // the rollup tables are joined with location, which has an _id too
+            putAggregate(map, column, sRollupColumnPrefix + column);
+        }
+        putRollupMean(map, WeatherContract.AggregateEntry.COLUMN_AVG_MIN_TEMP,
+                WeatherContract.RollupEntry.COLUMN_SUM_MIN_TEMP);
+        putRollupMean(map, WeatherContract.AggregateEntry.COLUMN_AVG_MAX_TEMP,
+                WeatherContract.RollupEntry.COLUMN_SUM_MAX_TEMP);
+        putRollupMean(map, WeatherContract.AggregateEntry.COLUMN_AVG_HUMIDITY,
+                WeatherContract.RollupEntry.COLUMN_SUM_HUMIDITY);
+        putRollupMean(map, WeatherContract.AggregateEntry.COLUMN_AVG_PRESSURE,
+                WeatherContract.RollupEntry.COLUMN_SUM_PRESSURE);
+        putRollupMean(map, WeatherContract.AggregateEntry.COLUMN_AVG_WIND_SPEED,
+                WeatherContract.RollupEntry.COLUMN_SUM_WIND_SPEED);
+        return map;
+    }
+
+    private static void putRollupMean(HashMap<String, String> map, String column, String sumColumn) {
+        putAggregate(map, column, "(" + sRollupColumnPrefix + sumColumn + " * 1.0 / " +
+                sRollupColumnPrefix + WeatherContract.RollupEntry.COLUMN_DAY_COUNT + ")");
+    }
+
+    private static String getRollupTable(String period) {
+        if (WeatherContract.RollupEntry.PERIOD_WEEKLY.equals(period)) {
+            return WeatherContract.RollupEntry.TABLE_WEEKLY;
+        } else if (WeatherContract.RollupEntry.PERIOD_MONTHLY.equals(period)) {
+            return WeatherContract.RollupEntry.TABLE_MONTHLY;
+        }
+        throw new IllegalArgumentException("Unknown rollup period: " + period);
+    }
+
+    private Cursor getRollups(Uri uri, String[] projection, String sortOrder) {
+        String table = getRollupTable(WeatherContract.RollupEntry.getPeriodFromUri(uri));
+        String locationSetting = WeatherContract.RollupEntry.getLocationSettingFromUri(uri);
+
+        // the rollups are those of the location whose weather rows it reads
+        //weather_weekly AS rollup INNER JOIN location
+        //  ON rollup.location_id = IFNULL(location.shared_id, location._id)
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(table + " AS " + sRollupAlias + " INNER JOIN " +
+                WeatherContract.LocationEntry.TABLE_NAME +
+                " ON " + sRollupColumnPrefix + WeatherContract.RollupEntry.COLUMN_LOC_KEY +
+                " = " + WeatherDbHelper.buildSharedIdSql(
+                        WeatherContract.LocationEntry.TABLE_NAME + "."));
+        queryBuilder.setProjectionMap(sRollupProjectionMap);
+
+        if (sortOrder == null) {
+            sortOrder = WeatherContract.RollupEntry.COLUMN_BUCKET_START + " ASC";
+        }
+
+        return queryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sRollupLocationSettingSelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    // Turns the limit and offset query parameters into an SQLite LIMIT clause, or null
+    // when the Uri does not ask for a page.
+    private static String getLimitFromUri(Uri uri) {
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+        if (limit <= 0) {
+            return null;
+        }
+        int offset = WeatherContract.WeatherEntry.getOffsetFromUri(uri);
+        return offset > 0 ? offset + "," + limit : Integer.toString(limit);
+    }
+
+    // Pages are only stable if the rows come back in a defined order.
+    private static String getPagedSortOrder(String sortOrder, String limit) {
+        if (limit != null && sortOrder == null) {
+            return sDateAscendingSortOrder;
+        }
+        return sortOrder;
+    }
+
+    // The location of a weather/* or weather/id/# Uri, as the first selection argument.
+    private static String getLocationArgFromUri(Uri uri) {
+        if (WeatherContract.WeatherEntry.isLocationIdUri(uri)) {
+            return Long.toString(WeatherContract.WeatherEntry.getLocationIdFromUri(uri));
+        }
+        return WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+    }
+
+    private Cursor getWeatherByLocation(Uri uri, String[] projection, String sortOrder) {
+        String location = getLocationArgFromUri(uri);
+        boolean byId = WeatherContract.WeatherEntry.isLocationIdUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
         String[] selectionArgs;
         String selection;
 
         if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
+            selection = byId ? sLocationIdSelection : sLocationSettingSelection;
+            selectionArgs = new String[]{location};
         } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+            selectionArgs = new String[]{location, Long.toString(startDate)};
+            selection = byId ? sLocationIdWithStartDateSelection
+                    : sLocationSettingWithStartDateSelection;
         }
 
+        String limit = getLimitFromUri(uri);
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
                 null,
                 null,
-                sortOrder
+                getPagedSortOrder(sortOrder, limit),
+                limit
+        );
+    }
+
+    private Cursor getWeatherByLocationAndDateRange(
+            Uri uri, String[] projection, String sortOrder) {
+        String location = getLocationArgFromUri(uri);
+        boolean byId = WeatherContract.WeatherEntry.isLocationIdUri(uri);
+        long startDate = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        long endDate = WeatherContract.WeatherEntry.getEndDateFromUri(uri);
+
+        String limit = getLimitFromUri(uri);
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                byId ? sLocationIdAndDateRangeSelection : sLocationSettingAndDateRangeSelection,
+                new String[]{location, Long.toString(startDate), Long.toString(endDate)},
+                null,
+                null,
+                getPagedSortOrder(sortOrder, limit),
+                limit
         );
     }
 
-    private Cursor getWeatherByLocationSettingAndDate(
+    private Cursor getWeatherByLocationAndDate(
             Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        String location = getLocationArgFromUri(uri);
+        boolean byId = WeatherContract.WeatherEntry.isLocationIdUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
+                byId ? sLocationIdAndDaySelection : sLocationSettingAndDaySelection,
+                new String[]{location, Long.toString(date)},
                 null,
                 null,
                 sortOrder
@@ -126,10 +577,27 @@ public class WeatherProvider extends ContentProvider {
 
         // For each type of URI you want to add, create a corresponding code.
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
+        // The matcher tries a segment's patterns in the order they were added and never backs
+        // up, so the literal "id" has to come before the location setting wildcard.
+        String locationIdPath = WeatherContract.PATH_WEATHER + "/" +
+                WeatherContract.WeatherEntry.PATH_LOCATION_ID;
+        matcher.addURI(authority, locationIdPath + "/#", WEATHER_WITH_LOCATION_ID);
+        matcher.addURI(authority, locationIdPath + "/#/#", WEATHER_WITH_LOCATION_ID_AND_DATE);
+        matcher.addURI(authority, locationIdPath + "/#/#/#",
+                WEATHER_WITH_LOCATION_ID_AND_DATE_RANGE);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#/#",
+                WEATHER_WITH_LOCATION_AND_DATE_RANGE);
+
+        matcher.addURI(authority, WeatherContract.PATH_AGGREGATE + "/*/#/#", AGGREGATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.LocationEntry.PATH_NEAREST, LOCATION_NEAREST);
+
+        matcher.addURI(authority, WeatherContract.PATH_ROLLUP, ROLLUP);
+        matcher.addURI(authority, WeatherContract.PATH_ROLLUP + "/*/*", ROLLUP_WITH_LOCATION);
         return matcher;
     }
 
@@ -140,9 +608,20 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mNotifier = new NotificationCoalescer(getContext().getContentResolver(),
+                NotificationCoalescer.DEFAULT_DEBOUNCE_MILLIS);
+        mAccessTracker = new LocationAccessTracker();
         return true;
     }
 
+    /**
+     * Sets how long change notifications are held back after a write, so that a burst of
+     * writes (such as a sync) only makes observers requery once.  0 delivers them immediately.
+     */
+    public void setNotificationDebounceMillis(long debounceMillis) {
+        mNotifier.setDebounceMillis(debounceMillis);
+    }
+
     /*
         Students: Here's where you'll code the getType function that uses the UriMatcher.  You can
         test this by uncommenting testGetType in TestProvider.
@@ -157,13 +636,24 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             // Student: Uncomment and fill out these two cases
             case WEATHER_WITH_LOCATION_AND_DATE:
+            case WEATHER_WITH_LOCATION_ID_AND_DATE:
                 return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
+            case WEATHER_WITH_LOCATION_ID:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_WITH_LOCATION_AND_DATE_RANGE:
+            case WEATHER_WITH_LOCATION_ID_AND_DATE_RANGE:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case AGGREGATE:
+                return WeatherContract.AggregateEntry.CONTENT_TYPE;
             case LOCATION:
+            case LOCATION_NEAREST:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case ROLLUP:
+            case ROLLUP_WITH_LOCATION:
+                return WeatherContract.RollupEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -175,22 +665,51 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
+        Uri notificationUri = uri;
+        // the location whose forecast is being read, if any
+        String accessedLocationSetting = null;
+        long accessedLocationId = -1;
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                retCursor = getWeatherByLocationAndDate(uri, projection, sortOrder);
+                accessedLocationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+                break;
+            }
+            // "weather/*/#/#"
+            case WEATHER_WITH_LOCATION_AND_DATE_RANGE: {
+                retCursor = getWeatherByLocationAndDateRange(uri, projection, sortOrder);
+                accessedLocationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                retCursor = getWeatherByLocation(uri, projection, sortOrder);
+                accessedLocationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+                break;
+            }
+            // "weather/id/#/#"
+            case WEATHER_WITH_LOCATION_ID_AND_DATE: {
+                retCursor = getWeatherByLocationAndDate(uri, projection, sortOrder);
+                accessedLocationId = WeatherContract.WeatherEntry.getLocationIdFromUri(uri);
+                break;
+            }
+            // "weather/id/#/#/#"
+            case WEATHER_WITH_LOCATION_ID_AND_DATE_RANGE: {
+                retCursor = getWeatherByLocationAndDateRange(uri, projection, sortOrder);
+                accessedLocationId = WeatherContract.WeatherEntry.getLocationIdFromUri(uri);
+                break;
+            }
+            // "weather/id/#"
+            case WEATHER_WITH_LOCATION_ID: {
+                retCursor = getWeatherByLocation(uri, projection, sortOrder);
+                accessedLocationId = WeatherContract.WeatherEntry.getLocationIdFromUri(uri);
                 break;
             }
             // "weather"
             case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
+                retCursor = sWeatherQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                         projection,
                         selection,
                         selectionArgs,
@@ -200,6 +719,14 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "aggregate/*/#/#"
+            case AGGREGATE: {
+                retCursor = getAggregates(uri, projection, sortOrder);
+                accessedLocationSetting = WeatherContract.AggregateEntry.getLocationSettingFromUri(uri);
+                // aggregates change whenever the weather rows behind them do
+                notificationUri = WeatherContract.WeatherEntry.CONTENT_URI;
+                break;
+            }
             // "location"
             case LOCATION: {
                 retCursor = mOpenHelper.getReadableDatabase().query(
@@ -213,11 +740,33 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearest"
+            case LOCATION_NEAREST: {
+                retCursor = NearestLocationFinder.query(mOpenHelper.getReadableDatabase(),
+                        WeatherContract.LocationEntry.getLatFromUri(uri),
+                        WeatherContract.LocationEntry.getLongFromUri(uri),
+                        WeatherContract.LocationEntry.getCountFromUri(uri),
+                        projection);
+                notificationUri = WeatherContract.LocationEntry.CONTENT_URI;
+                break;
+            }
+            // "rollup/*/*"
+            case ROLLUP_WITH_LOCATION: {
+                retCursor = getRollups(uri, projection, sortOrder);
+                accessedLocationSetting = WeatherContract.RollupEntry.getLocationSettingFromUri(uri);
+                notificationUri = WeatherContract.RollupEntry.CONTENT_URI;
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        if (accessedLocationSetting != null) {
+            mAccessTracker.recordAccess(accessedLocationSetting, System.currentTimeMillis());
+        } else if (accessedLocationId != -1) {
+            mAccessTracker.recordAccess(accessedLocationId, System.currentTimeMillis());
+        }
+        retCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return retCursor;
     }
 
@@ -233,6 +782,7 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
+                values = writeCondition(db, WeatherDbHelper.scaleMeasurements(values), null);
                 long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
@@ -241,6 +791,11 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
+                // a location is added because it is about to be used, don't evict it right away
+                if (!values.containsKey(WeatherContract.LocationEntry.COLUMN_LAST_ACCESS)) {
+                    values.put(WeatherContract.LocationEntry.COLUMN_LAST_ACCESS,
+                            System.currentTimeMillis());
+                }
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
@@ -251,7 +806,7 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        mNotifier.notifyChange(uri);
         return returnUri;
     }
 
@@ -264,19 +819,27 @@ public class WeatherProvider extends ContentProvider {
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                        getStoredWeatherSelection(selection), selectionArgs);
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                mAccessTracker.clear();
+                break;
+            case ROLLUP:
+                // both tables have the same columns, so the selection applies to either
+                rowsDeleted = db.delete(
+                        WeatherContract.RollupEntry.TABLE_WEEKLY, selection, selectionArgs);
+                rowsDeleted += db.delete(
+                        WeatherContract.RollupEntry.TABLE_MONTHLY, selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mNotifier.notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -289,6 +852,42 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /*
+        Moves the description out of weather values into the condition dictionary, since the
+        weather table only stores the id, and returns the values left to write to the weather
+        table.  The dictionary keeps the latest description the API gave for each id.
+        writtenConditions, if not null, remembers what this call already wrote, so that a bulk
+        insert writes each condition once.
+     */
+    private ContentValues writeCondition(SQLiteDatabase db, ContentValues values,
+                                         HashMap<Integer, String> writtenConditions) {
+        if (!values.containsKey(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)) {
+            return values;
+        }
+        String description = values.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+        // leave the caller's values alone
+        ContentValues weatherValues = new ContentValues(values);
+        weatherValues.remove(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+
+        Integer weatherId = values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        if (weatherId == null) {
+            throw new IllegalArgumentException("A description needs its " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        }
+        if (writtenConditions != null) {
+            if (description.equals(writtenConditions.get(weatherId))) {
+                return weatherValues;
+            }
+            writtenConditions.put(weatherId, description);
+        }
+
+        ContentValues conditionValues = new ContentValues();
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_CONDITION_ID, weatherId);
+        conditionValues.put(WeatherContract.ConditionEntry.COLUMN_SHORT_DESC, description);
+        db.replace(WeatherContract.ConditionEntry.TABLE_NAME, null, conditionValues);
+        return weatherValues;
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -299,8 +898,9 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                values = writeCondition(db, WeatherDbHelper.scaleMeasurements(values), null);
+                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                        getStoredWeatherSelection(selection), selectionArgs);
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
@@ -310,7 +910,7 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            mNotifier.notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -323,10 +923,16 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                // a sync repeats the same few conditions, only write each one once
+                HashMap<Integer, String> writtenConditions = new HashMap<Integer, String>();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        ContentValues weatherValues =
+                                writeCondition(db, WeatherDbHelper.scaleMeasurements(value),
+                                        writtenConditions);
+                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                                weatherValues);
                         if (_id != -1) {
                             returnCount++;
                         }
@@ -335,19 +941,232 @@ public class WeatherProvider extends ContentProvider {
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                mNotifier.notifyChange(uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    // Runs the whole batch in one transaction and holds back change notifications until it
+    // has been committed, so observers see one change per Uri instead of one per operation.
+    // A batch that is rolled back changed nothing, so its notifications are dropped.
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        boolean successful = false;
+        mNotifier.beginBatch();
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            try {
+                db.endTransaction();
+            } finally {
+                if (successful) {
+                    mNotifier.endBatch();
+                } else {
+                    mNotifier.discardBatch();
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_BULK_WRITE.equals(method)) {
+            return bulkWrite(WeatherArrays.fromBundle(extras));
+        }
+        if (WeatherContract.METHOD_READ_WEATHER.equals(method)) {
+            return readWeather(arg, extras);
+        }
+        if (WeatherContract.METHOD_MAINTENANCE.equals(method)) {
+            return runMaintenance(arg, extras);
+        }
+        if (WeatherContract.METHOD_FORMAT_DISPLAY.equals(method)) {
+            return formatDisplay();
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /*
+        Runs WeatherContract.METHOD_READ_WEATHER.  The rows are copied out of the provider's
+        cursor into primitive arrays, and the caller gets them back in a Bundle, with no
+        CursorWindow to share with it or to fill and copy on its side.
+     */
+    private Bundle readWeather(String locationSetting, Bundle extras) {
+        // without extras, today's weather of the location setting
+        long startDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long endDate = startDate;
+        long locationId = -1;
+        if (extras != null) {
+            startDate = WeatherContract.normalizeDate(
+                    extras.getLong(WeatherContract.EXTRA_START_DATE));
+            endDate = WeatherContract.normalizeDate(
+                    extras.getLong(WeatherContract.EXTRA_END_DATE, startDate));
+            locationId = extras.getLong(WeatherContract.EXTRA_LOCATION_ID, -1);
+        }
+
+        boolean byId = locationId != -1;
+        if (!byId && locationSetting == null) {
+            throw new IllegalArgumentException("No location to read the weather of");
+        }
+        String location = byId ? Long.toString(locationId) : locationSetting;
+
+        WeatherArrays rows;
+        Cursor cursor = mOpenHelper.getReadableDatabase().rawQuery(
+                byId ? sReadWeatherByLocationIdSql : sReadWeatherSql,
+                new String[]{location, Long.toString(startDate), Long.toString(endDate)});
+        try {
+            rows = new WeatherArrays(cursor.getCount());
+            while (cursor.moveToNext()) {
+                rows.addStored(cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // a background reader uses the location as much as the forecast list does
+        if (locationId != -1) {
+            mAccessTracker.recordAccess(locationId, System.currentTimeMillis());
+        } else {
+            mAccessTracker.recordAccess(locationSetting, System.currentTimeMillis());
+        }
+        return rows.toBundle();
+    }
+
+    /*
+        Runs WeatherContract.METHOD_BULK_WRITE.  The rows arrive with their measurements scaled
+        already, so they are bound straight into compiled statements instead of going through a
+        ContentValues per row, and the whole call is one transaction.
+     */
+    private Bundle bulkWrite(WeatherArrays rows) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int written = 0;
+        db.beginTransaction();
+        SQLiteStatement insertWeather = db.compileStatement(sInsertWeatherSql);
+        SQLiteStatement insertCondition = db.compileStatement(sInsertConditionSql);
+        try {
+            // a sync repeats the same few conditions, only write each one once
+            HashMap<Integer, String> writtenConditions = new HashMap<Integer, String>();
+            for (int row = 0; row < rows.size(); row++) {
+                int weatherId = rows.getWeatherId(row);
+                String description = rows.getShortDesc(row);
+                if (!description.equals(writtenConditions.get(weatherId))) {
+                    insertCondition.bindLong(1, weatherId);
+                    insertCondition.bindString(2, description);
+                    insertCondition.execute();
+                    writtenConditions.put(weatherId, description);
+                }
+
+                insertWeather.bindLong(1, rows.getLocationId(row));
+                insertWeather.bindLong(2, WeatherContract.normalizeDate(rows.getDate(row)));
+                insertWeather.bindLong(3, weatherId);
+                for (int m = 0; m < WeatherContract.WeatherEntry.MEASUREMENT_COLUMNS.length; m++) {
+                    insertWeather.bindLong(4 + m, rows.getScaledMeasurement(row, m));
+                }
+                if (insertWeather.executeInsert() != -1) {
+                    written++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertWeather.close();
+            insertCondition.close();
+        }
+        if (written > 0) {
+            mNotifier.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROWS_WRITTEN, written);
+        return result;
+    }
+
+    /*
+        Runs WeatherContract.METHOD_MAINTENANCE.  Called by the sync adapter after every sync,
+        off the main thread; observers hear about the rows it moved once it is done.
+     */
+    private Bundle runMaintenance(String arg, Bundle extras) {
+        long now = System.currentTimeMillis();
+        long maxBytes = WeatherContract.DEFAULT_MAX_DATABASE_BYTES;
+        long maxRows = WeatherContract.DEFAULT_MAX_ROWS;
+        if (extras != null) {
+            now = extras.getLong(WeatherContract.EXTRA_NOW, now);
+            maxBytes = extras.getLong(WeatherContract.EXTRA_MAX_DATABASE_BYTES, maxBytes);
+            maxRows = extras.getLong(WeatherContract.EXTRA_MAX_ROWS, maxRows);
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherRetention retention = new WeatherRetention(db);
+        retention.runPass(now);
+
+        // The storage pass runs after the retention pass, so it only evicts locations if
+        // rolling up old days was not enough.  It evicts by the access times, so the reads
+        // since the last pass are written first.
+        mAccessTracker.flush(db);
+        WeatherStorageManager storageManager = new WeatherStorageManager(db, maxBytes, maxRows);
+        storageManager.runPass(arg);
+        int evicted = storageManager.getLocationsEvicted();
+        if (evicted > 0) {
+            mAccessTracker.clear();
+            mNotifier.notifyChange(WeatherContract.LocationEntry.CONTENT_URI);
+        }
+
+        // Last, so that it only formats the rows that are staying.
+        WeatherDisplayFormatter displayFormatter = new WeatherDisplayFormatter(db, getContext());
+        displayFormatter.runPass();
+
+        if (retention.getRowsRolledUp() > 0 || evicted > 0 ||
+                displayFormatter.getRowsFormatted() > 0) {
+            mNotifier.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+        if (retention.getRowsRolledUp() > 0 || retention.getRowsPruned() > 0 || evicted > 0) {
+            mNotifier.notifyChange(WeatherContract.RollupEntry.CONTENT_URI);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROWS_ROLLED_UP, retention.getRowsRolledUp());
+        result.putInt(WeatherContract.EXTRA_ROWS_PRUNED, retention.getRowsPruned());
+        result.putInt(WeatherContract.EXTRA_LOCATIONS_EVICTED, evicted);
+        result.putLong(WeatherContract.EXTRA_DATABASE_BYTES, storageManager.getUsedBytes());
+        result.putInt(WeatherContract.EXTRA_ROWS_FORMATTED, displayFormatter.getRowsFormatted());
+        return result;
+    }
+
+    /*
+        Runs WeatherContract.METHOD_FORMAT_DISPLAY, for readers that found rows without display
+        strings in their locale.  Observers hear about it only if rows were formatted, so a
+        loader that asks again on reloading stops there.
+     */
+    private Bundle formatDisplay() {
+        WeatherDisplayFormatter displayFormatter =
+                new WeatherDisplayFormatter(mOpenHelper.getWritableDatabase(), getContext());
+        displayFormatter.runPass();
+        if (displayFormatter.getRowsFormatted() > 0) {
+            mNotifier.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROWS_FORMATTED, displayFormatter.getRowsFormatted());
+        return result;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
     @Override
     @TargetApi(11)
     public void shutdown() {
+        mNotifier.flush();
+        mAccessTracker.flush(mOpenHelper.getWritableDatabase());
         mOpenHelper.close();
         super.shutdown();
     }
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Tiered retention for the weather table.
+ * <p>
+ * Daily rows are kept for {@link RollupEntry#DAILY_RETENTION_DAYS} days before today.  Older
+ * days are folded into the weekly and monthly rows of their location and then deleted, and
+ * weekly rows are dropped after {@link RollupEntry#WEEKLY_RETENTION_DAYS} days, which leaves
+ * one monthly row per month as the long-term history.
+ * <p>
+ * Each batch runs in its own short transaction, so readers are never held up for long, and a
+ * pass stops after a fixed number of batches.  A large backlog, such as the first pass after
+ * an upgrade, is worked off over several passes.
+ */
+final class WeatherRetention {
+
+    static final int BATCH_SIZE = 100;
+    static final int MAX_BATCHES_PER_PASS = 20;
+
+    private static final String[] DAY_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED
+    };
+
+    private static final int COL_ID = 0;
+    private static final int COL_LOC_KEY = 1;
+    private static final int COL_DATE = 2;
+    private static final int COL_MIN_TEMP = 3;
+    private static final int COL_MAX_TEMP = 4;
+    private static final int COL_HUMIDITY = 5;
+    private static final int COL_PRESSURE = 6;
+    private static final int COL_WIND_SPEED = 7;
+
+    private final SQLiteDatabase mDb;
+    private final Calendar mUtcCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+    private int mRowsRolledUp;
+    private int mRowsPruned;
+
+    WeatherRetention(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    int getRowsRolledUp() {
+        return mRowsRolledUp;
+    }
+
+    int getRowsPruned() {
+        return mRowsPruned;
+    }
+
+    /**
+     * Runs one pass as of {@code now}.
+     */
+    void runPass(long now) {
+        long today = WeatherContract.normalizeDate(now);
+        long dailyCutoff = today - RollupEntry.DAILY_RETENTION_DAYS * WeatherContract.DAY_IN_MILLIS;
+        long weeklyCutoff = today - RollupEntry.WEEKLY_RETENTION_DAYS * WeatherContract.DAY_IN_MILLIS;
+
+        RollupStatements weekly = new RollupStatements(RollupEntry.TABLE_WEEKLY);
+        RollupStatements monthly = new RollupStatements(RollupEntry.TABLE_MONTHLY);
+        SQLiteStatement deleteDay = mDb.compileStatement("DELETE FROM " +
+                WeatherEntry.TABLE_NAME + " WHERE " + WeatherEntry._ID + " = ?");
+        try {
+            for (int batch = 0; batch < MAX_BATCHES_PER_PASS; batch++) {
+                int rolledUp;
+                mDb.beginTransaction();
+                try {
+                    rolledUp = rollUpBatch(dailyCutoff, weekly, monthly, deleteDay);
+                    mDb.setTransactionSuccessful();
+                } finally {
+                    mDb.endTransaction();
+                }
+                mRowsRolledUp += rolledUp;
+                if (rolledUp < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } finally {
+            weekly.close();
+            monthly.close();
+            deleteDay.close();
+        }
+
+        // At most one week per location ages out between passes, so this stays small.
+        mRowsPruned += mDb.delete(RollupEntry.TABLE_WEEKLY,
+                RollupEntry.COLUMN_BUCKET_END + " < ?",
+                new String[]{Long.toString(weeklyCutoff)});
+    }
+
+    // Folds the oldest days before the cutoff into their week and month and deletes them.
+    private int rollUpBatch(long cutoff, RollupStatements weekly, RollupStatements monthly,
+                            SQLiteStatement deleteDay) {
+        // the UNIQUE (date, location_id) index serves this scan; the view gives the
+        // measurements in their units, which is what the rollups store
+        Cursor cursor = mDb.query(WeatherEntry.VIEW_NAME,
+                DAY_COLUMNS,
+                WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(cutoff)},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC",
+                Integer.toString(BATCH_SIZE));
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                long dayNumber = WeatherContract.getDayNumber(cursor.getLong(COL_DATE));
+                weekly.fold(cursor, getWeekBucket(dayNumber));
+                monthly.fold(cursor, getMonthBucket(dayNumber));
+                deleteDay.bindLong(1, cursor.getLong(COL_ID));
+                deleteDay.execute();
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    // Same numbering as the week buckets of AggregateEntry: day 0 was a Thursday.
+    static long getWeekBucket(long dayNumber) {
+        return (dayNumber + 3) / 7;
+    }
+
+    // yyyyMM of the UTC day, matching strftime('%Y%m') in the month buckets of AggregateEntry.
+    long getMonthBucket(long dayNumber) {
+        mUtcCalendar.setTimeInMillis(dayNumber * WeatherContract.DAY_IN_MILLIS);
+        return mUtcCalendar.get(Calendar.YEAR) * 100 + mUtcCalendar.get(Calendar.MONTH) + 1;
+    }
+
+    /*
+        Compiled statements that fold one day into a rollup table.  The insert creates the
+        bucket with that day's values and a day count of 0 if it does not exist yet, the update
+        then adds the day to whatever is there.  Both only use SQLiteStatement.execute(), which
+        is available on every API level we support.
+     */
+    private class RollupStatements {
+        final SQLiteStatement mInsert;
+        final SQLiteStatement mUpdate;
+
+        RollupStatements(String table) {
+            mInsert = mDb.compileStatement("INSERT OR IGNORE INTO " + table + " (" +
+                    RollupEntry.COLUMN_LOC_KEY + ", " +
+                    RollupEntry.COLUMN_BUCKET + ", " +
+                    RollupEntry.COLUMN_BUCKET_START + ", " +
+                    RollupEntry.COLUMN_BUCKET_END + ", " +
+                    RollupEntry.COLUMN_DAY_COUNT + ", " +
+                    RollupEntry.COLUMN_MIN_TEMP + ", " +
+                    RollupEntry.COLUMN_MAX_TEMP + ", " +
+                    RollupEntry.COLUMN_SUM_MIN_TEMP + ", " +
+                    RollupEntry.COLUMN_SUM_MAX_TEMP + ", " +
+                    RollupEntry.COLUMN_MIN_HUMIDITY + ", " +
+                    RollupEntry.COLUMN_MAX_HUMIDITY + ", " +
+                    RollupEntry.COLUMN_SUM_HUMIDITY + ", " +
+                    RollupEntry.COLUMN_MIN_PRESSURE + ", " +
+                    RollupEntry.COLUMN_MAX_PRESSURE + ", " +
+                    RollupEntry.COLUMN_SUM_PRESSURE + ", " +
+                    RollupEntry.COLUMN_MIN_WIND_SPEED + ", " +
+                    RollupEntry.COLUMN_MAX_WIND_SPEED + ", " +
+                    RollupEntry.COLUMN_SUM_WIND_SPEED +
+                    ") VALUES (?1, ?2, ?3, ?3, 0, ?4, ?5, 0, 0, ?6, ?6, 0, ?7, ?7, 0, ?8, ?8, 0)");
+
+            mUpdate = mDb.compileStatement("UPDATE " + table + " SET " +
+                    RollupEntry.COLUMN_BUCKET_START + " = MIN(" + RollupEntry.COLUMN_BUCKET_START + ", ?3), " +
+                    RollupEntry.COLUMN_BUCKET_END + " = MAX(" + RollupEntry.COLUMN_BUCKET_END + ", ?3), " +
+                    RollupEntry.COLUMN_DAY_COUNT + " = " + RollupEntry.COLUMN_DAY_COUNT + " + 1, " +
+                    RollupEntry.COLUMN_MIN_TEMP + " = MIN(" + RollupEntry.COLUMN_MIN_TEMP + ", ?4), " +
+                    RollupEntry.COLUMN_MAX_TEMP + " = MAX(" + RollupEntry.COLUMN_MAX_TEMP + ", ?5), " +
+                    RollupEntry.COLUMN_SUM_MIN_TEMP + " = " + RollupEntry.COLUMN_SUM_MIN_TEMP + " + ?4, " +
+                    RollupEntry.COLUMN_SUM_MAX_TEMP + " = " + RollupEntry.COLUMN_SUM_MAX_TEMP + " + ?5, " +
+                    RollupEntry.COLUMN_MIN_HUMIDITY + " = MIN(" + RollupEntry.COLUMN_MIN_HUMIDITY + ", ?6), " +
+                    RollupEntry.COLUMN_MAX_HUMIDITY + " = MAX(" + RollupEntry.COLUMN_MAX_HUMIDITY + ", ?6), " +
+                    RollupEntry.COLUMN_SUM_HUMIDITY + " = " + RollupEntry.COLUMN_SUM_HUMIDITY + " + ?6, " +
+                    RollupEntry.COLUMN_MIN_PRESSURE + " = MIN(" + RollupEntry.COLUMN_MIN_PRESSURE + ", ?7), " +
+                    RollupEntry.COLUMN_MAX_PRESSURE + " = MAX(" + RollupEntry.COLUMN_MAX_PRESSURE + ", ?7), " +
+                    RollupEntry.COLUMN_SUM_PRESSURE + " = " + RollupEntry.COLUMN_SUM_PRESSURE + " + ?7, " +
+                    RollupEntry.COLUMN_MIN_WIND_SPEED + " = MIN(" + RollupEntry.COLUMN_MIN_WIND_SPEED + ", ?8), " +
+                    RollupEntry.COLUMN_MAX_WIND_SPEED + " = MAX(" + RollupEntry.COLUMN_MAX_WIND_SPEED + ", ?8), " +
+                    RollupEntry.COLUMN_SUM_WIND_SPEED + " = " + RollupEntry.COLUMN_SUM_WIND_SPEED + " + ?8" +
+                    " WHERE " + RollupEntry.COLUMN_LOC_KEY + " = ?1 AND " +
+                    RollupEntry.COLUMN_BUCKET + " = ?2");
+        }
+
+        void fold(Cursor day, long bucket) {
+            bind(mInsert, day, bucket);
+            mInsert.execute();
+            bind(mUpdate, day, bucket);
+            mUpdate.execute();
+        }
+
+        private void bind(SQLiteStatement statement, Cursor day, long bucket) {
+            statement.bindLong(1, day.getLong(COL_LOC_KEY));
+            statement.bindLong(2, bucket);
+            statement.bindLong(3, day.getLong(COL_DATE));
+            statement.bindDouble(4, day.getDouble(COL_MIN_TEMP));
+            statement.bindDouble(5, day.getDouble(COL_MAX_TEMP));
+            statement.bindDouble(6, day.getDouble(COL_HUMIDITY));
+            statement.bindDouble(7, day.getDouble(COL_PRESSURE));
+            statement.bindDouble(8, day.getDouble(COL_WIND_SPEED));
+        }
+
+        void close() {
+            mInsert.close();
+            mUpdate.close();
+        }
+    }
+}
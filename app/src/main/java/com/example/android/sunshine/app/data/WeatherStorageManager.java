@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.RollupEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Keeps the weather database within a storage budget.
+ * <p>
+ * Every location ever synced keeps its days and its rollups, so the database only grows as the
+ * user tries out locations.  When it is over either the byte or the row budget, this evicts the
+ * least recently read locations (see {@link LocationAccessTracker}) together with all of their
+ * rows and the locations sharing them, one location per transaction, until it fits again.  The
+ * location in use is never evicted.
+ * <p>
+ * Deleted rows only put pages on SQLite's free list; the file keeps its size.  Databases in
+ * incremental auto-vacuum mode, which {@link WeatherDbHelper} sets up for every new one, get a
+ * bounded number of free pages handed back to the filesystem by each pass.  A pass never runs
+ * a full VACUUM, which would rewrite the whole file inside the sync.
+ */
+final class WeatherStorageManager {
+
+    static final int MAX_EVICTIONS_PER_PASS = 10;
+    static final int MAX_VACUUM_PAGES_PER_PASS = 512;
+
+    /*
+        The location with weather rows of its own that was read least recently, counting reads
+        of the locations sharing its weather, and that is not the one in use either directly or
+        through a location sharing it.
+     */
+    //SELECT _id FROM location AS owner WHERE shared_id IS NULL
+    //  AND _id IS NOT (SELECT IFNULL(shared_id, _id) FROM location WHERE location_setting = ?)
+    //  ORDER BY (SELECT MAX(last_access) FROM location
+    //      WHERE _id = owner._id OR shared_id = owner._id) ASC, _id ASC LIMIT 1
+    private static final String sLeastRecentlyUsedSql = "SELECT " + LocationEntry._ID +
+            " FROM " + LocationEntry.TABLE_NAME + " AS owner" +
+            " WHERE " + LocationEntry.COLUMN_SHARED_ID + " IS NULL AND " +
+            LocationEntry._ID + " IS NOT (SELECT " + WeatherDbHelper.buildSharedIdSql("") +
+            " FROM " + LocationEntry.TABLE_NAME +
+            " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?)" +
+            " ORDER BY (SELECT MAX(" + LocationEntry.COLUMN_LAST_ACCESS + ")" +
+            " FROM " + LocationEntry.TABLE_NAME +
+            " WHERE " + LocationEntry._ID + " = owner." + LocationEntry._ID + " OR " +
+            LocationEntry.COLUMN_SHARED_ID + " = owner." + LocationEntry._ID + ") ASC, " +
+            LocationEntry._ID + " ASC LIMIT 1";
+
+    private final SQLiteDatabase mDb;
+    private final long mMaxBytes;
+    private final long mMaxRows;
+
+    private int mLocationsEvicted;
+
+    WeatherStorageManager(SQLiteDatabase db, long maxBytes, long maxRows) {
+        mDb = db;
+        mMaxBytes = maxBytes;
+        mMaxRows = maxRows;
+    }
+
+    int getLocationsEvicted() {
+        return mLocationsEvicted;
+    }
+
+    /**
+     * Runs one pass.
+     *
+     * @param protectedLocationSetting the location in use, or null
+     */
+    void runPass(String protectedLocationSetting) {
+        while (mLocationsEvicted < MAX_EVICTIONS_PER_PASS && isOverBudget()) {
+            if (!evictLeastRecentlyUsedLocation(protectedLocationSetting)) {
+                break;
+            }
+            mLocationsEvicted++;
+        }
+
+        if (DatabaseUtils.longForQuery(mDb, "PRAGMA auto_vacuum", null)
+                == WeatherDbHelper.AUTO_VACUUM_INCREMENTAL) {
+            vacuum(MAX_VACUUM_PAGES_PER_PASS);
+        }
+    }
+
+    /**
+     * Bytes held by pages that are in use, which is what the file shrinks to once vacuumed.
+     */
+    long getUsedBytes() {
+        long pageSize = DatabaseUtils.longForQuery(mDb, "PRAGMA page_size", null);
+        long pageCount = DatabaseUtils.longForQuery(mDb, "PRAGMA page_count", null);
+        long freePages = DatabaseUtils.longForQuery(mDb, "PRAGMA freelist_count", null);
+        return (pageCount - freePages) * pageSize;
+    }
+
+    long getRowCount() {
+        return DatabaseUtils.longForQuery(mDb, "SELECT " +
+                "(SELECT COUNT(*) FROM " + WeatherEntry.TABLE_NAME + ") + " +
+                "(SELECT COUNT(*) FROM " + RollupEntry.TABLE_WEEKLY + ") + " +
+                "(SELECT COUNT(*) FROM " + RollupEntry.TABLE_MONTHLY + ")", null);
+    }
+
+    private boolean isOverBudget() {
+        return getUsedBytes() > mMaxBytes || getRowCount() > mMaxRows;
+    }
+
+    // Returns false if there was nothing left that could be evicted.
+    private boolean evictLeastRecentlyUsedLocation(String protectedLocationSetting) {
+        long locationId;
+        // bind arguments cannot be null, and no location setting is empty
+        Cursor cursor = mDb.rawQuery(sLeastRecentlyUsedSql,
+                new String[]{protectedLocationSetting == null ? "" : protectedLocationSetting});
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            locationId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+
+        String[] locationArgs = new String[]{Long.toString(locationId)};
+        mDb.beginTransaction();
+        try {
+            mDb.delete(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_LOC_KEY + " = ?", locationArgs);
+            mDb.delete(RollupEntry.TABLE_WEEKLY, RollupEntry.COLUMN_LOC_KEY + " = ?", locationArgs);
+            mDb.delete(RollupEntry.TABLE_MONTHLY, RollupEntry.COLUMN_LOC_KEY + " = ?", locationArgs);
+            // the locations sharing its weather would have nothing left to read
+            mDb.delete(LocationEntry.TABLE_NAME, LocationEntry._ID + " = ? OR " +
+                    LocationEntry.COLUMN_SHARED_ID + " = ?", new String[]{locationArgs[0], locationArgs[0]});
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return true;
+    }
+
+    private void vacuum(int maxPages) {
+        // incremental_vacuum frees one page per step, so it has to be read to the end;
+        // execSQL would only step it once.
+        Cursor cursor = mDb.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+        try {
+            cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -26,14 +26,20 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.PreferenceSnapshot;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.CityIndex;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.ForecastSnapshotWriter;
+import com.example.android.sunshine.app.data.WeatherArrays;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.ForecastJson;
+import com.example.android.sunshine.core.JulianDays;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.PendingResult;
@@ -43,9 +49,7 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -53,6 +57,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 import java.util.Vector;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
@@ -65,20 +71,17 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
-
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // Weather fetched this recently is not fetched again for a new location setting of the
+    // same shared cell.  Shorter than the shortest gap between two periodic syncs.
+    private static final long SHARED_FETCH_MAX_AGE = SYNC_FLEXTIME * 1000L;
+    // Set on the sync requested after the location setting changed, see syncLocationChanged
+    private static final String EXTRA_LOCATION_CHANGED = "location_changed";
+    // Days asked for in a fetch, and read back when a sync shares the fetch of another setting
+    private static final int FORECAST_DAYS = 14;
+    private static final long WEAR_CONNECT_TIMEOUT = 30;
+
+    // the account once it exists, see getSyncAccount
+    private static Account sSyncAccount;
 
     //Wearable Data members
     GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(getContext())
@@ -98,6 +101,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
         Log.d(LOG_TAG, "Starting sync");
         String locationQuery = Utility.getPreferredLocation(getContext());
 
+        // A new setting in the cell of a location fetched within the hour, such as
+        // "Mountain View, US" right after "94043", reads the weather of that fetch.  Any other
+        // sync the user asked for always fetches, and so does a setting that is already stored.
+        boolean mayShare = extras.getBoolean(EXTRA_LOCATION_CHANGED, false) ||
+                !extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false);
+        if (mayShare && readSharedFetch(locationQuery)) {
+            Log.d(LOG_TAG, "Sync skipped, " + locationQuery + " shares a recent fetch");
+            return;
+        }
+
         //Initiate the Wear API connection
         mGoogleApiClient.connect();
 
@@ -112,7 +125,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
 
         String format = "json";
         String units = "metric";
-        int numDays = 14;
+        int numDays = FORECAST_DAYS;
 
         try {
             // Construct the URL for the OpenWeatherMap query
@@ -121,13 +134,25 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
             final String FORECAST_BASE_URL =
                     "http://api.openweathermap.org/data/2.5/forecast/daily?";
             final String QUERY_PARAM = "q";
+            final String CITY_ID_PARAM = "id";
             final String FORMAT_PARAM = "mode";
             final String UNITS_PARAM = "units";
             final String DAYS_PARAM = "cnt";
             final String APPID_PARAM = "APPID";
 
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
+            // a setting naming its country, as the autocomplete writes it, is asked for by the
+            // id of the city in the bundled list, which the server doesn't have to resolve and
+            // which can't resolve to a different city of the same name; a bare name is left to
+            // the server, which may know better than the first city of that name
+            Uri.Builder builder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+            CityIndex cities = CityIndex.getInstance(getContext());
+            int city = cities != null ? cities.findCity(locationQuery) : -1;
+            if (city != -1) {
+                builder.appendQueryParameter(CITY_ID_PARAM, Integer.toString(cities.getCityId(city)));
+            } else {
+                builder.appendQueryParameter(QUERY_PARAM, locationQuery);
+            }
+            Uri builtUri = builder
                     .appendQueryParameter(FORMAT_PARAM, format)
                     .appendQueryParameter(UNITS_PARAM, units)
                     .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
@@ -190,128 +215,35 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
      * Take the String representing the complete forecast in JSON Format and
      * pull out the data we need to construct the Strings needed for the wireframes.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * The parsing itself is in {@link ForecastJson}, which runs without Android.
      */
     private void getWeatherDataFromJson(String forecastJsonStr,
                                         String locationSetting)
             throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
+            TimeZone zone = TimeZone.getDefault();
+            ForecastJson forecast = ForecastJson.parse(forecastJsonStr,
+                    System.currentTimeMillis(), zone);
 
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+            long locationId = addLocation(locationSetting, forecast.getCityName(),
+                    forecast.getLatitude(), forecast.getLongitude());
 
             // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+            Vector<ContentValues> cVVector = new Vector<ContentValues>(forecast.size());
 
+            for (int i = 0; i < forecast.size(); i++) {
                 ContentValues weatherValues = new ContentValues();
 
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, forecast.getDate(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, forecast.getHumidity(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, forecast.getPressure(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, forecast.getWindSpeed(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, forecast.getWindDirection(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, forecast.getHigh(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, forecast.getLow(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, forecast.getDescription(i));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, forecast.getWeatherId(i));
 
                 cVVector.add(weatherValues);
             }
@@ -321,15 +253,25 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
             if ( cVVector.size() > 0 ) {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                notifyWeather();
-                updateWearable();
+                // written in bounded calls, however many days and locations the sync brought
+                WeatherArrays.bulkWrite(getContext().getContentResolver(), cvArray);
+                recordFetch(locationId);
+
+                // roll old days up into the weekly and monthly history, so that we neither
+                // lose it nor build up an endless list of days, and drop locations nobody
+                // looked at in a long time if the database is over its budget
+                runMaintenancePass(locationSetting, JulianDays.getStartOfDay(
+                        forecast.getFirstJulianDay() -
+                                WeatherContract.RollupEntry.DAILY_RETENTION_DAYS, zone));
+
+                // the days are committed, so readers that show the snapshot first show them
+                writeSnapshot(locationSetting, locationId, forecast.getLatitude(),
+                        forecast.getLongitude(), cvArray);
+
+                // the location was just looked up, so read it back by id; for a location
+                // sharing the weather of another, that is the id the weather was written to
+                notifyWeather(locationSetting, locationId);
+                updateWearable(locationSetting, locationId);
             }
 
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
@@ -340,34 +282,87 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
         }
     }
 
-    private void updateWearable() {
+    /*
+        The maintenance pass runs inside the provider through ContentResolver.call, which only
+        exists from Honeycomb on.  Before that we just drop the days that left the daily window.
+     */
+    private void runMaintenancePass(String locationSetting, long oldestDailyDate) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle extras = new Bundle();
+            extras.putLong(WeatherContract.EXTRA_MAX_DATABASE_BYTES, 1024L *
+                    getContext().getResources().getInteger(R.integer.max_database_kilobytes));
+            extras.putLong(WeatherContract.EXTRA_MAX_ROWS,
+                    getContext().getResources().getInteger(R.integer.max_weather_rows));
+            Bundle result = getContext().getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_MAINTENANCE, locationSetting, extras);
+            Log.d(LOG_TAG, "Maintenance pass rolled up " +
+                    result.getInt(WeatherContract.EXTRA_ROWS_ROLLED_UP) + " days, pruned " +
+                    result.getInt(WeatherContract.EXTRA_ROWS_PRUNED) + " weeks, evicted " +
+                    result.getInt(WeatherContract.EXTRA_LOCATIONS_EVICTED) + " locations, " +
+                    "formatted " + result.getInt(WeatherContract.EXTRA_ROWS_FORMATTED) + " days, " +
+                    result.getLong(WeatherContract.EXTRA_DATABASE_BYTES) + " bytes in use");
+        } else {
+            getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                    new String[] {Long.toString(oldestDailyDate)});
+        }
+    }
+
+    private void writeSnapshot(String locationSetting, long locationId, double lat, double lon,
+                               ContentValues[] days) {
+        WeatherArrays weather = new WeatherArrays(days.length);
+        for (ContentValues values : days) {
+            weather.add(values);
+        }
+        writeSnapshot(locationSetting, locationId, lat, lon, weather);
+    }
+
+    private void writeSnapshot(String locationSetting, long locationId, double lat, double lon,
+                               WeatherArrays weather) {
+        ForecastSnapshotWriter writer = new ForecastSnapshotWriter(locationSetting, locationId,
+                lat, lon);
+        writer.add(weather);
+        try {
+            writer.save(getContext());
+        } catch (IOException e) {
+            // the readers fall back to the database
+            Log.e(LOG_TAG, "Error writing the forecast snapshot", e);
+        }
+    }
+
+    /*
+        Today's weather, from the snapshot this sync just wrote rather than through the
+        provider again, or from the database if there is no snapshot of the location.
+     */
+    private WeatherArrays readToday(String locationSetting, long locationId) {
+        long today = System.currentTimeMillis();
+        ForecastSnapshot snapshot = ForecastSnapshot.open(getContext(), locationSetting);
+        if (snapshot != null && snapshot.getLocationId() == locationId) {
+            return snapshot.read(today, today);
+        }
+        //Read today's weather straight into arrays, no cursor needed for one row
+        return WeatherArrays.read(getContext().getContentResolver(), locationId, today, today);
+    }
+
+    private void updateWearable(String locationSetting, long locationId) {
 
 //        Log.d(LOG_TAG, "updateWearable: Started");
         Context context = getContext();
         if (mGoogleApiClient.isConnected()) {
-            //location
-            String locationQuery = Utility.getPreferredLocation(context);
-            //Get the WeatherUri from the static class
-            Uri weatherUri = WeatherContract.WeatherEntry
-                    .buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-            //Query the content provider for the most recent data
-            Cursor cursor = context.getContentResolver()
-                    .query(weatherUri,NOTIFY_WEATHER_PROJECTION,null,null,null);
+            WeatherArrays weather = readToday(locationSetting, locationId);
 
-            //Grab the metric info from SharedPrefs
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-            String unit_format = prefs.getString(context
-                    .getString(R.string.pref_units_key),"metric");
+            //Grab the metric info from the settings
+            PreferenceSnapshot prefs = PreferenceSnapshot.get(context);
+            String unit_format = prefs.getUnits();
 
             //Extract Data
-            if (cursor != null && cursor.moveToFirst()) {
+            if (weather.size() > 0) {
 //                Log.d(LOG_TAG, "updateWearable: Successfully retreived data fromt the DB");
 
-                int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                double high = cursor.getDouble(INDEX_MAX_TEMP);
-                double low = cursor.getDouble(INDEX_MIN_TEMP);
-                String desc = cursor.getString(INDEX_SHORT_DESC);
+                int weatherId = weather.getWeatherId(0);
+                double high = weather.getMeasurement(0, WeatherArrays.MAX_TEMP);
+                double low = weather.getMeasurement(0, WeatherArrays.MIN_TEMP);
+                String desc = weather.getShortDesc(0);
 
                 //Attempt to push these into the data map
                 PutDataMapRequest putDataMapReq = PutDataMapRequest.create(WEAR_WEATHER_PATH).setUrgent();
@@ -379,10 +374,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                                                   weatherId);
                 //put high temp
                 putDataMapReq.getDataMap().putString(context.getString(R.string.wear_hi_key),
-                                                     Utility.formatTemperature(context, high));
+                                                     Utility.formatTemperature(context, high, prefs.isMetric()));
                 //put low temp
                 putDataMapReq.getDataMap().putString(context.getString(R.string.wear_low_key),
-                                                     Utility.formatTemperature(context, low));
+                                                     Utility.formatTemperature(context, low, prefs.isMetric()));
                 //put short desc
                 putDataMapReq.getDataMap().putString(context.getString(R.string.wear_short_desc_key),desc);
                 //put unit format
@@ -414,43 +409,31 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
 
                 buffer.release();
 
-
-                //close DB connection
-                cursor.close();
-
                 //Disconnect Google API client
                 mGoogleApiClient.disconnect();
             }
         }
     }
 
-    private void notifyWeather() {
+    private void notifyWeather(String locationSetting, long locationId) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        PreferenceSnapshot snapshot = PreferenceSnapshot.get(context);
+        boolean displayNotifications = snapshot.areNotificationsEnabled();
 
         if ( displayNotifications ) {
 
-            String lastNotificationKey = context.getString(R.string.pref_last_notification);
-            long lastSync = prefs.getLong(lastNotificationKey, 0);
+            long lastSync = snapshot.getLastNotification();
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                WeatherArrays weather = readToday(locationSetting, locationId);
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (weather.size() > 0) {
+                    int weatherId = weather.getWeatherId(0);
+                    double high = weather.getMeasurement(0, WeatherArrays.MAX_TEMP);
+                    double low = weather.getMeasurement(0, WeatherArrays.MIN_TEMP);
+                    String desc = weather.getShortDesc(0);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -461,8 +444,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                     // Define the text of the forecast.
                     String contentText = String.format(context.getString(R.string.format_notification),
                             desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
+                            Utility.formatTemperature(context, high, snapshot.isMetric()),
+                            Utility.formatTemperature(context, low, snapshot.isMetric()));
 
                     // NotificationCompatBuilder is a very convenient way to build backward-compatible
                     // notifications.  Just throw in some data.
@@ -496,64 +479,158 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
                     // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
                     mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
 
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
+                    //refreshing last sync, the snapshot picks it up from the listener
+                    SharedPreferences.Editor editor =
+                            PreferenceManager.getDefaultSharedPreferences(context).edit();
+                    editor.putLong(context.getString(R.string.pref_last_notification),
+                            System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
     /**
      * Helper method to handle insertion of a new location in the weather database.
+     * A new location setting that resolves into the shared cell of a location already in the
+     * database shares that location's weather, see LocationEntry.COLUMN_SHARED_ID.
      *
      * @param locationSetting The location string used to request updates from the server.
      * @param cityName A human-readable city name, e.g "Mountain View"
      * @param lat the latitude of the city
      * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @return the row ID of the location to write the weather to.
      */
     long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
         // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
+        long locationId = getSharedLocationId(locationSetting);
+        if (locationId != -1) {
+            return locationId;
+        }
+
+        long sharedId = findLocationInSharedCell(lat, lon);
+
+        // Now that the content provider is set up, inserting rows of data is pretty simple.
+        // First create a ContentValues object to hold the data you want to insert.
+        ContentValues locationValues = new ContentValues();
+
+        // Then add the data, along with the corresponding name of the data type,
+        // so the content provider knows what kind of value is being inserted.
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        if (sharedId != -1) {
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_SHARED_ID, sharedId);
+        }
+
+        // Finally, insert location data into the database.
+        Uri insertedUri = getContext().getContentResolver().insert(
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
+                locationValues
+        );
+
+        // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
+        // Wait, that worked?  Yes!
+        return sharedId != -1 ? sharedId : ContentUris.parseId(insertedUri);
+    }
+
+    /*
+        Stores a new location setting as sharing the weather of a location fetched recently in
+        its cell, and does what the fetch would have done with that weather: the snapshot, the
+        notification and the wearable.  Only a setting found in the bundled city list has
+        coordinates before a fetch.  Returns false if the setting has to be fetched.
+     */
+    private boolean readSharedFetch(String locationSetting) {
+        if (getSharedLocationId(locationSetting) != -1) {
+            return false;
+        }
+        CityIndex cities = CityIndex.getInstance(getContext());
+        int city = cities != null ? cities.findCity(locationSetting) : -1;
+        if (city == -1) {
+            return false;
+        }
+        double lat = cities.getLat(city);
+        double lon = cities.getLon(city);
+        long sharedId = findLocationInSharedCell(lat, lon);
+        if (sharedId == -1 ||
+                System.currentTimeMillis() - getLastFetch(sharedId) >= SHARED_FETCH_MAX_AGE) {
+            return false;
+        }
+
+        long locationId = addLocation(locationSetting, cities.getName(city), lat, lon);
+        long today = System.currentTimeMillis();
+        WeatherArrays weather = WeatherArrays.read(getContext().getContentResolver(),
+                locationId, today, today + FORECAST_DAYS * DAY_IN_MILLIS);
+        if (weather.size() == 0) {
+            return false;
+        }
+        writeSnapshot(locationSetting, locationId, lat, lon, weather);
+        notifyWeather(locationSetting, locationId);
+        // there is no request to wait on, so wait for the connection instead
+        mGoogleApiClient.blockingConnect(WEAR_CONNECT_TIMEOUT, TimeUnit.SECONDS);
+        updateWearable(locationSetting, locationId);
+        return true;
+    }
+
+    /*
+        The row ID of the location whose weather a location setting reads, which is its own
+        unless it shares the weather of another location, or -1 if the setting is not stored.
+     */
+    private long getSharedLocationId(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_SHARED_ID},
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            return cursor.isNull(1) ? cursor.getLong(0) : cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+    }
 
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+    // A location with weather of its own in the shared cell of the coordinates, or -1.
+    private long findLocationInSharedCell(double lat, double lon) {
+        int cellSize = getContext().getResources().getInteger(R.integer.shared_cell_size);
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.buildSharedCellSelection(),
+                WeatherContract.LocationEntry.buildSharedCellArgs(lat, lon, cellSize),
+                WeatherContract.LocationEntry._ID + " ASC");
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
         }
+    }
 
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    private long getLastFetch(long locationId) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LAST_FETCH},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void recordFetch(long locationId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LAST_FETCH, System.currentTimeMillis());
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI, values,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)});
     }
 
     /**
@@ -580,9 +657,23 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        syncImmediately(context, false);
+    }
+
+    /**
+     * Has the sync adapter sync immediately for a location setting that just changed, which
+     * reads the weather of a recent fetch in its cell instead of fetching if there is one.
+     * @param context The context used to access the account service
+     */
+    public static void syncLocationChanged(Context context) {
+        syncImmediately(context, true);
+    }
+
+    private static void syncImmediately(Context context, boolean locationChanged) {
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putBoolean(EXTRA_LOCATION_CHANGED, locationChanged);
         ContentResolver.requestSync(getSyncAccount(context),
                 context.getString(R.string.content_authority), bundle);
     }
@@ -591,11 +682,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
      * onAccountCreated method so we can initialize things.
+     * <p>
+     * The account is cached for the life of the process once it is known to exist, so only the
+     * first call, which the StartupOrchestrator makes off the UI thread, asks the
+     * AccountManager.
      *
      * @param context The context used to access the account service
      * @return a fake account.
      */
-    public static Account getSyncAccount(Context context) {
+    public static synchronized Account getSyncAccount(Context context) {
+        if (sSyncAccount != null) {
+            return sSyncAccount;
+        }
+
         // Get an instance of the Android account manager
         AccountManager accountManager =
                 (AccountManager) context.getSystemService(Context.ACCOUNT_SERVICE);
@@ -621,8 +720,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
              * here.
              */
 
+            // set first, onAccountCreated asks for the account again
+            sSyncAccount = newAccount;
             onAccountCreated(newAccount, context);
         }
+        sSyncAccount = newAccount;
         return newAccount;
     }
 
@@ -643,6 +745,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter
         syncImmediately(context);
     }
 
+    /**
+     * Makes sure the sync account exists and its sync is scheduled.  This talks to system
+     * services, so the app runs it through the StartupOrchestrator rather than on the UI thread.
+     */
     public static void initializeSyncAdapter(Context context) {
         getSyncAccount(context);
     }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Runs on the JVM, without a device: checks the cached strings against formatting each day
+    the way Utility used to, and compares the cost of formatting a forecast's dates both ways.
+ */
+public class TestDateFormatCache {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int FORECAST_DAYS = 14;
+    private static final int BENCHMARK_BINDS = 200000;
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+    // 2016-06-24 10:00 in Los Angeles
+    private static final long NOW = 1466787600000L;
+
+    private static DateFormatCache createCache(long now) {
+        return new DateFormatCache("Today", "Tomorrow", "%1$s, %2$s", Locale.US, ZONE, now);
+    }
+
+    @Test
+    public void testStrings() {
+        DateFormatCache cache = createCache(NOW);
+        assertEquals("Today, June 24", cache.getFriendlyDayString(NOW));
+        assertEquals("Tomorrow", cache.getFriendlyDayString(NOW + DAY));
+        assertEquals("Sunday", cache.getFriendlyDayString(NOW + 2 * DAY));
+        assertEquals("Fri Jul 01", cache.getFriendlyDayString(NOW + 7 * DAY));
+        assertEquals("Today", cache.getDayName(NOW));
+        assertEquals("June 24", cache.getFormattedMonthDay(NOW));
+
+        // days out of the cached range, and the range itself, match formatting each time
+        for (int i = -30; i < 60; i++) {
+            long date = NOW + i * DAY;
+            assertEquals(formatFriendlyDay(NOW, date), cache.getFriendlyDayString(date));
+            assertEquals(formatFriendlyDay(NOW, date), cache.getFriendlyDayString(date));
+        }
+    }
+
+    @Test
+    public void testCachedStringsAreShared() {
+        DateFormatCache cache = createCache(NOW);
+        String first = cache.getFriendlyDayString(NOW + 3 * DAY);
+        // later in the same day
+        assertSame(first, cache.getFriendlyDayString(NOW + 3 * DAY + 60 * 60 * 1000L));
+    }
+
+    @Test
+    public void testRollover() {
+        DateFormatCache cache = createCache(NOW);
+        // midnight in Los Angeles is 14 hours after NOW
+        assertTrue(cache.isCurrent(NOW));
+        assertTrue(cache.isCurrent(NOW + 14 * 60 * 60 * 1000L - 1));
+        assertFalse(cache.isCurrent(NOW + 14 * 60 * 60 * 1000L));
+        assertFalse(cache.isCurrent(NOW - 10 * 60 * 60 * 1000L - 1));
+
+        DateFormatCache tomorrow = createCache(NOW + DAY);
+        assertEquals("Today, June 25", tomorrow.getFriendlyDayString(NOW + DAY));
+        assertEquals("Friday", tomorrow.getFriendlyDayString(NOW));
+    }
+
+    /*
+        Formats the dates of a forecast over and over, the way every bind used to and through
+        the cache, and prints the time and the bytes allocated per bind.  The bytes are only
+        measured on JVMs that count them.  Nothing about the times is asserted, only that
+        cached binds allocate nothing.
+     */
+    @Test
+    public void testBindBenchmark() {
+        long[] dates = new long[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            dates[i] = NOW + i * DAY;
+        }
+
+        // warm up both
+        DateFormatCache cache = createCache(NOW);
+        int length = 0;
+        for (int i = 0; i < BENCHMARK_BINDS / 10; i++) {
+            length += formatFriendlyDay(System.currentTimeMillis(), dates[i % FORECAST_DAYS]).length();
+            length += cache.getFriendlyDayString(dates[i % FORECAST_DAYS]).length();
+        }
+
+        long startBytes = getAllocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS / 10; i++) {
+            length += formatFriendlyDay(System.currentTimeMillis(), dates[i % FORECAST_DAYS]).length();
+        }
+        long uncachedNanos = (System.nanoTime() - startTime) / (BENCHMARK_BINDS / 10);
+        long uncachedBytes = (getAllocatedBytes() - startBytes) / (BENCHMARK_BINDS / 10);
+
+        startBytes = getAllocatedBytes();
+        startTime = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            length += cache.getFriendlyDayString(dates[i % FORECAST_DAYS]).length();
+        }
+        long cachedNanos = (System.nanoTime() - startTime) / BENCHMARK_BINDS;
+        long cachedBytes = (getAllocatedBytes() - startBytes) / BENCHMARK_BINDS;
+
+        System.out.println("Formatting a date per bind: " + uncachedNanos + " ns, " +
+                uncachedBytes + " bytes");
+        System.out.println("Cached date per bind:       " + cachedNanos + " ns, " +
+                cachedBytes + " bytes");
+        assertTrue(length > 0);
+        assertEquals("Error: A cached bind allocated", 0, cachedBytes);
+    }
+
+    // What Utility.getFriendlyDayString did on every call before the cache.
+    private static String formatFriendlyDay(long now, long date) {
+        int offset = ZONE.getOffset(now);
+        long julianDay = (long) Math.floor((date + offset) / (double) DAY);
+        long currentJulianDay = (long) Math.floor((now + offset) / (double) DAY);
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd", Locale.US);
+        monthDayFormat.setTimeZone(ZONE);
+        if (julianDay == currentJulianDay) {
+            return String.format("%1$s, %2$s", "Today", monthDayFormat.format(date));
+        } else if (julianDay < currentJulianDay + 7) {
+            if (julianDay == currentJulianDay + 1) {
+                return "Tomorrow";
+            }
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE", Locale.US);
+            dayFormat.setTimeZone(ZONE);
+            return dayFormat.format(date);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd", Locale.US);
+            shortenedDateFormat.setTimeZone(ZONE);
+            return shortenedDateFormat.format(date);
+        }
+    }
+
+    // The bytes this thread has allocated so far, or 0 where the JVM doesn't say.
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+}
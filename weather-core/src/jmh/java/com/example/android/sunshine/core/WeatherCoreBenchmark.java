@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The work the apps do on every bind, frame and sync: what a row does once per day it shows,
+    and what a sync does once per forecast.  Each call takes the next of a few weeks of sample
+    days, so that the JIT can't fold it into a constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherCoreBenchmark {
+
+    private static final int DAYS = 16;
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+    // 2016-06-24 10:00 in Los Angeles
+    private static final long NOW = 1466787600000L;
+    // the app's format_temperature and format_wind_kmh
+    private static final String TEMPERATURE_FORMAT = "%1.0f\u00B0";
+    private static final String WIND_FORMAT = "Wind: %1$1.0f km/h %2$s";
+
+    private final int[] mWeatherIds = new int[DAYS];
+    private final double[] mTemperatures = new double[DAYS];
+    private final float[] mWindSpeeds = new float[DAYS];
+    private final float[] mWindDirections = new float[DAYS];
+    private final long[] mDates = new long[DAYS];
+    private int[] mArt;
+    private String mForecastJson;
+    private int mDay;
+
+    @Setup
+    public void setUp() {
+        Locale.setDefault(Locale.US);
+        int[] ids = {211, 301, 500, 511, 601, 741, 781, 800, 801, 803, 900, 521, 615, 200, 802, 0};
+        StringBuilder json = new StringBuilder("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\"," +
+                "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\"},\"list\":[");
+        for (int i = 0; i < DAYS; i++) {
+            mWeatherIds[i] = ids[i];
+            mTemperatures[i] = -10 + i * 2.7;
+            mWindSpeeds[i] = i * 1.3f;
+            mWindDirections[i] = i * 23f;
+            mDates[i] = NOW + i * JulianDays.DAY_IN_MILLIS;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(mDates[i] / 1000)
+                    .append(",\"temp\":{\"day\":20.5,\"min\":").append(mTemperatures[i])
+                    .append(",\"max\":").append(mTemperatures[i] + 8.25)
+                    .append(",\"night\":12.1,\"eve\":18.3,\"morn\":14.6},\"pressure\":1013.42")
+                    .append(",\"humidity\":").append(40 + i)
+                    .append(",\"weather\":[{\"id\":").append(ids[i])
+                    .append(",\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}]")
+                    .append(",\"speed\":").append(mWindSpeeds[i])
+                    .append(",\"deg\":").append(mWindDirections[i])
+                    .append(",\"clouds\":0}");
+        }
+        mForecastJson = json.append("]}").toString();
+        mArt = WeatherConditions.buildTable(new int[] {-1, 1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
+    private int nextDay() {
+        return mDay = (mDay + 1) & (DAYS - 1);
+    }
+
+    @Benchmark
+    public int conditionLookup() {
+        return WeatherConditions.lookup(mArt, mWeatherIds[nextDay()]);
+    }
+
+    @Benchmark
+    public String formatTemperature() {
+        return WeatherUnits.formatTemperature(TEMPERATURE_FORMAT, mTemperatures[nextDay()], false);
+    }
+
+    @Benchmark
+    public String formatWind() {
+        int day = nextDay();
+        return WeatherUnits.formatWind(WIND_FORMAT, mWindSpeeds[day], mWindDirections[day], true);
+    }
+
+    @Benchmark
+    public int julianDay() {
+        return JulianDays.getJulianDay(mDates[nextDay()], ZONE.getRawOffset());
+    }
+
+    @Benchmark
+    public long startOfDay() {
+        return JulianDays.getStartOfDay(2457564 + nextDay(), ZONE);
+    }
+
+    @Benchmark
+    public ForecastJson parseForecast() throws JSONException {
+        return ForecastJson.parse(mForecastJson, NOW, ZONE);
+    }
+}
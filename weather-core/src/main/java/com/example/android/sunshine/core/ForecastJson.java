@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.TimeZone;
+
+/**
+ * A daily forecast from OpenWeatherMap, parsed out of its JSON into one array per measurement.
+ * <p>
+ * OWM returns daily forecasts based upon the local time of the city that is being asked for,
+ * in order, and the first day is always the current day.  So the days are dated from today
+ * here, at the start of each day in the time zone given to {@link #parse}.
+ */
+public final class ForecastJson {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private final String mCityName;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final int mFirstJulianDay;
+
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mDescriptions;
+    private final double[] mHighs;
+    private final double[] mLows;
+    private final double[] mPressures;
+    private final int[] mHumidities;
+    private final double[] mWindSpeeds;
+    private final double[] mWindDirections;
+
+    private ForecastJson(String cityName, double latitude, double longitude, int firstJulianDay,
+                         int size) {
+        mCityName = cityName;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mFirstJulianDay = firstJulianDay;
+        mDates = new long[size];
+        mWeatherIds = new int[size];
+        mDescriptions = new String[size];
+        mHighs = new double[size];
+        mLows = new double[size];
+        mPressures = new double[size];
+        mHumidities = new int[size];
+        mWindSpeeds = new double[size];
+        mWindDirections = new double[size];
+    }
+
+    /**
+     * Parses a forecast.
+     * @param forecastJsonStr the response of the daily forecast call
+     * @param now the current time, which the first day is on
+     * @param zone the time zone the days are dated in
+     */
+    public static ForecastJson parse(String forecastJsonStr, long now, TimeZone zone)
+            throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = JulianDays.getJulianDay(now, zone.getOffset(now));
+
+        ForecastJson forecast = new ForecastJson(cityJson.getString(OWM_CITY_NAME),
+                cityCoord.getDouble(OWM_LATITUDE), cityCoord.getDouble(OWM_LONGITUDE),
+                julianStartDay, weatherArray.length());
+
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            forecast.mDates[i] = JulianDays.getStartOfDay(julianStartDay + i, zone);
+            forecast.mPressures[i] = dayForecast.getDouble(OWM_PRESSURE);
+            forecast.mHumidities[i] = dayForecast.getInt(OWM_HUMIDITY);
+            forecast.mWindSpeeds[i] = dayForecast.getDouble(OWM_WINDSPEED);
+            forecast.mWindDirections[i] = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            forecast.mDescriptions[i] = weatherObject.getString(OWM_DESCRIPTION);
+            forecast.mWeatherIds[i] = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            forecast.mHighs[i] = temperatureObject.getDouble(OWM_MAX);
+            forecast.mLows[i] = temperatureObject.getDouble(OWM_MIN);
+        }
+        return forecast;
+    }
+
+    public String getCityName() {
+        return mCityName;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Returns the julian day of the first day, today where the forecast was parsed.
+     */
+    public int getFirstJulianDay() {
+        return mFirstJulianDay;
+    }
+
+    /**
+     * Returns the number of days.
+     */
+    public int size() {
+        return mDates.length;
+    }
+
+    public long getDate(int day) {
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public String getDescription(int day) {
+        return mDescriptions[day];
+    }
+
+    public double getHigh(int day) {
+        return mHighs[day];
+    }
+
+    public double getLow(int day) {
+        return mLows[day];
+    }
+
+    public double getPressure(int day) {
+        return mPressures[day];
+    }
+
+    public int getHumidity(int day) {
+        return mHumidities[day];
+    }
+
+    public double getWindSpeed(int day) {
+        return mWindSpeeds[day];
+    }
+
+    public double getWindDirection(int day) {
+        return mWindDirections[day];
+    }
+}
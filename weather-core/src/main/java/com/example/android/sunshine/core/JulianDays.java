@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * The julian day math of android.text.format.Time, without a Time.  Days are numbered the way
+ * Time numbers them, so these can be mixed with julian days from Time.
+ */
+public final class JulianDays {
+
+    public static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // Time.getJulianDay of the epoch
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private JulianDays() {
+    }
+
+    /**
+     * Returns the julian day a moment is on, at an offset from UTC.
+     */
+    public static int getJulianDay(long dateInMillis, long offsetMillis) {
+        long localMillis = dateInMillis + offsetMillis;
+        // floor, for moments before the epoch
+        long day = localMillis / DAY_IN_MILLIS;
+        if (localMillis < 0 && localMillis % DAY_IN_MILLIS != 0) {
+            day--;
+        }
+        return (int) day + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * Returns the start of a julian day in a time zone, as Time.setJulianDay does.
+     */
+    public static long getStartOfDay(int julianDay, TimeZone zone) {
+        long utcMidnight = (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        // the offset in effect at local midnight, which is within a day of UTC midnight
+        return utcMidnight - zone.getOffset(utcMidnight - zone.getRawOffset());
+    }
+}
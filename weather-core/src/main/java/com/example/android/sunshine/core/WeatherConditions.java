@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * The kind of weather each OpenWeatherMap condition id stands for, in a table indexed by the id,
+ * so that the phone and the watch show the same weather for it with a single array load.
+ * <p>
+ * Resource ids are different in each app, so this table only holds the kind of weather and how
+ * severe it is.  Each app turns it once into tables of its own icons, art and descriptions with
+ * {@link #buildTable}.
+ */
+public final class WeatherConditions {
+
+    /** Ids this high and up, and below 0, are not conditions. */
+    public static final int MAX_WEATHER_ID = 1000;
+
+    public static final int NONE = 0;
+    public static final int STORM = 1;
+    public static final int LIGHT_RAIN = 2;
+    public static final int RAIN = 3;
+    public static final int SNOW = 4;
+    public static final int FOG = 5;
+    public static final int CLEAR = 6;
+    public static final int LIGHT_CLOUDS = 7;
+    public static final int CLOUDS = 8;
+    /** The number of kinds, which is the length of the arrays {@link #buildTable} takes. */
+    public static final int KIND_COUNT = 9;
+
+    // How bad each kind of weather is, from 0 for none to 3 for storms.
+    private static final byte[] KIND_SEVERITY = {0, 3, 1, 2, 2, 1, 0, 0, 0};
+
+    // Based on weather code data found at:
+    // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+    // {first id, last id, kind}.  Later ranges win, and 761 (dust) stays fog as it always was.
+    private static final int[][] RANGES = {
+            {200, 232, STORM},
+            {300, 321, LIGHT_RAIN},
+            {500, 504, RAIN},
+            {511, 511, SNOW},
+            {520, 531, RAIN},
+            {600, 622, SNOW},
+            {701, 761, FOG},
+            {781, 781, STORM},
+            {800, 800, CLEAR},
+            {801, 801, LIGHT_CLOUDS},
+            {802, 804, CLOUDS},
+    };
+
+    private static final byte[] KINDS = new byte[MAX_WEATHER_ID];
+    private static final byte[] SEVERITIES = new byte[MAX_WEATHER_ID];
+
+    static {
+        for (int[] range : RANGES) {
+            for (int id = range[0]; id <= range[1]; id++) {
+                KINDS[id] = (byte) range[2];
+                SEVERITIES[id] = KIND_SEVERITY[range[2]];
+            }
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * Returns the kind of weather a condition id stands for, {@link #NONE} for ids that aren't
+     * known.
+     */
+    public static int getKind(int weatherId) {
+        return weatherId >= 0 && weatherId < MAX_WEATHER_ID ? KINDS[weatherId] : NONE;
+    }
+
+    /**
+     * Returns how bad the weather of a condition id is, from 0 for clear skies and unknown ids
+     * to 3 for storms, for telling which of several days is the worst.
+     */
+    public static int getSeverity(int weatherId) {
+        return weatherId >= 0 && weatherId < MAX_WEATHER_ID ? SEVERITIES[weatherId] : 0;
+    }
+
+    /**
+     * Returns a table of a value for each condition id, made from one value for each kind of
+     * weather, to be looked up with {@link #lookup}.
+     * @param valuesByKind {@link #KIND_COUNT} values, in the order of the kinds
+     */
+    public static int[] buildTable(int[] valuesByKind) {
+        if (valuesByKind.length != KIND_COUNT) {
+            throw new IllegalArgumentException("Expected " + KIND_COUNT + " values, got " +
+                    valuesByKind.length);
+        }
+        int[] table = new int[MAX_WEATHER_ID];
+        for (int id = 0; id < MAX_WEATHER_ID; id++) {
+            table[id] = valuesByKind[KINDS[id]];
+        }
+        return table;
+    }
+
+    /**
+     * Returns the value for a condition id from a table made by {@link #buildTable}, -1 for ids
+     * out of its range.
+     */
+    public static int lookup(int[] table, int weatherId) {
+        return weatherId >= 0 && weatherId < MAX_WEATHER_ID ? table[weatherId] : -1;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * Unit conversions and the formatting of measurements, which the apps call with their localized
+ * format strings.  Weather is stored in metric units, Celsius and km/h, and converted for
+ * display only.
+ */
+public final class WeatherUnits {
+
+    private static final float MILES_PER_KILOMETER = .621371192237334f;
+
+    private WeatherUnits() {
+    }
+
+    public static double celsiusToFahrenheit(double celsius) {
+        return (celsius * 1.8) + 32;
+    }
+
+    public static float kmhToMph(float kmh) {
+        return MILES_PER_KILOMETER * kmh;
+    }
+
+    /**
+     * Formats a temperature stored in Celsius.
+     * @param format the format of one temperature in the user's units
+     */
+    public static String formatTemperature(String format, double celsius, boolean isMetric) {
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return String.format(format, isMetric ? celsius : celsiusToFahrenheit(celsius));
+    }
+
+    /**
+     * Formats a wind stored in km/h.
+     * @param format the format for the speed in the user's units and the compass direction
+     */
+    public static String formatWind(String format, float kmh, float degrees, boolean isMetric) {
+        return String.format(format, isMetric ? kmh : kmhToMph(kmh), getWindDirection(degrees));
+    }
+
+    /**
+     * Returns the compass direction of a wind direction in degrees, such as "NW".
+     */
+    public static String getWindDirection(float degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            return "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            return "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            return "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            return "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            return "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            return "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            return "NW";
+        }
+        return "Unknown";
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Parses a two day forecast the way the sync adapter does, and checks the days it is dated
+    with.
+ */
+public class TestForecastJson {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+    // 2016-06-24 10:00 in Los Angeles
+    private static final long NOW = 1466787600000L;
+    // 2016-06-24 00:00 in Los Angeles
+    private static final long TODAY = 1466751600000L;
+
+    private static final String FORECAST = "{\"city\":{\"id\":5375480,\"name\":\"Mountain View\"," +
+            "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\"}," +
+            "\"cnt\":2,\"list\":[" +
+            "{\"dt\":1466794800,\"temp\":{\"day\":25.1,\"min\":13.26,\"max\":27.5}," +
+            "\"pressure\":1001.36,\"humidity\":48," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\"}]," +
+            "\"speed\":4.12,\"deg\":312,\"clouds\":0}," +
+            "{\"dt\":1466881200,\"temp\":{\"day\":21.3,\"min\":12.5,\"max\":22.75}," +
+            "\"pressure\":1003.2,\"humidity\":61," +
+            "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\"}]," +
+            "\"speed\":2.5,\"deg\":180,\"clouds\":75,\"rain\":3.2}]}";
+
+    @Test
+    public void testParse() throws JSONException {
+        ForecastJson forecast = ForecastJson.parse(FORECAST, NOW, ZONE);
+        assertEquals("Mountain View", forecast.getCityName());
+        assertEquals(37.386051, forecast.getLatitude(), 0);
+        assertEquals(-122.083847, forecast.getLongitude(), 0);
+        assertEquals(2, forecast.size());
+
+        assertEquals(TODAY, forecast.getDate(0));
+        assertEquals(800, forecast.getWeatherId(0));
+        assertEquals("Clear", forecast.getDescription(0));
+        assertEquals(27.5, forecast.getHigh(0), 0);
+        assertEquals(13.26, forecast.getLow(0), 0);
+        assertEquals(1001.36, forecast.getPressure(0), 0);
+        assertEquals(48, forecast.getHumidity(0));
+        assertEquals(4.12, forecast.getWindSpeed(0), 0);
+        assertEquals(312, forecast.getWindDirection(0), 0);
+
+        assertEquals(TODAY + JulianDays.DAY_IN_MILLIS, forecast.getDate(1));
+        assertEquals(501, forecast.getWeatherId(1));
+        assertEquals("Rain", forecast.getDescription(1));
+        assertEquals(JulianDays.getJulianDay(NOW, ZONE.getOffset(NOW)),
+                forecast.getFirstJulianDay());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testMissingCity() throws JSONException {
+        ForecastJson.parse("{\"cod\":\"404\",\"message\":\"city not found\",\"list\":[]}",
+                NOW, ZONE);
+    }
+}
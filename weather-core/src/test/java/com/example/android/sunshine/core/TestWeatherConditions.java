@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Checks the table against the chain of ranges the phone and the watch used to test each id
+    against, for every id and some out of range.
+ */
+public class TestWeatherConditions {
+
+    // the kinds themselves, so the table built from them should give back the kind
+    private static final int[] KINDS = {
+            WeatherConditions.NONE,
+            WeatherConditions.STORM,
+            WeatherConditions.LIGHT_RAIN,
+            WeatherConditions.RAIN,
+            WeatherConditions.SNOW,
+            WeatherConditions.FOG,
+            WeatherConditions.CLEAR,
+            WeatherConditions.LIGHT_CLOUDS,
+            WeatherConditions.CLOUDS,
+    };
+
+    @Test
+    public void testTableMatchesRanges() {
+        int[] table = WeatherConditions.buildTable(KINDS);
+        for (int id = -10; id < WeatherConditions.MAX_WEATHER_ID + 10; id++) {
+            int expected = getKindFromRanges(id);
+            assertEquals("Error: Wrong kind for " + id, expected, WeatherConditions.getKind(id));
+            boolean inRange = id >= 0 && id < WeatherConditions.MAX_WEATHER_ID;
+            assertEquals("Error: Wrong table value for " + id,
+                    inRange ? expected : -1, WeatherConditions.lookup(table, id));
+        }
+    }
+
+    @Test
+    public void testSeverity() {
+        assertEquals(3, WeatherConditions.getSeverity(211));
+        assertEquals(3, WeatherConditions.getSeverity(781));
+        assertEquals(2, WeatherConditions.getSeverity(502));
+        assertEquals(2, WeatherConditions.getSeverity(601));
+        assertEquals(1, WeatherConditions.getSeverity(301));
+        assertEquals(1, WeatherConditions.getSeverity(741));
+        assertEquals(0, WeatherConditions.getSeverity(800));
+        assertEquals(0, WeatherConditions.getSeverity(999));
+        assertEquals(0, WeatherConditions.getSeverity(-1));
+        assertEquals(0, WeatherConditions.getSeverity(1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfKinds() {
+        WeatherConditions.buildTable(new int[] {-1, 1, 2});
+    }
+
+    // What Utility.getIconResourceForWeatherCondition tested, with kinds for its icons.
+    private static int getKindFromRanges(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return WeatherConditions.STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return WeatherConditions.LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return WeatherConditions.RAIN;
+        } else if (weatherId == 511) {
+            return WeatherConditions.SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return WeatherConditions.RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return WeatherConditions.SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return WeatherConditions.FOG;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return WeatherConditions.STORM;
+        } else if (weatherId == 800) {
+            return WeatherConditions.CLEAR;
+        } else if (weatherId == 801) {
+            return WeatherConditions.LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return WeatherConditions.CLOUDS;
+        }
+        return WeatherConditions.NONE;
+    }
+}
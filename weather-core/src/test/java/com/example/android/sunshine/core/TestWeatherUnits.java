@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Checks the conversions and formats, and the julian day math against Calendar.
+ */
+public class TestWeatherUnits {
+
+    private static final String TEMPERATURE_FORMAT = "%1.0f\u00B0";
+    private static final String WIND_FORMAT = "Wind: %1$1.0f km/h %2$s";
+
+    @Test
+    public void testTemperature() {
+        Locale.setDefault(Locale.US);
+        assertEquals(212, WeatherUnits.celsiusToFahrenheit(100), 1e-9);
+        assertEquals("21\u00B0", WeatherUnits.formatTemperature(TEMPERATURE_FORMAT, 21.4, true));
+        assertEquals("71\u00B0", WeatherUnits.formatTemperature(TEMPERATURE_FORMAT, 21.4, false));
+    }
+
+    @Test
+    public void testWind() {
+        Locale.setDefault(Locale.US);
+        assertEquals("N", WeatherUnits.getWindDirection(350));
+        assertEquals("N", WeatherUnits.getWindDirection(0));
+        assertEquals("NE", WeatherUnits.getWindDirection(22.5f));
+        assertEquals("SW", WeatherUnits.getWindDirection(225));
+        assertEquals("NW", WeatherUnits.getWindDirection(337));
+        assertEquals("Unknown", WeatherUnits.getWindDirection(Float.NaN));
+        assertEquals("Wind: 10 km/h S", WeatherUnits.formatWind(WIND_FORMAT, 10, 180, true));
+        assertEquals("Wind: 6 km/h S", WeatherUnits.formatWind(WIND_FORMAT, 10, 180, false));
+    }
+
+    @Test
+    public void testJulianDays() {
+        assertEquals(JulianDays.EPOCH_JULIAN_DAY, JulianDays.getJulianDay(0, 0));
+        assertEquals(JulianDays.EPOCH_JULIAN_DAY - 1, JulianDays.getJulianDay(-1, 0));
+        assertEquals(JulianDays.EPOCH_JULIAN_DAY + 1,
+                JulianDays.getJulianDay(JulianDays.DAY_IN_MILLIS, 0));
+
+        // a year of days, across both daylight saving changes, in zones east and west
+        String[] zones = {"America/Los_Angeles", "Europe/Berlin", "Australia/Sydney", "UTC"};
+        for (String id : zones) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            Calendar calendar = Calendar.getInstance(zone);
+            calendar.clear();
+            calendar.set(2016, Calendar.JANUARY, 1);
+            int firstDay = JulianDays.getJulianDay(calendar.getTimeInMillis(),
+                    zone.getOffset(calendar.getTimeInMillis()));
+            for (int i = 0; i < 366; i++) {
+                long start = JulianDays.getStartOfDay(firstDay + i, zone);
+                assertEquals("Error: Wrong start of day " + i + " in " + id,
+                        calendar.getTimeInMillis(), start);
+                assertEquals(firstDay + i, JulianDays.getJulianDay(start, zone.getOffset(start)));
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            }
+        }
+    }
+}